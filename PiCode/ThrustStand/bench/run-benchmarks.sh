@@ -0,0 +1,74 @@
+#!/bin/bash
+# run-benchmarks.sh - Builds and runs the JMH benchmarks for ThrustStand
+#
+# Runs headless (no JavaFX stage), so it works over SSH on the Pi as well as on
+# x86 workstations. Run from the bench directory. Extra arguments go to JMH, e.g.
+#   ./run-benchmarks.sh                        All benchmarks with gc profiler
+#   ./run-benchmarks.sh Pipeline               Only benchmarks matching "Pipeline"
+#   ./run-benchmarks.sh -p logDir=/tmp         Log to a different directory
+#   ./run-benchmarks.sh -rf json -rff out.json Save results for comparison
+
+JMH_VERSION="1.37"
+MAVEN_URL="https://repo1.maven.org/maven2"
+JAVAFX_PATH="${JAVAFX_PATH:-/usr/share/openjfx/lib}"
+
+cd "$(dirname "$0")"
+
+# Download JMH and its dependencies if not present
+mkdir -p lib
+download() {
+    if [ ! -f "lib/$2" ]; then
+        echo "Downloading $2..."
+        if ! wget -q "$MAVEN_URL/$1/$2" -P lib; then
+            echo "Failed to download $2"
+            exit 1
+        fi
+    fi
+}
+download "org/openjdk/jmh/jmh-core/$JMH_VERSION" "jmh-core-$JMH_VERSION.jar"
+download "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION" "jmh-generator-annprocess-$JMH_VERSION.jar"
+download "net/sf/jopt-simple/jopt-simple/5.0.4" "jopt-simple-5.0.4.jar"
+download "org/apache/commons/commons-math3/3.6.1" "commons-math3-3.6.1.jar"
+
+# Build classpath: benchmark libraries plus jSerialComm from the app
+CLASSPATH="bin"
+for jar in lib/*.jar ../lib/*.jar; do
+    if [ -f "$jar" ]; then
+        CLASSPATH="$CLASSPATH:$jar"
+    fi
+done
+
+# JavaFX is only needed for its property classes; the Liberica full JDK bundles it
+JAVAFX_ARGS=""
+if [ -d "$JAVAFX_PATH" ]; then
+    JAVAFX_ARGS="--module-path $JAVAFX_PATH"
+fi
+JAVAFX_ARGS="$JAVAFX_ARGS --add-modules javafx.controls"
+
+# Compile the application and the benchmarks together
+echo "Compiling benchmarks..."
+rm -rf bin
+mkdir -p bin
+find ../src src -name "*.java" > sources.txt
+javac $JAVAFX_ARGS \
+      -cp "$CLASSPATH" \
+      -processor org.openjdk.jmh.generators.BenchmarkProcessor \
+      -d bin \
+      @sources.txt
+
+if [ $? -ne 0 ]; then
+    echo "Compilation failed!"
+    rm sources.txt
+    exit 1
+fi
+
+rm sources.txt
+
+# Throughput and sampled latency percentiles come from the benchmark modes,
+# allocation rate from the gc profiler
+java $JAVAFX_ARGS -Djava.awt.headless=true \
+     -cp "$CLASSPATH" \
+     org.openjdk.jmh.Main \
+     -prof gc \
+     -jvmArgsAppend "$JAVAFX_ARGS -Djava.awt.headless=true" \
+     "$@"
@@ -0,0 +1,114 @@
+/*  Title:  BenchHotPaths.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: bench/HotPaths.java
+ *  Description: Default package side of the benchmark bridge. Runs the application
+ *  classes headless: the display controls are never created, so the display timer
+ *  never starts and the refresh is driven here instead. No JavaFX stage or toolkit
+ *  is needed.
+ */
+import java.io.IOException;
+import java.util.Map;
+
+public class BenchHotPaths implements bench.HotPaths {
+    private final SerialController serialController = SerialController.getInstance();
+    private final SharedElements sharedElements = SharedElements.getInstance();
+    private final TelemetryParser parser = new TelemetryParser();
+    private final Sample scratch = new Sample();
+    private final Sample logSample = new Sample();
+    private DataLogger logger;
+
+    public BenchHotPaths() {
+        logSample.incomingPitotV = 0.301f;
+        logSample.wakePitotV = 1.254f;
+        logSample.currentV = 0.912f;
+        logSample.voltageV = 1.187f;
+        logSample.rawThrust = 260000;
+        logSample.rpm = 7034.5f;
+        logSample.passThrough();
+    }
+
+    @Override
+    public boolean parseLine(byte[] line, int length) {
+        return parser.parse(line, 0, length, scratch);
+    }
+
+    @Override
+    public void parseData(String line) {
+        serialController.parseData(line);
+    }
+
+    @Override
+    public double convertRawToThrust(long raw) {
+        return sharedElements.convertRawToThrust(raw);
+    }
+
+    @Override
+    public double convertVoltageToAirspeed(float volts, boolean incoming) {
+        return sharedElements.convertVoltageToAirspeed(volts, incoming);
+    }
+
+    @Override
+    public double convertVoltageToCurrent(float volts) {
+        return sharedElements.convertVoltageToCurrent(volts);
+    }
+
+    @Override
+    public double convertVoltageToVoltage(float volts) {
+        return sharedElements.convertVoltageToVoltage(volts);
+    }
+
+    @Override
+    public void useCalibrationCurves(boolean multiPoint) {
+        Calibration constants = new Calibration();
+        double[] counts = new double[8];
+        double[] grams = new double[8];
+        double[] volts = new double[8];
+        double[] speedSquared = new double[8];
+        double[] amps = new double[8];
+        double[] supply = new double[8];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 42000 + i * 40000;
+            grams[i] = constants.thrustGrams(counts[i]);
+            volts[i] = 0.3 + i * 0.4;
+            double speed = constants.airspeedMetersPerSecond((float) volts[i], true);
+            speedSquared[i] = speed * speed;
+            amps[i] = constants.currentAmps((float) volts[i]);
+            supply[i] = constants.voltageVolts((float) volts[i]);
+        }
+        //Cubic for thrust so the interpolation table is exercised; the rest compile to straight lines
+        sharedElements.setCalibrationCurve(SampleStore.Channel.THRUST, multiPoint ? CalibrationCurve.fit(counts, grams, 3) : null);
+        sharedElements.setCalibrationCurve(SampleStore.Channel.INCOMING_PITOT, multiPoint ? CalibrationCurve.fit(volts, speedSquared, 1) : null);
+        sharedElements.setCalibrationCurve(SampleStore.Channel.WAKE_PITOT, multiPoint ? CalibrationCurve.fit(volts, speedSquared, 1) : null);
+        sharedElements.setCalibrationCurve(SampleStore.Channel.CURRENT, multiPoint ? CalibrationCurve.fit(volts, amps, 1) : null);
+        sharedElements.setCalibrationCurve(SampleStore.Channel.VOLTAGE, multiPoint ? CalibrationCurve.fit(volts, supply, 1) : null);
+    }
+
+    @Override
+    public void openLog(String directory, boolean binary) throws IOException {
+        //Private ring: nothing is published to it, the benchmark calls logData() directly
+        logger = new DataLogger(new TelemetryRing(), "bench", sharedElements::convert);
+        logger.setFilePath(directory + "/thruststand_bench");
+        logger.setBinaryFormat(binary);
+        logger.openLog(new Calibration(), Map.of());
+    }
+
+    @Override
+    public void logSample() {
+        logSample.receivedNanos = System.nanoTime();
+        logger.logData(logSample);
+    }
+
+    @Override
+    public void closeLog() {
+        logger.closeLog();
+        new java.io.File(logger.getCurrentFilePath()).delete();
+    }
+
+    @Override
+    public String lineToProperty(String line) {
+        serialController.parseData(line);
+        sharedElements.refreshDisplay();
+        return sharedElements.thrustProperty().get();
+    }
+}
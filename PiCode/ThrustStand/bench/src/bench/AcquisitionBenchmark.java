@@ -0,0 +1,51 @@
+/*  Title:  AcquisitionBenchmark.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: run-benchmarks.sh
+ *  Description: Receive side: parsing a telemetry line in place, and the full
+ *  SerialController.parseData() path that also publishes to the telemetry ring.
+ */
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AcquisitionBenchmark {
+    private static final String[] LINES = {
+        "0.301,1.254,0.912,1.187,260000,7034.5",
+        "0.283,0.283,0.394,1.260,42363,0.0",
+        "0.312,1.871,2.114,1.152,501234,11250.0",
+        "0.298,0.655,0.533,1.241,-1024,3120.5"
+    };
+
+    private HotPaths paths;
+    private byte[][] lineBytes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        paths = HotPaths.load();
+        lineBytes = new byte[LINES.length][];
+        for (int i = 0; i < LINES.length; i++) {
+            lineBytes[i] = LINES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public boolean parseInPlace() {
+        byte[] line = lineBytes[next++ & 3];
+        return paths.parseLine(line, line.length);
+    }
+
+    @Benchmark
+    public void parseData() {
+        paths.parseData(LINES[next++ & 3]);
+    }
+}
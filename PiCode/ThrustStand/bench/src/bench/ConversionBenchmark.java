@@ -0,0 +1,63 @@
+/*  Title:  ConversionBenchmark.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: run-benchmarks.sh
+ *  Description: Each SharedElements.convert* method with the current unit
+ *  selections, using the single-point constants or multi-point calibration curves.
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionBenchmark {
+    @Param({"false", "true"})
+    public boolean multiPoint;
+
+    private HotPaths paths;
+    //Varied inputs so the results cannot be constant folded
+    private long rawThrust = 260000;
+    private float volts = 1.254f;
+
+    @Setup
+    public void setup() {
+        paths = HotPaths.load();
+        paths.useCalibrationCurves(multiPoint);
+    }
+
+    //Sweep across the 0.3 to 3.2 V the sensors put out; a float that only grows stops changing at 32768
+    private float nextVolts() {
+        return volts < 3.2f ? volts + 0.001f : 0.3f;
+    }
+
+    @Benchmark
+    public double convertRawToThrust() {
+        //Sweep across the load cell range, as real readings would
+        rawThrust = rawThrust < 320000 ? rawThrust + 7 : 42000;
+        return paths.convertRawToThrust(rawThrust);
+    }
+
+    @Benchmark
+    public double convertVoltageToAirspeed() {
+        volts = nextVolts();
+        return paths.convertVoltageToAirspeed(volts, false);
+    }
+
+    @Benchmark
+    public double convertVoltageToCurrent() {
+        volts = nextVolts();
+        return paths.convertVoltageToCurrent(volts);
+    }
+
+    @Benchmark
+    public double convertVoltageToVoltage() {
+        volts = nextVolts();
+        return paths.convertVoltageToVoltage(volts);
+    }
+}
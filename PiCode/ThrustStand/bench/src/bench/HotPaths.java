@@ -0,0 +1,50 @@
+/*  Title:  HotPaths.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: BenchHotPaths.java
+ *  Description: The application's hot paths as seen by the benchmarks. JMH will not
+ *  generate code for benchmarks in the default package, and named packages cannot
+ *  see default package classes, so the benchmarks reach the application through
+ *  this interface, implemented by BenchHotPaths in the default package.
+ */
+package bench;
+
+import java.io.IOException;
+
+public interface HotPaths {
+    //TelemetryParser straight into a reused sample, no ring
+    boolean parseLine(byte[] line, int length);
+
+    //SerialController.parseData(): parse and publish to the telemetry ring
+    void parseData(String line);
+
+    double convertRawToThrust(long raw);
+
+    double convertVoltageToAirspeed(float volts, boolean incoming);
+
+    double convertVoltageToCurrent(float volts);
+
+    double convertVoltageToVoltage(float volts);
+
+    //Replace the single-point constants with multi-point fits of the same response, or go back to them
+    void useCalibrationCurves(boolean multiPoint);
+
+    //Open a CSV or binary log in the given directory for logSample()
+    void openLog(String directory, boolean binary) throws IOException;
+
+    //DataLogger.logData() with a fixed sample
+    void logSample();
+
+    void closeLog();
+
+    //Publish one line and run the display refresh, as the UI would, returning the thrust text
+    String lineToProperty(String line);
+
+    static HotPaths load() {
+        try {
+            return (HotPaths) Class.forName("BenchHotPaths").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchHotPaths is not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*  Title:  LoggingBenchmark.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: run-benchmarks.sh
+ *  Description: DataLogger.logData() for the CSV and binary formats. Files go to
+ *  the logDir parameter, /dev/shm by default so the disk does not dominate.
+ */
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingBenchmark {
+    @Param({"/dev/shm"})
+    public String logDir;
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private HotPaths paths;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        paths = HotPaths.load();
+        paths.openLog(logDir, binary);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        paths.closeLog();
+    }
+
+    @Benchmark
+    public void logData() {
+        paths.logSample();
+    }
+}
@@ -0,0 +1,38 @@
+/*  Title:  PipelineBenchmark.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: run-benchmarks.sh
+ *  Description: One telemetry line all the way to the display properties: parse,
+ *  publish to the ring, then the display refresh that converts, formats and sets
+ *  the properties. The sample history consumer runs as it does in the app.
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+    private static final String[] LINES = {
+        "0.301,1.254,0.912,1.187,260000,7034.5",
+        "0.312,1.871,2.114,1.152,501234,11250.0"
+    };
+
+    private HotPaths paths;
+    private int next;
+
+    @Setup
+    public void setup() {
+        paths = HotPaths.load();
+    }
+
+    @Benchmark
+    public String lineToProperty() {
+        return paths.lineToProperty(LINES[next++ & 1]);
+    }
+}
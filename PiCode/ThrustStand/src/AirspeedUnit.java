@@ -0,0 +1,51 @@
+/*  Title:  AirspeedUnit.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: Airspeed units offered in the UI with their conversion factors from
+ *  and to m/s.
+ */
+public enum AirspeedUnit {
+    METERS_PER_SECOND("m/s", 1.0),
+    MPH("mph", 0.44704),            //Exact, 1609.344 m per 3600 s
+    FEET_PER_SECOND("ft/s", 0.3048),
+    KPH("kph", 1 / 3.6);
+
+    private final String label;
+    private final double perMeterPerSecond;
+    private final double metersPerSecondPerUnit;
+
+    //Both directions come from the one factor, so they always agree
+    AirspeedUnit(String label, double metersPerSecondPerUnit) {
+        this.label = label;
+        this.perMeterPerSecond = 1 / metersPerSecondPerUnit;
+        this.metersPerSecondPerUnit = metersPerSecondPerUnit;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public double fromMetersPerSecond(double speedMS) {
+        return speedMS * perMeterPerSecond;
+    }
+
+    public double toMetersPerSecond(double value) {
+        return value * metersPerSecondPerUnit;
+    }
+
+    //Unit for a combo box label; unknown labels fall back to m/s
+    public static AirspeedUnit fromLabel(String label) {
+        for (AirspeedUnit unit : values()) {
+            if (unit.label.equals(label)) {
+                return unit;
+            }
+        }
+        return METERS_PER_SECOND;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
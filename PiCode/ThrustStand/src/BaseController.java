@@ -3,12 +3,20 @@
  *  Email:  evan.e.schober@wmich.edu
  *  Parent Class: ThrustStand.java
  *  Description: Abstract class extended by each scene controller to maintain
- *  continuous serial connection as scenes change.  
+ *  continuous serial connection as scenes change. Scenes are loaded once and cached
+ *  by ThrustStand, so initialize() runs only once; onActivate() and onDeactivate() run
+ *  each time the scene is shown or replaced. Telemetry subscriptions made through
+ *  subscribe() last until the scene is deactivated, so make them in onActivate().
  */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 public abstract class BaseController {
     protected SerialController serialController;
     protected SharedElements sharedElements;
     protected ThrustStand thrustStand;
+    private final List<TelemetryBus.Subscription> subscriptions = new ArrayList<>();
 
 
     public BaseController(){
@@ -19,4 +27,30 @@ public abstract class BaseController {
     public void setMainApplication(ThrustStand thrustStand){
         this.thrustStand = thrustStand;
     }
+
+    //Listeners run on the ingest thread; use Platform.runLater to touch controls
+    protected <T> TelemetryBus.Subscription subscribe(TelemetryBus.Topic<T> topic, Consumer<? super T> listener){
+        TelemetryBus.Subscription subscription = serialController.getTelemetryBus().subscribe(topic, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    //Scene is about to be shown (JavaFX thread)
+    protected void onActivate(){}
+
+    //Scene has been replaced or the application is closing (JavaFX thread)
+    protected void onDeactivate(){}
+
+    //Called by ThrustStand on each scene switch
+    final void activate(){
+        onActivate();
+    }
+
+    final void deactivate(){
+        for (TelemetryBus.Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+        subscriptions.clear();
+        onDeactivate();
+    }
 }
@@ -0,0 +1,147 @@
+/*  Title:  BinaryFrameDecoder.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Decoder for the binary telemetry link (PROTO:BIN). Each frame is
+ *  COBS encoded and terminated by 0x00. The decoded 27 byte little-endian layout
+ *  matches TelemetryFrame in ThrustStand.ino:
+ *      u8 type, u32 seq, u32 micros, u16 pitot1, u16 pitot2, u16 current,
+ *      u16 voltage, i32 loadCell, f32 rpm, u16 crc (CRC-16/CCITT-FALSE)
+ *  Command acks share the link as 7 byte AckFrames: u8 type, u32 id, u16 crc, with
+ *  type 0x02 for a command that was applied and 0x03 (NAK) for one that was not.
+ *  Frames are decoded in place in the receive buffer. Not thread safe; owned by
+ *  the ingest thread.
+ */
+public final class BinaryFrameDecoder {
+    public static final int FRAME_LENGTH = 27;
+    public static final int ACK_FRAME_LENGTH = 7;
+    private static final int FRAME_TELEMETRY = 0x01;
+    private static final int FRAME_ACK = 0x02;
+    private static final int FRAME_NAK = 0x03;
+
+    //Teensy ADC: 12-bit counts over 3.3V, matches readVoltage() in ThrustStand.ino
+    private static final float VOLTS_PER_COUNT = 3.3f / 4095.0f;
+
+    private long lastSeq = -1;
+    private long lastAck = -1;
+    private long lastNak = -1;
+    private volatile long framesDecoded;
+    private volatile long framesDropped;
+    private volatile long framesCorrupt;
+
+    //Forget the sequence history, e.g. after the link mode changes
+    public void resync() {
+        lastSeq = -1;
+    }
+
+    public long getFramesDecoded() { return framesDecoded; }
+    public long getFramesDropped() { return framesDropped; }
+    public long getFramesCorrupt() { return framesCorrupt; }
+
+    /**
+     * Decode one COBS frame (without its 0x00 delimiter) into dst.
+     * dst is only modified if the frame is valid. A valid ack or NAK frame is held for
+     * pollAck() or pollNak().
+     * @return true if the frame passed length, type and CRC checks
+     */
+    public boolean decode(byte[] buf, int start, int end, Sample dst) {
+        int length = cobsDecode(buf, start, end);
+        if (length == ACK_FRAME_LENGTH
+                && ((buf[start] & 0xFF) == FRAME_ACK || (buf[start] & 0xFF) == FRAME_NAK)
+                && crc16(buf, start, ACK_FRAME_LENGTH - 2) == readU16(buf, start + ACK_FRAME_LENGTH - 2)) {
+            if ((buf[start] & 0xFF) == FRAME_ACK) {
+                lastAck = readU32(buf, start + 1);
+            } else {
+                lastNak = readU32(buf, start + 1);
+            }
+            return false;
+        }
+        if (length != FRAME_LENGTH
+                || (buf[start] & 0xFF) != FRAME_TELEMETRY
+                || crc16(buf, start, FRAME_LENGTH - 2) != readU16(buf, start + FRAME_LENGTH - 2)) {
+            framesCorrupt++;
+            return false;
+        }
+
+        long seq = readU32(buf, start + 1);
+        if (lastSeq >= 0) {
+            long gap = (seq - lastSeq - 1) & 0xFFFFFFFFL;
+            //A huge gap means the device restarted rather than lost frames
+            if (gap < 0x80000000L) {
+                framesDropped += gap;
+            }
+        }
+        lastSeq = seq;
+        framesDecoded++;
+
+        dst.deviceMicros = readU32(buf, start + 5);
+        dst.incomingPitotV = readU16(buf, start + 9) * VOLTS_PER_COUNT;
+        dst.wakePitotV = readU16(buf, start + 11) * VOLTS_PER_COUNT;
+        dst.currentV = readU16(buf, start + 13) * VOLTS_PER_COUNT;
+        dst.voltageV = readU16(buf, start + 15) * VOLTS_PER_COUNT;
+        dst.rawThrust = readI32(buf, start + 17);
+        dst.rpm = Float.intBitsToFloat(readI32(buf, start + 21));
+        dst.passThrough();
+        return true;
+    }
+
+    //Command id from the ack frame just decoded, or -1; cleared by the call
+    public long pollAck() {
+        long ack = lastAck;
+        lastAck = -1;
+        return ack;
+    }
+
+    //Command id from the NAK frame just decoded, or -1; cleared by the call
+    public long pollNak() {
+        long nak = lastNak;
+        lastNak = -1;
+        return nak;
+    }
+
+    /**
+     * Decode COBS in place. The decoded bytes start at start.
+     * @return Decoded length, or -1 if the encoding is invalid
+     */
+    static int cobsDecode(byte[] buf, int start, int end) {
+        int read = start;
+        int write = start;
+        while (read < end) {
+            int code = buf[read++] & 0xFF;
+            if (code == 0 || read + code - 1 > end) {
+                return -1;
+            }
+            for (int i = 1; i < code; i++) {
+                buf[write++] = buf[read++];
+            }
+            if (code != 0xFF && read < end) {
+                buf[write++] = 0;
+            }
+        }
+        return write - start;
+    }
+
+    //CRC-16/CCITT-FALSE (poly 0x1021, init 0xFFFF)
+    static int crc16(byte[] buf, int start, int length) {
+        int crc = 0xFFFF;
+        for (int i = start; i < start + length; i++) {
+            crc ^= (buf[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return crc & 0xFFFF;
+    }
+
+    private static int readU16(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | (buf[i + 1] & 0xFF) << 8;
+    }
+
+    private static int readI32(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | (buf[i + 1] & 0xFF) << 8 | (buf[i + 2] & 0xFF) << 16 | buf[i + 3] << 24;
+    }
+
+    private static long readU32(byte[] buf, int i) {
+        return readI32(buf, i) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,294 @@
+/*  Title:  Calibration.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: Sensor calibration constants and the conversions from raw Teensy
+ *  readings to physical units. Kept free of JavaFX so that recorded sessions can be
+ *  converted on read with the calibration snapshot stored in the log.
+ *  Any channel but RPM can instead carry a multi-point CalibrationCurve, which then
+ *  replaces that channel's single-point constants until it is cleared.
+ *  A Calibration never changes once built; edits go through a Builder and produce a
+ *  new snapshot.
+ */
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+public final class Calibration {
+    private static final double DEFAULT_LOADCELL_ZERO_OFFSET = 42363.0;
+    private static final double DEFAULT_LOADCELL_SCALE = 0.002296;
+    private static final double DEFAULT_INCOMING_PITOT = 1.0;
+    private static final double DEFAULT_WAKE_PITOT = 1.0;
+    private static final double DEFAULT_CURRENT_ZERO_OFFSET = 0.394;
+    private static final double DEFAULT_CURRENT_SENSITIVITY = 0.02;
+    private static final double DEFAULT_VOLTAGE_RATIO = 0.1;
+
+    //Pitot pressure sensor and air properties
+    static final double PITOT_SENSOR_SENSITIVITY = 0.270; //V/kPa
+    static final double PITOT_QUIESCENT_VOLTAGE = 0.283;  //Update this after measuring
+    static final double AIR_DENSITY = 1.225;              //kg/m³ at sea level, 15°C
+    //Bernoulli folded into one constant: v² = this * calibration factor * volts above quiescent
+    private static final double PITOT_SPEED_SQUARED_PER_VOLT = 2 * 1000 / (PITOT_SENSOR_SENSITIVITY * AIR_DENSITY);
+
+    private static final String CURVE_SUFFIX = "_curve";
+
+    //Immutable once built, so a snapshot can be read on any thread while the GUI edits
+    //a copy; StandPipeline swaps the whole snapshot in through a volatile field
+    final double loadCellZeroOffset;
+    final double loadCellScale;
+    final double incomingPitotCalibration;
+    final double wakePitotCalibration;
+    final double currentSensorZeroOffset;
+    final double currentSensorSensitivity;
+    final double voltageDividerRatio;
+
+    //Multi-point fits, null when the constants above apply. Pitot curves give v² in
+    //m²/s², which is linear in the sensor voltage, so the fit stays a straight line
+    final CalibrationCurve thrustCurve;
+    final CalibrationCurve incomingPitotCurve;
+    final CalibrationCurve wakePitotCurve;
+    final CalibrationCurve currentCurve;
+    final CalibrationCurve voltageCurve;
+    final double thrustCurveTare;   //Grams subtracted from the thrust curve, set by tare()
+
+    //Default calibration
+    public Calibration() {
+        this(new Builder());
+    }
+
+    private Calibration(Builder builder) {
+        loadCellZeroOffset = builder.loadCellZeroOffset;
+        loadCellScale = builder.loadCellScale;
+        incomingPitotCalibration = builder.incomingPitotCalibration;
+        wakePitotCalibration = builder.wakePitotCalibration;
+        currentSensorZeroOffset = builder.currentSensorZeroOffset;
+        currentSensorSensitivity = builder.currentSensorSensitivity;
+        voltageDividerRatio = builder.voltageDividerRatio;
+        thrustCurve = builder.thrustCurve;
+        incomingPitotCurve = builder.incomingPitotCurve;
+        wakePitotCurve = builder.wakePitotCurve;
+        currentCurve = builder.currentCurve;
+        voltageCurve = builder.voltageCurve;
+        thrustCurveTare = builder.thrustCurveTare;
+    }
+
+    //Mutable copy of this calibration to change and build a new snapshot from
+    public Builder edit() {
+        Builder builder = new Builder();
+        builder.loadCellZeroOffset = loadCellZeroOffset;
+        builder.loadCellScale = loadCellScale;
+        builder.incomingPitotCalibration = incomingPitotCalibration;
+        builder.wakePitotCalibration = wakePitotCalibration;
+        builder.currentSensorZeroOffset = currentSensorZeroOffset;
+        builder.currentSensorSensitivity = currentSensorSensitivity;
+        builder.voltageDividerRatio = voltageDividerRatio;
+        builder.thrustCurve = thrustCurve;
+        builder.incomingPitotCurve = incomingPitotCurve;
+        builder.wakePitotCurve = wakePitotCurve;
+        builder.currentCurve = currentCurve;
+        builder.voltageCurve = voltageCurve;
+        builder.thrustCurveTare = thrustCurveTare;
+        return builder;
+    }
+
+    //Calibration being edited on one thread; starts from the defaults
+    public static final class Builder {
+        double loadCellZeroOffset = DEFAULT_LOADCELL_ZERO_OFFSET;
+        double loadCellScale = DEFAULT_LOADCELL_SCALE;
+        double incomingPitotCalibration = DEFAULT_INCOMING_PITOT;
+        double wakePitotCalibration = DEFAULT_WAKE_PITOT;
+        double currentSensorZeroOffset = DEFAULT_CURRENT_ZERO_OFFSET;
+        double currentSensorSensitivity = DEFAULT_CURRENT_SENSITIVITY;
+        double voltageDividerRatio = DEFAULT_VOLTAGE_RATIO;
+        CalibrationCurve thrustCurve;
+        CalibrationCurve incomingPitotCurve;
+        CalibrationCurve wakePitotCurve;
+        CalibrationCurve currentCurve;
+        CalibrationCurve voltageCurve;
+        double thrustCurveTare;
+
+        public Calibration build() {
+            return new Calibration(this);
+        }
+
+        //Zero the thrust reading at this raw value, whichever calibration is in use
+        public Builder tare(double rawValue) {
+            loadCellZeroOffset = rawValue;
+            thrustCurveTare = thrustCurve != null ? thrustCurve.apply(rawValue) : 0;
+            return this;
+        }
+
+        /**
+         * Use a multi-point fit for a channel, or go back to its constants with null.
+         * A new thrust curve starts untared, as fitted.
+         */
+        public Builder setCurve(SampleStore.Channel channel, CalibrationCurve curve) {
+            switch (channel) {
+                case THRUST -> {
+                    thrustCurveTare = 0;
+                    thrustCurve = curve;
+                }
+                case INCOMING_PITOT -> incomingPitotCurve = curve;
+                case WAKE_PITOT -> wakePitotCurve = curve;
+                case CURRENT -> currentCurve = curve;
+                case VOLTAGE -> voltageCurve = curve;
+                case RPM -> throw new IllegalArgumentException("RPM is counted by the Teensy, not calibrated");
+            }
+            return this;
+        }
+
+        /**
+         * Apply one key=value line as written by write(), curves included.
+         * @return false if the key is not a calibration key
+         * @throws IllegalArgumentException if the value does not parse
+         */
+        public boolean set(String key, String value) {
+            key = key.trim();
+            if (key.endsWith(CURVE_SUFFIX)) {
+                for (SampleStore.Channel channel : SampleStore.Channel.values()) {
+                    if (channel != SampleStore.Channel.RPM && curveKey(channel).equals(key)) {
+                        setCurve(channel, CalibrationCurve.parse(value.trim()));
+                        return true;
+                    }
+                }
+            }
+            return set(key, Double.parseDouble(value.trim()));
+        }
+
+        /**
+         * Apply one key=value pair as written by write().
+         * @return false if the key is not a calibration key
+         */
+        public boolean set(String key, double value) {
+            switch (key) {
+                case "loadcell_offset" -> loadCellZeroOffset = value;
+                case "loadcell_scale" -> loadCellScale = value;
+                case "incoming_pitot" -> incomingPitotCalibration = value;
+                case "wake_pitot" -> wakePitotCalibration = value;
+                case "current_zero" -> currentSensorZeroOffset = value;
+                case "current_sensitivity" -> currentSensorSensitivity = value;
+                case "voltage" -> voltageDividerRatio = value;
+                case "thrust_curve_tare" -> thrustCurveTare = value;
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public CalibrationCurve getCurve(SampleStore.Channel channel) {
+        return switch (channel) {
+            case THRUST -> thrustCurve;
+            case INCOMING_PITOT -> incomingPitotCurve;
+            case WAKE_PITOT -> wakePitotCurve;
+            case CURRENT -> currentCurve;
+            case VOLTAGE -> voltageCurve;
+            case RPM -> null;
+        };
+    }
+
+    //Key of a channel's curve in calibration files, e.g. "incoming_pitot_curve"
+    public static String curveKey(SampleStore.Channel channel) {
+        return channel.name().toLowerCase() + CURVE_SUFFIX;
+    }
+
+    //Writes the key=value lines used by calibration.txt and session log headers
+    public void write(PrintWriter writer) {
+        writer.println("loadcell_offset=" + loadCellZeroOffset);
+        writer.println("loadcell_scale=" + loadCellScale);
+        writer.println("incoming_pitot=" + incomingPitotCalibration);
+        writer.println("wake_pitot=" + wakePitotCalibration);
+        writer.println("current_zero=" + currentSensorZeroOffset);
+        writer.println("current_sensitivity=" + currentSensorSensitivity);
+        writer.println("voltage=" + voltageDividerRatio);
+        for (SampleStore.Channel channel : SampleStore.Channel.values()) {
+            CalibrationCurve curve = getCurve(channel);
+            if (curve != null) {
+                writer.println(curveKey(channel) + "=" + curve.describe());
+            }
+        }
+        //After the thrust curve, since setting the curve clears it
+        if (thrustCurve != null) {
+            writer.println("thrust_curve_tare=" + thrustCurveTare);
+        }
+    }
+
+    //CRC32 of the written calibration without the tare, so runs on the same sensor
+    //setup share a hash however often the load cell was zeroed between them
+    public int hash() {
+        StringWriter text = new StringWriter();
+        write(new PrintWriter(text));
+        CRC32 crc = new CRC32();
+        for (String line : text.toString().split("\n")) {
+            if (!line.startsWith("loadcell_offset=") && !line.startsWith("thrust_curve_tare=")) {
+                crc.update(line.trim().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    //Raw HX711 reading to grams-force using zero offset and scaling
+    public double thrustGrams(double rawValue) {
+        if (thrustCurve != null) {
+            return thrustCurve.apply(rawValue) - thrustCurveTare;
+        }
+        double zeroedValue = rawValue - loadCellZeroOffset;
+        return zeroedValue * loadCellScale;
+    }
+
+    //Pitot sensor voltage to airspeed in m/s
+    public double airspeedMetersPerSecond(float voltage, boolean isIncoming) {
+        CalibrationCurve curve = isIncoming ? incomingPitotCurve : wakePitotCurve;
+        double speedSquared;
+        if (curve != null) {
+            speedSquared = curve.apply(voltage);
+        } else {
+            //Volts above quiescent -> kPa -> Pa, times the installation factor, then
+            //Bernoulli (v² = 2p/ρ), with the sensor and air constants folded together
+            double calibrationFactor = isIncoming ?
+                incomingPitotCalibration : wakePitotCalibration;
+            speedSquared = (voltage - PITOT_QUIESCENT_VOLTAGE) * (calibrationFactor * PITOT_SPEED_SQUARED_PER_VOLT);
+        }
+        //Clamp negative values to 0 since sensors are unidirectional
+        return Math.sqrt(Math.max(0, speedSquared));
+    }
+
+    //Installation factor that makes a pitot reading at this voltage convert to the known speed
+    static double pitotCalibrationFactor(double voltage, double metersPerSecond) {
+        return metersPerSecond * metersPerSecond / ((voltage - PITOT_QUIESCENT_VOLTAGE) * PITOT_SPEED_SQUARED_PER_VOLT);
+    }
+
+    /**
+     * Convert voltage sensor reading to current
+     * @param voltage Raw voltage from current sensor
+     * @return Current in amperes
+     */
+    public double currentAmps(float voltage) {
+        // ACS758ECB-200U specifications:
+        // Sensitivity: 20mV/A = 0.02V/A
+        // Quiescent voltage (zero current): 0.6V
+
+        // Current = (Vout - Vq) / sensitivity
+        // Where: Vout = measured voltage
+        //        Vq = quiescent voltage (0.6V - Nominal)
+        if (currentCurve != null) {
+            return currentCurve.apply(voltage);
+        }
+        return (voltage - currentSensorZeroOffset) / currentSensorSensitivity;
+    }
+
+    /**
+     * Convert voltage sensor reading to actual voltage
+     * @param voltage Raw voltage from voltage divider
+     * @return Voltage in volts
+     */
+    public double voltageVolts(float voltage) {
+        if (voltageCurve != null) {
+            return voltageCurve.apply(voltage);
+        }
+        // Convert based on voltage divider ratio
+        return voltage / voltageDividerRatio;
+    }
+}
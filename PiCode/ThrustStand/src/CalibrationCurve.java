@@ -0,0 +1,230 @@
+/*  Title:  CalibrationCurve.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: Calibration.java
+ *  Description: A sensor response fitted by least squares to several reference
+ *  points (a straight line, or a polynomial up to cubic for a load cell that is not
+ *  quite linear), then compiled into straight segments evenly spaced across the
+ *  calibrated range. Converting a reading is one index calculation and one multiply-
+ *  add, with no powers or divisions, whatever the degree; a straight line is a single
+ *  segment and stays exact. Readings outside the calibrated range continue along the
+ *  end segments instead of following the polynomial, which can swing far off once
+ *  past its data. Immutable, so any thread may use it.
+ */
+import java.util.Arrays;
+
+public final class CalibrationCurve {
+    public static final int MAX_DEGREE = 3;
+    static final int TABLE_SEGMENTS = 256;
+
+    //Polynomial in t = (x - centre) / halfRange, lowest power first; the scaling keeps
+    //the fit well conditioned for raw load cell counts in the hundreds of thousands
+    private final double[] coefficients;
+    private final double xMin;
+    private final double xMax;
+
+    //Compiled form: segment i covers readings from xMin + i / invStep, where the
+    //curve is approximated by intercept[i] + slope[i] * reading
+    private final double[] intercept;
+    private final double[] slope;
+    private final double invStep;
+    private final int lastSegment;
+
+    private CalibrationCurve(double[] coefficients, double xMin, double xMax) {
+        this.coefficients = coefficients;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        int segments = coefficients.length == 2 ? 1 : TABLE_SEGMENTS;
+        intercept = new double[segments];
+        slope = new double[segments];
+        double step = (xMax - xMin) / segments;
+        double x0 = xMin;
+        double y0 = evaluate(x0);
+        for (int i = 0; i < segments; i++) {
+            double x1 = i == segments - 1 ? xMax : xMin + step * (i + 1);
+            double y1 = evaluate(x1);
+            slope[i] = (y1 - y0) / (x1 - x0);
+            intercept[i] = y0 - slope[i] * x0;
+            x0 = x1;
+            y0 = y1;
+        }
+        invStep = segments / (xMax - xMin);
+        lastSegment = segments - 1;
+    }
+
+    /**
+     * Least squares fit of reference values against raw readings.
+     * @param raw Sensor readings, in the units the Teensy sends
+     * @param reference Known value at each reading
+     * @param degree 1 for a straight line, up to MAX_DEGREE
+     * @throws IllegalArgumentException if the points cannot determine a curve of that degree
+     */
+    public static CalibrationCurve fit(double[] raw, double[] reference, int degree) {
+        if (degree < 1 || degree > MAX_DEGREE) {
+            throw new IllegalArgumentException("Degree must be 1 to " + MAX_DEGREE + ": " + degree);
+        }
+        if (raw.length != reference.length) {
+            throw new IllegalArgumentException("Each reading needs one reference value");
+        }
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < raw.length; i++) {
+            if (!Double.isFinite(raw[i]) || !Double.isFinite(reference[i])) {
+                throw new IllegalArgumentException("Calibration point " + (i + 1) + " is not a number");
+            }
+            min = Math.min(min, raw[i]);
+            max = Math.max(max, raw[i]);
+        }
+        if (distinctCount(raw) <= degree) {
+            throw new IllegalArgumentException("A degree " + degree + " fit needs at least " + (degree + 1)
+                    + " points with different readings");
+        }
+
+        //Normal equations in the scaled variable, solved by elimination with partial pivoting
+        double centre = (min + max) / 2;
+        double half = (max - min) / 2;
+        int n = degree + 1;
+        double[][] a = new double[n][n + 1];
+        for (int p = 0; p < raw.length; p++) {
+            double t = (raw[p] - centre) / half;
+            double[] powers = new double[2 * n - 1];
+            powers[0] = 1;
+            for (int k = 1; k < powers.length; k++) {
+                powers[k] = powers[k - 1] * t;
+            }
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    a[row][col] += powers[row + col];
+                }
+                a[row][n] += reference[p] * powers[row];
+            }
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            if (Math.abs(a[col][col]) < 1e-12 * raw.length) {
+                throw new IllegalArgumentException("Calibration points are too close together for a degree " + degree + " fit");
+            }
+            for (int row = col + 1; row < n; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k <= n; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+        double[] coefficients = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = a[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= a[row][k] * coefficients[k];
+            }
+            coefficients[row] = sum / a[row][row];
+        }
+        return new CalibrationCurve(coefficients, min, max);
+    }
+
+    private static int distinctCount(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //Convert a reading through the compiled table
+    public double apply(double x) {
+        if (lastSegment == 0) {
+            return intercept[0] + slope[0] * x;
+        }
+        //Out of range readings use an end segment. Plain comparisons, predicted right for
+        //every reading in range, measured faster here than clamping with Math.min/max
+        int i = (int) ((x - xMin) * invStep);
+        i = i < 0 ? 0 : (i > lastSegment ? lastSegment : i);
+        return intercept[i] + slope[i] * x;
+    }
+
+    //The fitted polynomial itself, for building the table and checking the fit
+    public double evaluate(double x) {
+        double t = (x - (xMin + xMax) / 2) / ((xMax - xMin) / 2);
+        double y = 0;
+        for (int k = coefficients.length - 1; k >= 0; k--) {
+            y = y * t + coefficients[k];
+        }
+        return y;
+    }
+
+    public int getDegree() {
+        return coefficients.length - 1;
+    }
+
+    public double getMinReading() {
+        return xMin;
+    }
+
+    public double getMaxReading() {
+        return xMax;
+    }
+
+    //Root mean square of the converted points against their reference values
+    public double rmsError(double[] raw, double[] reference) {
+        double sum = 0;
+        for (int i = 0; i < raw.length; i++) {
+            double error = apply(raw[i]) - reference[i];
+            sum += error * error;
+        }
+        return raw.length > 0 ? Math.sqrt(sum / raw.length) : 0;
+    }
+
+    //"c0,c1,c2@min:max" for calibration.txt and session log headers
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < coefficients.length; k++) {
+            if (k > 0) {
+                text.append(',');
+            }
+            text.append(coefficients[k]);
+        }
+        return text.append('@').append(xMin).append(':').append(xMax).toString();
+    }
+
+    /**
+     * Inverse of describe().
+     * @throws IllegalArgumentException if the text is malformed
+     */
+    public static CalibrationCurve parse(String text) {
+        try {
+            int at = text.indexOf('@');
+            int colon = text.indexOf(':', at);
+            if (at < 0 || colon < 0) {
+                throw new IllegalArgumentException("Expected c0,c1,...@min:max, got \"" + text + "\"");
+            }
+            String[] parts = text.substring(0, at).split(",");
+            if (parts.length < 2 || parts.length > MAX_DEGREE + 1) {
+                throw new IllegalArgumentException("Curve must have 2 to " + (MAX_DEGREE + 1) + " coefficients: \"" + text + "\"");
+            }
+            double[] coefficients = new double[parts.length];
+            for (int k = 0; k < parts.length; k++) {
+                coefficients[k] = Double.parseDouble(parts[k].trim());
+            }
+            double min = Double.parseDouble(text.substring(at + 1, colon).trim());
+            double max = Double.parseDouble(text.substring(colon + 1).trim());
+            if (!(max > min)) {
+                throw new IllegalArgumentException("Curve range is empty: \"" + text + "\"");
+            }
+            return new CalibrationCurve(coefficients, min, max);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in curve \"" + text + "\"");
+        }
+    }
+}
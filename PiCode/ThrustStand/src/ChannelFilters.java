@@ -0,0 +1,166 @@
+/*  Title:  ChannelFilters.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Per-channel filter stage for one stand. The ingest thread (or the
+ *  replayer standing in for it) runs every sample through it just before publishing,
+ *  so each Sample carries both its raw readings and the filtered ones. The display,
+ *  statistics and converted log columns use the filtered values; the binary session
+ *  log and the history used for calibration keep the raw readings, and the CSV log
+ *  writes the unfiltered values in extra columns whenever a filter is configured.
+ *  A new configuration is parsed on the caller's thread and swapped in whole, so
+ *  the filtering thread never sees a half-built filter or waits on a lock.
+ */
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class ChannelFilters {
+    public static final double DEFAULT_SAMPLE_RATE_HZ = 50; //Matches SEND_INTERVAL on the Teensy
+
+    private static final SampleStore.Channel[] CHANNELS = SampleStore.Channel.values();
+
+    //One parsed configuration; its filter state belongs to the filtering thread
+    private static final class Bank {
+        final String[] specs = new String[CHANNELS.length];
+        final SignalFilter[] filters = new SignalFilter[CHANNELS.length];
+        final double sampleRateHz;
+        boolean active;
+
+        Bank(double sampleRateHz) {
+            this.sampleRateHz = sampleRateHz;
+        }
+    }
+
+    private volatile Bank bank = new Bank(DEFAULT_SAMPLE_RATE_HZ);
+
+    /**
+     * Replace the filters on every channel (any thread).
+     * @param specs Spec per channel (see SignalFilter); missing channels are unfiltered
+     * @param sampleRateHz Telemetry rate the low-pass cutoffs are relative to
+     * @throws IllegalArgumentException if any spec is invalid; nothing changes then
+     */
+    public void configure(Map<SampleStore.Channel, String> specs, double sampleRateHz) {
+        if (!(sampleRateHz > 0)) {
+            throw new IllegalArgumentException("Sample rate must be positive: " + sampleRateHz);
+        }
+        Bank next = new Bank(sampleRateHz);
+        for (SampleStore.Channel channel : CHANNELS) {
+            String spec = specs.get(channel);
+            SignalFilter filter;
+            try {
+                filter = SignalFilter.parse(spec, sampleRateHz);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(keyOf(channel) + ": " + e.getMessage());
+            }
+            next.filters[channel.ordinal()] = filter;
+            next.specs[channel.ordinal()] = filter != null ? spec.trim() : "none";
+            next.active |= filter != null;
+        }
+        bank = next;
+    }
+
+    //Spec in use on a channel, "none" if unfiltered
+    public String getSpec(SampleStore.Channel channel) {
+        return bank.specs[channel.ordinal()] != null ? bank.specs[channel.ordinal()] : "none";
+    }
+
+    public double getSampleRateHz() {
+        return bank.sampleRateHz;
+    }
+
+    //True if any channel is filtered
+    public boolean isActive() {
+        return bank.active;
+    }
+
+    /**
+     * Fill the sample's filtered values from its raw ones. Only one thread may call
+     * this at a time, and samples must arrive in order.
+     */
+    public void apply(Sample sample) {
+        Bank current = bank;
+        sample.passThrough();
+        if (!current.active) {
+            return;
+        }
+        SignalFilter[] filters = current.filters;
+        SignalFilter f;
+        if ((f = filters[SampleStore.Channel.THRUST.ordinal()]) != null) {
+            sample.filteredThrust = filter(f, sample.rawThrust);
+        }
+        if ((f = filters[SampleStore.Channel.INCOMING_PITOT.ordinal()]) != null) {
+            sample.filteredIncomingPitotV = (float) filter(f, sample.incomingPitotV);
+        }
+        if ((f = filters[SampleStore.Channel.WAKE_PITOT.ordinal()]) != null) {
+            sample.filteredWakePitotV = (float) filter(f, sample.wakePitotV);
+        }
+        if ((f = filters[SampleStore.Channel.CURRENT.ordinal()]) != null) {
+            sample.filteredCurrentV = (float) filter(f, sample.currentV);
+        }
+        if ((f = filters[SampleStore.Channel.VOLTAGE.ordinal()]) != null) {
+            sample.filteredVoltageV = (float) filter(f, sample.voltageV);
+        }
+        if ((f = filters[SampleStore.Channel.RPM.ordinal()]) != null) {
+            sample.filteredRpm = (float) filter(f, sample.rpm);
+        }
+        sample.filtered = true;
+    }
+
+    //A corrupt reading passes through rather than poisoning the filter state
+    private static double filter(SignalFilter filter, double x) {
+        return Double.isFinite(x) ? filter.apply(x) : x;
+    }
+
+    //Lowercase channel name used in specs and on the command line, e.g. "incoming_pitot"
+    public static String keyOf(SampleStore.Channel channel) {
+        return channel.name().toLowerCase();
+    }
+
+    public static SampleStore.Channel channelOf(String key) {
+        for (SampleStore.Channel channel : CHANNELS) {
+            if (keyOf(channel).equals(key.trim().toLowerCase())) {
+                return channel;
+            }
+        }
+        throw new IllegalArgumentException("Unknown channel \"" + key + "\" (use thrust, incoming_pitot, "
+                + "wake_pitot, current, voltage or rpm)");
+    }
+
+    //"thrust=median:5,lowpass:4;current=average:8@50" for the session log header, null if unfiltered
+    public String describe() {
+        Bank current = bank;
+        if (!current.active) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (SampleStore.Channel channel : CHANNELS) {
+            if (current.filters[channel.ordinal()] != null) {
+                if (text.length() > 0) {
+                    text.append(';');
+                }
+                text.append(keyOf(channel)).append('=').append(current.specs[channel.ordinal()]);
+            }
+        }
+        return text.append('@').append(current.sampleRateHz).toString();
+    }
+
+    //Inverse of describe(); an unparseable description leaves the channels unfiltered
+    public static ChannelFilters fromDescription(String description) {
+        ChannelFilters filters = new ChannelFilters();
+        if (description == null) {
+            return filters;
+        }
+        int at = description.lastIndexOf('@');
+        try {
+            Map<SampleStore.Channel, String> specs = new LinkedHashMap<>();
+            for (String entry : description.substring(0, at).split(";")) {
+                String[] parts = entry.split("=", 2);
+                specs.put(channelOf(parts[0]), parts[1]);
+            }
+            filters.configure(specs, Double.parseDouble(description.substring(at + 1)));
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring unreadable filter settings \"" + description + "\": " + e.getMessage());
+        }
+        return filters;
+    }
+}
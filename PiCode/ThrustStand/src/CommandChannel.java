@@ -0,0 +1,276 @@
+/*  Title:  CommandChannel.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Outgoing command queue for one stand, drained by its own writer thread
+ *  so callers (usually the JavaFX thread) never wait on the port. Three ways to send:
+ *      send()    in order, e.g. MODE:, BLADE:, MOTOR:ON
+ *      latest()  setpoints such as THR: and RPM:; a newer one replaces one still waiting,
+ *                so a slider can stream values without flooding the link
+ *      urgent()  safety commands such as MOTOR:OFF; sent ahead of everything waiting,
+ *                and waiting setpoints or commands of the same name are dropped
+ *  Each command goes out as NAME:VALUE@id. The Teensy echoes ACK:id (an ack frame on
+ *  the binary link) once it has applied it, and round trip times are kept per command.
+ *  A command it did not recognise or ignored (THR: with the motor off) gets NAK:id and
+ *  is counted as rejected; one with no answer within ACK_TIMEOUT_MS as timed out.
+ */
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class CommandChannel {
+    //Commands awaiting an ack are tracked by id modulo this; older ones are forgotten
+    private static final int IN_FLIGHT_SLOTS = 256;
+    private static final long CLOSE_TIMEOUT_MS = 500;
+    static final long ACK_TIMEOUT_MS = 1000;
+
+    //Send and round trip counts for one command name, e.g. THR
+    public static final class CommandStats {
+        private final String name;
+        private volatile long sent;                 //Writer thread
+        private volatile long coalesced;            //Under the channel lock
+        private volatile long acknowledged;         //Ingest thread
+        private volatile long rejected;             //Ingest thread
+        private volatile long timedOut;             //Writer thread
+        private volatile long lastRoundTripNanos;
+        private volatile long maxRoundTripNanos;
+        private volatile long totalRoundTripNanos;
+
+        private CommandStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+        public long getSent() { return sent; }
+        //Replaced by a newer setpoint before they were written
+        public long getCoalesced() { return coalesced; }
+        public long getAcknowledged() { return acknowledged; }
+        //Answered with a NAK: not recognised, or not applied in the stand's current state
+        public long getRejected() { return rejected; }
+        //Never answered within ACK_TIMEOUT_MS
+        public long getTimedOut() { return timedOut; }
+        public long getLastRoundTripNanos() { return lastRoundTripNanos; }
+        public long getMaxRoundTripNanos() { return maxRoundTripNanos; }
+
+        public double getMeanRoundTripNanos() {
+            long n = acknowledged;
+            return n > 0 ? (double) totalRoundTripNanos / n : Double.NaN;
+        }
+    }
+
+    private static final class Command {
+        final String name;
+        final String value;
+        final CommandStats stats;
+        final boolean coalesce;
+        int id;
+        long sentNanos;
+
+        Command(String name, String value, CommandStats stats, boolean coalesce) {
+            this.name = name;
+            this.value = value;
+            this.stats = stats;
+            this.coalesce = coalesce;
+        }
+    }
+
+    private final String standName;
+    //Waiting commands, guarded by this
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    private final Map<String, CommandStats> stats = new LinkedHashMap<>();
+    //Read without the lock by the diagnostics screen and metrics scrapes
+    private final List<CommandStats> statsInOrder = new CopyOnWriteArrayList<>();
+    private volatile int queueDepth;
+    //Written commands by id, for matching acks (writer thread sets, ingest thread clears)
+    private final AtomicReferenceArray<Command> inFlight = new AtomicReferenceArray<>(IN_FLIGHT_SLOTS);
+    private Thread writer;
+    private boolean running;
+    private int nextId;                             //Writer thread
+    private long lastTimeoutCheckNanos;             //Writer thread
+    private volatile long writeFailures;
+
+    CommandChannel(String standName) {
+        this.standName = standName;
+    }
+
+    //Start writing to a newly opened transport
+    synchronized void open(Transport transport) {
+        pending.clear();
+        queueDepth = 0;
+        running = true;
+        writer = new Thread(() -> writeLoop(transport), "serial-commands (" + standName + ")");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Write out whatever is still waiting, e.g. a final MOTOR:OFF, then stop the writer
+    void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = writer;
+            writer = null;
+            notifyAll();
+        }
+        if (stopping != null && Thread.currentThread() != stopping) {
+            try {
+                stopping.join(CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //Queue a command behind everything already waiting; false if the link is closed
+    public synchronized boolean send(String name, String value) {
+        return enqueue(new Command(name, value, statsFor(name), false), false);
+    }
+
+    //Queue a setpoint, replacing one of the same name that has not been written yet
+    public synchronized boolean latest(String name, String value) {
+        return enqueue(new Command(name, value, statsFor(name), true), false);
+    }
+
+    //Send ahead of everything waiting, dropping waiting setpoints and commands of the same name
+    public synchronized boolean urgent(String name, String value) {
+        return enqueue(new Command(name, value, statsFor(name), false), true);
+    }
+
+    private boolean enqueue(Command command, boolean urgent) {
+        if (!running) {
+            return false;
+        }
+        if (urgent) {
+            pending.removeIf(waiting -> waiting.coalesce || waiting.name.equals(command.name));
+            pending.addFirst(command);
+        } else {
+            if (command.coalesce && pending.removeIf(waiting -> waiting.name.equals(command.name))) {
+                command.stats.coalesced++;
+            }
+            pending.addLast(command);
+        }
+        queueDepth = pending.size();
+        notifyAll();
+        return true;
+    }
+
+    private CommandStats statsFor(String name) {
+        CommandStats s = stats.get(name);
+        if (s == null) {
+            s = new CommandStats(name);
+            stats.put(name, s);
+            statsInOrder.add(s);
+        }
+        return s;
+    }
+
+    private void writeLoop(Transport port) {
+        while (true) {
+            Command command;
+            synchronized (this) {
+                while (running && pending.isEmpty()) {
+                    expireUnanswered();
+                    try {
+                        wait(ACK_TIMEOUT_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                command = pending.pollFirst();
+                if (command == null) {
+                    return; //Closed and drained
+                }
+                queueDepth = pending.size();
+            }
+            write(port, command);
+            expireUnanswered();
+        }
+    }
+
+    //Count and forget commands the stand never answered (writer thread)
+    private void expireUnanswered() {
+        long now = System.nanoTime();
+        if (now - lastTimeoutCheckNanos < ACK_TIMEOUT_MS * 1_000_000 / 4) {
+            return;
+        }
+        lastTimeoutCheckNanos = now;
+        for (int slot = 0; slot < IN_FLIGHT_SLOTS; slot++) {
+            Command command = inFlight.get(slot);
+            if (command != null && now - command.sentNanos > ACK_TIMEOUT_MS * 1_000_000
+                    && inFlight.compareAndSet(slot, command, null)) {
+                command.stats.timedOut++;
+                System.err.println(standName + " did not answer " + command.name + ":" + command.value);
+            }
+        }
+    }
+
+    private void write(Transport port, Command command) {
+        if (!port.isOpen()) {
+            writeFailures++;
+            return;
+        }
+        command.id = nextId++ & Integer.MAX_VALUE;
+        byte[] bytes = (command.name + ":" + command.value + "@" + command.id + "\n").getBytes(StandardCharsets.US_ASCII);
+        //Recorded before the write so an ack can never arrive ahead of it
+        command.sentNanos = System.nanoTime();
+        Command unanswered = inFlight.getAndSet(command.id % IN_FLIGHT_SLOTS, command);
+        if (unanswered != null) {
+            unanswered.stats.timedOut++; //Its slot came round again before any answer
+        }
+        if (port.write(bytes, bytes.length) == -1) {
+            inFlight.compareAndSet(command.id % IN_FLIGHT_SLOTS, command, null);
+            writeFailures++;
+            System.err.println("Failed to write " + command.name + " command to " + port.getName());
+            return;
+        }
+        command.stats.sent++;
+        //System.out.println("Sent: " + command.name + ":" + command.value);  //Debug
+    }
+
+    //An ack arrived for this id (ingest thread)
+    void acknowledge(long id, long receivedNanos) {
+        int slot = (int) (id % IN_FLIGHT_SLOTS);
+        Command command = inFlight.get(slot);
+        if (command == null || command.id != id || !inFlight.compareAndSet(slot, command, null)) {
+            return; //Unknown, duplicate or long forgotten
+        }
+        long roundTrip = receivedNanos - command.sentNanos;
+        CommandStats s = command.stats;
+        s.lastRoundTripNanos = roundTrip;
+        if (roundTrip > s.maxRoundTripNanos) {
+            s.maxRoundTripNanos = roundTrip;
+        }
+        s.totalRoundTripNanos += roundTrip;
+        s.acknowledged++;
+    }
+
+    //The stand answered this id with a NAK (ingest thread)
+    void reject(long id) {
+        int slot = (int) (id % IN_FLIGHT_SLOTS);
+        Command command = inFlight.get(slot);
+        if (command == null || command.id != id || !inFlight.compareAndSet(slot, command, null)) {
+            return;
+        }
+        command.stats.rejected++;
+        System.err.println(standName + " rejected " + command.name + ":" + command.value);
+    }
+
+    //Commands waiting to be written
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    //Per command statistics, in the order the commands were first sent
+    public List<CommandStats> getStats() {
+        return Collections.unmodifiableList(statsInOrder);
+    }
+}
@@ -6,19 +6,37 @@
  *  Referenced by configuration.fxml
  */
 
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 public class Configuration extends BaseController {
+    //Stand selection
+    @FXML private ComboBox<StandRegistry.Stand> standCombo;
+    @FXML private Button addStandBtn;
+    @FXML private Button standOverviewBtn;
+
     //Serial port selection
     @FXML private ComboBox<String> serialPortCombo;
     @FXML private HBox serialPortControls;
     @FXML private Button refreshPortsBtn;
     @FXML private Button connectPortBtn;
+    @FXML private CheckBox binaryLinkCheckbox;
+    @FXML private ComboBox<String> replaySpeedCombo;
+    @FXML private Button replaySessionBtn;
+    @FXML private Label linkStatusLabel;
     
     //Load cell calibration
     @FXML private Button calibrateZeroBtn;
@@ -52,6 +70,41 @@ public class Configuration extends BaseController {
     @FXML private Button browseButton;
     @FXML private CheckBox appendTimestampCheckbox;
     @FXML private Label currentLogFileLabel;
+    @FXML private CheckBox binaryLogCheckbox;
+    @FXML private Button exportLogButton;
+
+    //Multi-point calibration
+    @FXML private ComboBox<String> curveChannelCombo;
+    @FXML private TextField curveKnownField;
+    @FXML private Label curveUnitLabel;
+    @FXML private Button capturePointBtn;
+    @FXML private Label curvePointsLabel;
+    @FXML private ComboBox<Integer> curveDegreeCombo;
+    @FXML private Button fitCurveBtn;
+    @FXML private Button clearPointsBtn;
+    @FXML private Button removeCurveBtn;
+    @FXML private Label curveStatusLabel;
+
+    //Per-channel filters
+    @FXML private TextField thrustFilterField;
+    @FXML private TextField incomingFilterField;
+    @FXML private TextField wakeFilterField;
+    @FXML private TextField currentFilterField;
+    @FXML private TextField voltageFilterField;
+    @FXML private TextField rpmFilterField;
+    @FXML private TextField filterRateField;
+    @FXML private Button applyFiltersBtn;
+    @FXML private Label filterStatusLabel;
+
+    //Running statistics
+    @FXML private ComboBox<String> statsWindowCombo;
+    @FXML private CheckBox averagedDisplayCheckbox;
+    @FXML private Label statsLabel;
+    @FXML private Button resetStatsBtn;
+
+    //Pipeline diagnostics
+    @FXML private Label latencyLabel;
+    @FXML private Button resetLatencyBtn;
 
     //Control buttons
     @FXML private Button saveCalibrationBtn;
@@ -60,19 +113,19 @@ public class Configuration extends BaseController {
     @FXML private Button returnToMainBtn;
 
     private static final int BAUD_RATE = 2000000; //Serial data rate (Match to arduino code)
+    private static final long DIAGNOSTICS_INTERVAL_NANOS = 500_000_000L;
+    private static final String[] STATS_WINDOWS = {"0.5 s", "1 s", "2 s", "5 s", "10 s"};
+    private static final SampleStore.Channel[] CURVE_CHANNELS = {SampleStore.Channel.THRUST,
+            SampleStore.Channel.INCOMING_PITOT, SampleStore.Channel.WAKE_PITOT,
+            SampleStore.Channel.CURRENT, SampleStore.Channel.VOLTAGE};
+    private static final String[] CURVE_CHANNEL_LABELS = {"Thrust", "Incoming Pitot", "Wake Pitot", "Current", "Voltage"};
 
-    // Unit conversion constants
-    private static final class UnitConversion {
-        // Weight conversion factors (to grams)
-        static final double LB_TO_G = 453.592;
-        static final double KG_TO_G = 1000.0;
-        static final double N_TO_G = 101.972; // at standard gravity
-        
-        // Airspeed conversion factors (to m/s)
-        static final double MPH_TO_MS = 0.44704;
-        static final double FPS_TO_MS = 0.3048;
-        static final double KPH_TO_MS = 0.277778;
-    }
+    //Captured {raw reading, known value in g, m/s, A or V} pairs per channel, until fitted or cleared
+    private final Map<SampleStore.Channel, List<double[]>> curvePoints = new EnumMap<>(SampleStore.Channel.class);
+
+    private AnimationTimer diagnosticsTimer;
+    private final StreamingStats.Summary statsSummary = new StreamingStats.Summary();
+    private long lastDiagnosticsNanos;
 
     @FXML
     public void initialize() {
@@ -84,24 +137,64 @@ public class Configuration extends BaseController {
         
         // Initialize unit ComboBoxes
         initializeUnitComboBoxes();
+
+        // Initialize multi-point calibration
+        initializeCurveControls();
         
         // Initialize logging controls
         initializeLoggingControls();
-        
+
+        // Initialize filter settings
+        applyFiltersBtn.setOnAction(e -> handleApplyFilters());
+
+        // Initialize statistics and diagnostics readouts
+        initializeStatistics();
+        initializeDiagnostics();
+    }
+
+    //The scene is cached, so anything that may have changed elsewhere is refreshed here
+    @Override
+    protected void onActivate() {
+        StandRegistry stands = StandRegistry.getInstance();
+        standCombo.getItems().setAll(stands.getStands());
+        standCombo.setValue(stands.getSelected());
+        addStandBtn.setDisable(stands.getStands().size() >= StandRegistry.MAX_STANDS);
+
+        binaryLinkCheckbox.setSelected(serialController.isBinaryProtocol());
+        refreshSerialPorts();
+        replaySessionBtn.setText(serialController.isReplaying() ? "Stop Replay" : "Replay Session...");
+        subscribe(TelemetryBus.LINK_STATUS, status -> Platform.runLater(this::updateLinkStatusLabel));
+        updateLinkStatusLabel();
+
         // Load current calibration values
         updateCalibrationLabels();
+        updateCurveControls();
+        updateFilterFields();
+        statsWindowCombo.setValue(windowLabel(sharedElements.getPipeline().getStats().getWindowNanos()));
+        averagedDisplayCheckbox.setSelected(sharedElements.isAveragedDisplay());
+        diagnosticsTimer.start();
+    }
 
-        //Add data listener for live updates from serial
-        serialController.addDataReceivedListener(this::onDataReceived);
+    @Override
+    protected void onDeactivate() {
+        diagnosticsTimer.stop();
     }
 
     //Initialization functions
     private void initializeSerialControls(){
+        standCombo.setOnAction(e -> handleStandSelection(standCombo.getValue()));
+        addStandBtn.setOnAction(e -> handleStandSelection(StandRegistry.getInstance().addStand()));
+        standOverviewBtn.setOnAction(e -> showScene("fxml/StandOverview.fxml"));
+
         serialPortCombo.setPrefWidth(200);
         serialPortCombo.setVisibleRowCount(5);
         refreshPortsBtn.setOnAction(e -> refreshSerialPorts());
         connectPortBtn.setOnAction(e -> handleSerialConnect());
-        refreshSerialPorts();
+        binaryLinkCheckbox.setOnAction(e -> handleBinaryLinkToggle());
+
+        replaySpeedCombo.getItems().addAll("1x", "2x", "5x", "10x", "Max");
+        replaySpeedCombo.setValue("1x");
+        replaySessionBtn.setOnAction(e -> handleReplayToggle());
     }
 
     private void initializeCalibrationButtons() {
@@ -126,6 +219,30 @@ public class Configuration extends BaseController {
         airspeedUnitCombo.setValue("m/s");
     }
 
+    private void initializeCurveControls() {
+        curveChannelCombo.getItems().addAll(CURVE_CHANNEL_LABELS);
+        curveChannelCombo.setValue(CURVE_CHANNEL_LABELS[0]);
+        curveChannelCombo.setOnAction(e -> updateCurveControls());
+        for (int degree = 1; degree <= CalibrationCurve.MAX_DEGREE; degree++) {
+            curveDegreeCombo.getItems().add(degree);
+        }
+        curveDegreeCombo.setValue(1);
+        weightUnitCombo.setOnAction(e -> updateCurveControls());
+        airspeedUnitCombo.setOnAction(e -> updateCurveControls());
+
+        capturePointBtn.setOnAction(e -> handleCapturePoint());
+        fitCurveBtn.setOnAction(e -> handleFitCurve());
+        clearPointsBtn.setOnAction(e -> {
+            curvePoints.remove(selectedCurveChannel());
+            updateCurveControls();
+        });
+        removeCurveBtn.setOnAction(e -> {
+            sharedElements.setCalibrationCurve(selectedCurveChannel(), null);
+            updateCalibrationLabels();
+            updateCurveControls();
+        });
+    }
+
     private void initializeLoggingControls() {
         DataLogger logger = sharedElements.getDataLogger();
         logFilePathField.setText(logger.getCurrentFilePath());
@@ -136,9 +253,127 @@ public class Configuration extends BaseController {
         appendTimestampCheckbox.setOnAction(e -> {
             sharedElements.getDataLogger().setAppendTimestamp(appendTimestampCheckbox.isSelected());
         });
+        binaryLogCheckbox.setSelected(logger.isBinaryFormat());
+        binaryLogCheckbox.setOnAction(e -> {
+            sharedElements.getDataLogger().setBinaryFormat(binaryLogCheckbox.isSelected());
+        });
+        exportLogButton.setOnAction(e -> handleExportSessionLog());
+    }
+
+    private void initializeStatistics() {
+        statsWindowCombo.getItems().addAll(STATS_WINDOWS);
+        statsWindowCombo.setOnAction(e -> {
+            String window = statsWindowCombo.getValue();
+            if (window != null) {
+                sharedElements.getPipeline().getStats().setWindowNanos(
+                        (long) (Double.parseDouble(window.replace(" s", "")) * 1_000_000_000L));
+            }
+        });
+        averagedDisplayCheckbox.setOnAction(e -> sharedElements.setAveragedDisplay(averagedDisplayCheckbox.isSelected()));
+        resetStatsBtn.setOnAction(e -> sharedElements.getPipeline().getStats().reset());
+    }
+
+    //"1 s" for a one second window
+    private static String windowLabel(long nanos) {
+        double seconds = nanos / 1e9;
+        return (seconds == Math.rint(seconds) ? Long.toString((long) seconds) : Double.toString(seconds)) + " s";
+    }
+
+    private void initializeDiagnostics() {
+        resetLatencyBtn.setOnAction(e -> {
+            serialController.getLatencyTrace().reset();
+            updateDiagnostics();
+        });
+        diagnosticsTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastDiagnosticsNanos >= DIAGNOSTICS_INTERVAL_NANOS) {
+                    lastDiagnosticsNanos = now;
+                    updateStatistics();
+                    updateDiagnostics();
+                }
+            }
+        };
+    }
+
+    //Window and peak statistics per channel, in the units selected on the main screens
+    private void updateStatistics() {
+        StandPipeline pipeline = sharedElements.getPipeline();
+        ThrustUnit thrustUnit = pipeline.getThrustUnit();
+        AirspeedUnit airspeedUnit = pipeline.getAirspeedUnit();
+        long now = System.nanoTime();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-18s %-5s %10s %9s %10s %10s %18s %18s%n",
+                "Channel", "Unit", "Mean", "Std Dev", "Min", "Max", "Peak Min (ago)", "Peak Max (ago)"));
+        for (StreamingStats.Channel channel : StreamingStats.Channel.values()) {
+            if (!pipeline.getStats().read(channel, statsSummary)) {
+                continue;
+            }
+            String unit;
+            double scale;
+            switch (channel) {
+                case THRUST -> { unit = thrustUnit.getLabel(); scale = thrustUnit.fromGrams(1); }
+                case INCOMING_AIRSPEED, WAKE_AIRSPEED -> { unit = airspeedUnit.getLabel(); scale = airspeedUnit.fromMetersPerSecond(1); }
+                case CURRENT -> { unit = "A"; scale = 1; }
+                case VOLTAGE -> { unit = "V"; scale = 1; }
+                case RPM -> { unit = "rpm"; scale = 1; }
+                case POWER -> { unit = "W"; scale = 1; }
+                case EFFICIENCY -> { unit = "g/W"; scale = 1; }
+                default -> { unit = ""; scale = 1; }
+            }
+            StreamingStats.Summary s = statsSummary;
+            text.append(String.format("%-18s %-5s %10.3f %9.3f %10.3f %10.3f %10.3f %6.0fs %10.3f %6.0fs%n",
+                    channel.getLabel(), unit, s.mean * scale, s.stdDev * scale, s.min * scale, s.max * scale,
+                    s.peakMin * scale, (now - s.peakMinNanos) / 1e9, s.peakMax * scale, (now - s.peakMaxNanos) / 1e9));
+        }
+        if (statsSummary.count > 0) {
+            text.append(String.format("%n%d samples in the window, %d since the last reset",
+                    statsSummary.windowCount, statsSummary.count));
+        }
+        statsLabel.setText(text.toString());
+    }
+
+    //Stage latency percentiles and command round trips, in milliseconds
+    private void updateDiagnostics() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-24s %9s %8s %8s %8s %8s%n", "Stage (ms)", "Samples", "p50", "p99", "p99.9", "Max"));
+        LatencyTrace trace = serialController.getLatencyTrace();
+        for (LatencyTrace.Stage stage : LatencyTrace.Stage.values()) {
+            LatencyHistogram.Snapshot s = trace.get(stage).snapshot();
+            text.append(String.format("%-24s %9d %8.3f %8.3f %8.3f %8.3f%n", stage.getLabel(), s.count,
+                    s.p50 / 1e6, s.p99 / 1e6, s.p999 / 1e6, s.max / 1e6));
+        }
+        text.append(String.format("%n%-24s %9s %8s %8s %8s %8s %8s%n", "Command round trip (ms)", "Sent", "Acked",
+                "Rejected", "No reply", "Mean", "Max"));
+        for (CommandChannel.CommandStats command : serialController.getCommandChannel().getStats()) {
+            text.append(String.format("%-24s %9d %8d %8d %8d %8.2f %8.2f%n", command.getName(), command.getSent(),
+                    command.getAcknowledged(), command.getRejected(), command.getTimedOut(),
+                    command.getMeanRoundTripNanos() / 1e6, command.getMaxRoundTripNanos() / 1e6));
+        }
+        DataLogger logger = sharedElements.getDataLogger();
+        text.append(String.format("%nParse failures %d   Log queue %d   Log rows dropped %d",
+                serialController.getParseFailures(), logger.getQueueDepth(), logger.getDroppedRecords()));
+        latencyLabel.setText(text.toString());
     }
 
     //Control handlers
+    private void handleStandSelection(StandRegistry.Stand stand) {
+        if (stand == null || stand == StandRegistry.getInstance().getSelected()) {
+            return;
+        }
+        //Reload so every control on this scene is bound to the chosen stand
+        StandRegistry.getInstance().select(stand);
+        showScene("fxml/Configuration.fxml");
+    }
+
+    private void showScene(String fxml) {
+        try {
+            thrustStand.changeScene(fxml);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     private void handleSerialConnect() {
         String selectedPort = serialPortCombo.getValue();
         if (selectedPort != null && !selectedPort.isEmpty()) {
@@ -148,9 +383,59 @@ public class Configuration extends BaseController {
         }
     }
 
+    private void handleBinaryLinkToggle() {
+        //Takes effect immediately when connected, otherwise it is sent on connect
+        if (!serialController.setBinaryProtocol(binaryLinkCheckbox.isSelected())) {
+            binaryLinkCheckbox.setSelected(serialController.isBinaryProtocol());
+        }
+    }
+
+    private void handleReplayToggle() {
+        if (serialController.isReplaying()) {
+            serialController.stopReplay();
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Session to Replay");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Session logs", "*" + SessionLogFormat.FILE_EXTENSION));
+        File selected = fileChooser.showOpenDialog(replaySessionBtn.getScene().getWindow());
+        if (selected == null) {
+            return;
+        }
+
+        String speedText = replaySpeedCombo.getValue();
+        double speed = "Max".equals(speedText) ? SessionReplayer.AS_FAST_AS_POSSIBLE
+                : Double.parseDouble(speedText.substring(0, speedText.length() - 1));
+        try {
+            SessionReplayer[] started = new SessionReplayer[1];
+            started[0] = serialController.startReplay(selected.toPath(), speed,
+                () -> Platform.runLater(() -> onReplayFinished(started[0])));
+            replaySessionBtn.setText("Stop Replay");
+        } catch (IOException | IllegalStateException ex) {
+            showError("Cannot replay " + selected.getName() + ": " + ex.getMessage());
+        }
+    }
+
+    //Link state plus live bus subscriber counts, to spot listeners left behind by old scenes
+    private void updateLinkStatusLabel() {
+        TelemetryBus bus = serialController.getTelemetryBus();
+        StringBuilder text = new StringBuilder("Link: ").append(bus.getLinkStatus()).append("   Subscribers:");
+        bus.getSubscriberCounts().forEach((topic, count) -> text.append(' ').append(topic).append('=').append(count));
+        linkStatusLabel.setText(text.toString());
+    }
+
+    private void onReplayFinished(SessionReplayer replayer) {
+        replaySessionBtn.setText("Replay Session...");
+        if (replayer != null) {
+            showInfo(String.format("Replayed %d of %d samples at %.0f samples/s",
+                replayer.getSamplesReplayed(), replayer.getSampleCount(), replayer.getSamplesPerSecond()));
+        }
+    }
+
     private void handleZeroCalibration() {
-        // Get current raw value from shared elements
-        long currentRawValue = sharedElements.getCurrentRawLoadCell();
+        // Average the last second of raw readings from shared elements
+        double currentRawValue = sharedElements.getAveragedRaw(SampleStore.Channel.THRUST);
         sharedElements.setLoadCellZeroOffset(currentRawValue);
         updateCalibrationLabels();
     }
@@ -160,12 +445,13 @@ public class Configuration extends BaseController {
             double inputWeight = Double.parseDouble(knownWeightField.getText());
             double weightInGrams = convertToGrams(inputWeight, weightUnitCombo.getValue());
             
-            //Get current raw value and apply zero offset
-            long currentRawValue = sharedElements.getCurrentRawLoadCell();
+            //Get averaged raw value and apply zero offset
+            double currentRawValue = sharedElements.getAveragedRaw(SampleStore.Channel.THRUST);
             double zeroedValue = currentRawValue - sharedElements.getLoadCellZeroOffset();
             
             double scaleFactor = weightInGrams / zeroedValue;
             sharedElements.setLoadCellScale(scaleFactor);
+            sharedElements.setCalibrationCurve(SampleStore.Channel.THRUST, null);
             
             updateCalibrationLabels();
         } catch (NumberFormatException ex) {
@@ -180,7 +466,7 @@ public class Configuration extends BaseController {
                 showError("Known current must be non-zero for sensitivity calibration");
                 return;
             }
-            float rawVoltage = sharedElements.getRawCurrent();
+            double rawVoltage = sharedElements.getAveragedRaw(SampleStore.Channel.CURRENT);
             double zeroOffset = sharedElements.getCurrentSensorZeroOffset();
 
             //System.out.println("Current Calibration:");  // Debug
@@ -198,6 +484,7 @@ public class Configuration extends BaseController {
             }
             
             sharedElements.setCurrentSensorSensitivity(sensitivity);
+            sharedElements.setCalibrationCurve(SampleStore.Channel.CURRENT, null);
             updateCalibrationLabels();
         } catch (NumberFormatException ex) {
             showError("Please enter a valid current value");
@@ -205,7 +492,7 @@ public class Configuration extends BaseController {
     }
 
     private void handleCurrentZeroCalibration() {
-        float currentRawVoltage = sharedElements.getRawCurrent();
+        double currentRawVoltage = sharedElements.getAveragedRaw(SampleStore.Channel.CURRENT);
         //System.out.println("Zero Calibration - Raw Voltage: " + currentRawVoltage);   //Debug
         sharedElements.setCurrentSensorZeroOffset(currentRawVoltage);
         currentZeroLabel.setText(String.format("%.3f V", currentRawVoltage));
@@ -215,11 +502,12 @@ public class Configuration extends BaseController {
     private void handleVoltageCalibration() {
         try {
             double knownVoltage = Double.parseDouble(knownVoltageField.getText());
-            float rawVoltage = sharedElements.getRawVoltage();
+            double rawVoltage = sharedElements.getAveragedRaw(SampleStore.Channel.VOLTAGE);
             
             double newRatio = rawVoltage / knownVoltage;
             
             sharedElements.setVoltageDividerRatio(newRatio);
+            sharedElements.setCalibrationCurve(SampleStore.Channel.VOLTAGE, null);
             updateCalibrationLabels();
         } catch (NumberFormatException ex) {
             showError("Please enter a valid voltage value");
@@ -231,35 +519,161 @@ public class Configuration extends BaseController {
             TextField field = isIncoming ? incomingKnownSpeedField : wakeKnownSpeedField;
             double inputSpeed = Double.parseDouble(field.getText());
             double speedInMS = convertToMetersPerSecond(inputSpeed, airspeedUnitCombo.getValue());
-            
-            float currentVoltage = isIncoming ? 
-                Float.parseFloat(sharedElements.incomingAirspeedProperty().get()) :
-                Float.parseFloat(sharedElements.wakeAirspeedProperty().get());
-            
-            //Calculate expected pressure at this speed using Bernoulli's equation
-            double airDensity = 1.225; // kg/m³ at sea level, 15°C
-            double expectedPressurePa = 0.5 * airDensity * speedInMS * speedInMS;
 
-            //Convert voltage to pressure using sensor sensitivity
-            final double SENSOR_SENSITIVITY = 0.270; // V/kPa
-            double measuredPressureKPa = currentVoltage / SENSOR_SENSITIVITY;
-            double measuredPressurePa = measuredPressureKPa * 1000;
-
-            //Calculate calibration factor
-            double calibrationFactor = expectedPressurePa / measuredPressurePa;
-            
-            if (isIncoming) {
-                sharedElements.setIncomingPitotCalibration(calibrationFactor);
-            } else {
-                sharedElements.setWakePitotCalibration(calibrationFactor);
+            //Averaged sensor voltage, as for the other channels
+            SampleStore.Channel channel = isIncoming ? SampleStore.Channel.INCOMING_PITOT : SampleStore.Channel.WAKE_PITOT;
+            double voltage = sharedElements.getAveragedRaw(channel);
+            if (voltage <= Calibration.PITOT_QUIESCENT_VOLTAGE) {
+                showError("No pressure on the pitot sensor. Calibrate with air flowing.");
+                return;
             }
-            
+
+            sharedElements.calibratePitotSensor(isIncoming, speedInMS, voltage);
+            sharedElements.setCalibrationCurve(channel, null);
             updateCalibrationLabels();
         } catch (NumberFormatException ex) {
             showError("Please enter a valid airspeed value");
         }
     }
 
+    private SampleStore.Channel selectedCurveChannel() {
+        int index = curveChannelCombo.getItems().indexOf(curveChannelCombo.getValue());
+        return CURVE_CHANNELS[Math.max(0, index)];
+    }
+
+    //Unit the known value is typed in
+    private String curveInputUnit(SampleStore.Channel channel) {
+        return switch (channel) {
+            case THRUST -> weightUnitCombo.getValue();
+            case INCOMING_PITOT, WAKE_PITOT -> airspeedUnitCombo.getValue();
+            case CURRENT -> "A";
+            default -> "V";
+        };
+    }
+
+    //Unit the known values are kept and fitted in
+    private static String curveBaseUnit(SampleStore.Channel channel) {
+        return switch (channel) {
+            case THRUST -> "g";
+            case INCOMING_PITOT, WAKE_PITOT -> "m/s";
+            case CURRENT -> "A";
+            default -> "V";
+        };
+    }
+
+    private static boolean isPitot(SampleStore.Channel channel) {
+        return channel == SampleStore.Channel.INCOMING_PITOT || channel == SampleStore.Channel.WAKE_PITOT;
+    }
+
+    private void handleCapturePoint() {
+        SampleStore.Channel channel = selectedCurveChannel();
+        double known;
+        try {
+            known = Double.parseDouble(curveKnownField.getText());
+        } catch (NumberFormatException ex) {
+            showError("Please enter a valid known value");
+            return;
+        }
+        double reference = switch (channel) {
+            case THRUST -> convertToGrams(known, weightUnitCombo.getValue());
+            case INCOMING_PITOT, WAKE_PITOT -> convertToMetersPerSecond(known, airspeedUnitCombo.getValue());
+            default -> known;
+        };
+        double raw = sharedElements.getAveragedRaw(channel);
+        curvePoints.computeIfAbsent(channel, c -> new ArrayList<>()).add(new double[] {raw, reference});
+        curveKnownField.clear();
+        updateCurveControls();
+    }
+
+    private void handleFitCurve() {
+        SampleStore.Channel channel = selectedCurveChannel();
+        List<double[]> points = curvePoints.getOrDefault(channel, List.of());
+        double[] raw = new double[points.size()];
+        double[] reference = new double[points.size()];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = points.get(i)[0];
+            //Pitot voltage is linear in dynamic pressure, so fit the square of the speed
+            double known = points.get(i)[1];
+            reference[i] = isPitot(channel) ? known * known : known;
+        }
+        CalibrationCurve curve;
+        try {
+            curve = CalibrationCurve.fit(raw, reference, curveDegreeCombo.getValue());
+        } catch (IllegalArgumentException ex) {
+            showError(ex.getMessage());
+            return;
+        }
+        sharedElements.setCalibrationCurve(channel, curve);
+
+        double sumSquares = 0;
+        for (double[] point : points) {
+            double value = isPitot(channel) ? Math.sqrt(Math.max(0, curve.apply(point[0]))) : curve.apply(point[0]);
+            sumSquares += (value - point[1]) * (value - point[1]);
+        }
+        updateCalibrationLabels();
+        updateCurveControls();
+        showInfo(String.format("Fitted a degree %d curve through %d points, RMS error %.4f %s",
+                curve.getDegree(), points.size(), Math.sqrt(sumSquares / points.size()), curveBaseUnit(channel)));
+    }
+
+    private void updateCurveControls() {
+        SampleStore.Channel channel = selectedCurveChannel();
+        curveUnitLabel.setText(curveInputUnit(channel));
+        List<double[]> points = curvePoints.getOrDefault(channel, List.of());
+        if (points.isEmpty()) {
+            curvePointsLabel.setText("No points captured");
+        } else {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < points.size(); i++) {
+                text.append(String.format("%2d  reading %14.4f   known %10.3f %s%n",
+                        i + 1, points.get(i)[0], points.get(i)[1], curveBaseUnit(channel)));
+            }
+            curvePointsLabel.setText(text.toString());
+        }
+        CalibrationCurve curve = sharedElements.getCalibrationCurve(channel);
+        curveStatusLabel.setText(curve == null ? "Using the single-point calibration" :
+                String.format("Using a degree %d fit over readings %.4f to %.4f", curve.getDegree(),
+                        curve.getMinReading(), curve.getMaxReading()));
+    }
+
+    //Field for each raw channel, in SampleStore.Channel order
+    private TextField[] filterFields() {
+        return new TextField[] {thrustFilterField, incomingFilterField, wakeFilterField,
+                currentFilterField, voltageFilterField, rpmFilterField};
+    }
+
+    private void updateFilterFields() {
+        ChannelFilters filters = serialController.getFilters();
+        TextField[] fields = filterFields();
+        for (SampleStore.Channel channel : SampleStore.Channel.values()) {
+            fields[channel.ordinal()].setText(filters.getSpec(channel));
+        }
+        filterRateField.setText(String.valueOf(filters.getSampleRateHz()));
+        filterStatusLabel.setText(filters.isActive() ? "Filtering; unfiltered values are logged alongside" : "Unfiltered");
+    }
+
+    private void handleApplyFilters() {
+        //A log keeps one set of columns, so filters only change between logs
+        if (sharedElements.getDataLogger().isLogging()) {
+            showError("Stop logging before changing filters");
+            updateFilterFields();
+            return;
+        }
+        Map<SampleStore.Channel, String> specs = new EnumMap<>(SampleStore.Channel.class);
+        TextField[] fields = filterFields();
+        for (SampleStore.Channel channel : SampleStore.Channel.values()) {
+            specs.put(channel, fields[channel.ordinal()].getText());
+        }
+        try {
+            serialController.getFilters().configure(specs, Double.parseDouble(filterRateField.getText().trim()));
+            updateFilterFields();
+        } catch (NumberFormatException ex) {
+            showError("Please enter a valid sample rate");
+        } catch (IllegalArgumentException ex) {
+            showError("Invalid filter: " + ex.getMessage());
+        }
+    }
+
     private void handleSaveCalibration() {
         sharedElements.saveCalibration("calibration.txt");
         showInfo("Calibration saved successfully");
@@ -288,6 +702,38 @@ public class Configuration extends BaseController {
         }
     }
 
+    private void handleExportSessionLog() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Binary Session Log");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Session logs", "*" + SessionLogFormat.FILE_EXTENSION));
+        String currentPath = logFilePathField.getText();
+        if (currentPath != null && new File(currentPath).isDirectory()) {
+            fileChooser.setInitialDirectory(new File(currentPath));
+        }
+        File selected = fileChooser.showOpenDialog(exportLogButton.getScene().getWindow());
+        if (selected == null) {
+            return;
+        }
+
+        //Large sessions take a while, so convert off the FX thread
+        Path in = selected.toPath();
+        Path out = SessionCsvExporter.defaultOutput(in);
+        exportLogButton.setDisable(true);
+        Thread exporter = new Thread(() -> {
+            try {
+                long rows = SessionCsvExporter.export(in, out, null, null);
+                Platform.runLater(() -> showInfo("Exported " + rows + " rows to " + out));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                Platform.runLater(() -> showError("Failed to export " + in + ": " + ex.getMessage()));
+            } finally {
+                Platform.runLater(() -> exportLogButton.setDisable(false));
+            }
+        }, "session-export");
+        exporter.setDaemon(true);
+        exporter.start();
+    }
 
     private void refreshSerialPorts(){
         String currentSelection = serialPortCombo.getValue();
@@ -306,6 +752,8 @@ public class Configuration extends BaseController {
         
         // Attempt to open new connection
         if (serialController.openPort(portName, BAUD_RATE)) {
+            //The Teensy keeps its link mode across host restarts, so always state ours
+            serialController.setBinaryProtocol(binaryLinkCheckbox.isSelected());
             showInfo("Successfully connected to " + portName);
         } else {
             showError("Failed to connect to " + portName);
@@ -381,23 +829,11 @@ public class Configuration extends BaseController {
     }
 
     private double convertToGrams(double value, String unit) {
-        return switch (unit) {
-            case "g" -> value;
-            case "kg" -> value * UnitConversion.KG_TO_G;
-            case "lb" -> value * UnitConversion.LB_TO_G;
-            case "N" -> value * UnitConversion.N_TO_G;
-            default -> value;
-        };
+        return ThrustUnit.fromLabel(unit).toGrams(value);
     }
 
     private double convertToMetersPerSecond(double value, String unit) {
-        return switch (unit) {
-            case "m/s" -> value;
-            case "mph" -> value * UnitConversion.MPH_TO_MS;
-            case "ft/s" -> value * UnitConversion.FPS_TO_MS;
-            case "kph" -> value * UnitConversion.KPH_TO_MS;
-            default -> value;
-        };
+        return AirspeedUnit.fromLabel(unit).toMetersPerSecond(value);
     }
     
     private void updateCalibrationLabels() {
@@ -422,6 +858,16 @@ public class Configuration extends BaseController {
         }
         voltageCalibrationLabel.setText(String.format("Current calibration: %.6f (ratio)", 
             sharedElements.getVoltageDividerRatio()));
+
+        //A multi-point fit replaces the constants above
+        Label[] labels = {loadCellCalibrationLabel, incomingCalibrationLabel, wakeCalibrationLabel,
+                currentCalibrationLabel, voltageCalibrationLabel};
+        for (int i = 0; i < CURVE_CHANNELS.length; i++) {
+            CalibrationCurve curve = sharedElements.getCalibrationCurve(CURVE_CHANNELS[i]);
+            if (curve != null) {
+                labels[i].setText(String.format("Multi-point fit in use (degree %d), see the Multi-Point tab", curve.getDegree()));
+            }
+        }
         
     }
 
@@ -439,10 +885,6 @@ public class Configuration extends BaseController {
         alert.showAndWait();
     }
 
-    private void onDataReceived(String data) {
-        serialController.parseData(data);
-    }
-
     @FXML
     void returnToMainBtn(ActionEvent rtn) {
         //System.out.println("Returning to launcher"); //Debug
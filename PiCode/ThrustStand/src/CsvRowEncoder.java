@@ -0,0 +1,178 @@
+/*  Title:  CsvRowEncoder.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: DataLogger.java
+ *  Description: Encodes measurements as CSV rows straight into a ByteBuffer without
+ *  allocating. Shared by the live CSV logger and the binary session log exporter so
+ *  both produce identical files. Not thread safe; use one encoder per thread.
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class CsvRowEncoder {
+    private static final String[] HEADERS = {
+        "Timestamp",
+        "Thrust",
+        "Thrust Unit",
+        "Incoming Airspeed",
+        "Wake Airspeed",
+        "Airspeed Unit",
+        "Current (A)",
+        "Voltage (V)",
+        "RPM",
+        "Blade Count",
+        "Step",
+        "Power (W)",
+        "Efficiency (g/W)",
+        "Advance Ratio",
+        "Thrust Coefficient"
+    };
+    //Appended when the session is filtered, so the raw readings are kept alongside
+    private static final String[] UNFILTERED_HEADERS = {
+        "Unfiltered Thrust",
+        "Unfiltered Incoming Airspeed",
+        "Unfiltered Wake Airspeed",
+        "Unfiltered Current (A)",
+        "Unfiltered Voltage (V)",
+        "Unfiltered RPM"
+    };
+
+    //Upper bound on the length of one encoded row
+    public static final int MAX_ROW_BYTES = 512;
+
+    private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] cachedSecondText;
+    private boolean unfilteredColumns;
+
+    //Add the unfiltered columns to the header and every row; set before putHeader()
+    public void setUnfilteredColumns(boolean unfilteredColumns) {
+        this.unfilteredColumns = unfilteredColumns;
+    }
+
+    public void putHeader(ByteBuffer buffer) {
+        buffer.put(String.join(",", HEADERS).getBytes(StandardCharsets.US_ASCII));
+        if (unfilteredColumns) {
+            buffer.put((byte) ',');
+            buffer.put(String.join(",", UNFILTERED_HEADERS).getBytes(StandardCharsets.US_ASCII));
+        }
+        buffer.put((byte) '\n');
+    }
+
+    public void putRow(ByteBuffer buffer, long epochMillis, Measurement measurement) {
+        putTimestamp(buffer, epochMillis);
+        buffer.put((byte) ',');
+        //Same precision as the display, whole grams or thousandths of the larger units
+        putFixed(buffer, measurement.thrust, measurement.thrustUnit.getDisplayDecimals());
+        buffer.put((byte) ',');
+        putText(buffer, measurement.thrustUnit.getLabel());
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.incomingAirspeed, 2);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.wakeAirspeed, 2);
+        buffer.put((byte) ',');
+        putText(buffer, measurement.airspeedUnit.getLabel());
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.current, 2);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.voltage, 2);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.rpm, 1);
+        buffer.put((byte) ',');
+        putLong(buffer, measurement.bladeCount);
+        buffer.put((byte) ',');
+        if (measurement.step >= 0) {
+            //Left empty outside a test sequence
+            putLong(buffer, measurement.step);
+        }
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.power, 2);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.efficiency, 3);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.advanceRatio, 4);
+        buffer.put((byte) ',');
+        putFixed(buffer, measurement.thrustCoefficient, 5);
+        if (unfilteredColumns) {
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredThrust, measurement.thrustUnit.getDisplayDecimals());
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredIncomingAirspeed, 2);
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredWakeAirspeed, 2);
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredCurrent, 2);
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredVoltage, 2);
+            buffer.put((byte) ',');
+            putFixed(buffer, measurement.unfilteredRpm, 1);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    //ISO local date-time with milliseconds, e.g. 2024-05-01T13:45:12.345
+    private void putTimestamp(ByteBuffer buffer, long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000);
+        if (second != cachedSecond) {
+            //Only rebuilt once per second
+            cachedSecond = second;
+            cachedSecondText = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault())
+                    .format(SECOND_FORMAT).getBytes(StandardCharsets.US_ASCII);
+        }
+        buffer.put(cachedSecondText);
+        buffer.put((byte) '.');
+        int millis = Math.floorMod(epochMillis, 1000);
+        buffer.put((byte) ('0' + millis / 100));
+        buffer.put((byte) ('0' + millis / 10 % 10));
+        buffer.put((byte) ('0' + millis % 10));
+    }
+
+    private static void putText(ByteBuffer buffer, String text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    //Same output as String.format("%.Nf") for the ranges we log, without allocating
+    static void putFixed(ByteBuffer buffer, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            putText(buffer, Double.toString(value));
+            return;
+        }
+        long scaled = Math.round(Math.abs(value) * POW10[decimals]);
+        if (value < 0 && scaled != 0) {
+            buffer.put((byte) '-');
+        }
+        putLong(buffer, scaled / POW10[decimals]);
+        if (decimals > 0) {
+            buffer.put((byte) '.');
+            long fraction = scaled % POW10[decimals];
+            for (long p = POW10[decimals - 1]; p > 0; p /= 10) {
+                buffer.put((byte) ('0' + fraction / p % 10));
+            }
+        }
+    }
+
+    static void putLong(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long p = 1;
+        while (p <= value / 10) {
+            p *= 10;
+        }
+        for (; p > 0; p /= 10) {
+            buffer.put((byte) ('0' + value / p % 10));
+        }
+    }
+}
@@ -4,99 +4,405 @@
  *  Parent Class: ThrustStand.java
  *  Description: This class handles logging data from the thrust stand to a CSV file
  *  Referenced by SharedElements.java
+ *  Rows are written by a background thread that reads the telemetry ring through its
+ *  own cursor, so the ring doubles as the bounded queue. Rows are encoded into one
+ *  reusable buffer which is written out every 64 KB or 250 ms, whichever comes first.
+ *  With the binary format selected, raw samples go to a session log instead (see
+ *  SessionLogWriter) and are converted to CSV later by SessionCsvExporter.
+ *  Each session is added to the SessionCatalog in its directory when logging stops,
+ *  with the peaks tracked here as rows are written.
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class DataLogger {
-    private static final String[] HEADERS = {
-        "Timestamp",
-        "Thrust",
-        "Thrust Unit",
-        "Incoming Airspeed",
-        "Wake Airspeed",
-        "Airspeed Unit",
-        "Current (A)",
-        "Voltage (V)",
-        "RPM",
-        "Blade Count"
-    };
-    
-    private PrintWriter writer;
+    //Group flush policy
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = 250_000_000L;
+
+    //Called on the logger thread, must not touch JavaFX controls
+    public interface SampleConverter {
+        void convert(Sample sample, Measurement measurement);
+    }
+
+    private final TelemetryRing ring;
+    private final SampleConverter converter;
+    private final Measurement measurement = new Measurement();
+    private final CsvRowEncoder encoder = new CsvRowEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(FLUSH_BYTES + CsvRowEncoder.MAX_ROW_BYTES);
+
+    private FileChannel channel;
+    private SessionLogWriter sessionLog;
+    private boolean binaryFormat;
+    //Read by the diagnostics and metrics threads as well
+    private volatile RingWorker worker;
+    private RingWorker closing;                 //Stopped, possibly still draining (guarded by this)
+    private volatile Runnable onStopped;        //Run by the logger thread once the file is closed
+    private volatile TelemetryRing.Cursor lastCursor;   //Kept after stopping so the stats stay readable
+    private final String standName;
     private String baseFilePath;
     private boolean appendTimestamp;
-    private String currentFilePath;
-    
-    public DataLogger() {
+    private volatile String currentFilePath;
+
+    //Wall clock reference for turning receive nanoTime into a timestamp
+    private long epochMillisAtStart;
+    private long nanosAtStart;
+    private long lastFlushNanos;
+
+    //Stage latencies, normally the stand's trace from SerialController
+    private LatencyTrace latencyTrace = new LatencyTrace();
+    //Read time of the oldest row not yet written to the file, -1 if none (logger thread)
+    private long unwrittenSinceNanos = -1;
+
+    //Backpressure statistics
+    private volatile long bytesWritten;
+    private volatile long recordsWritten;
+    private volatile long writeFailures;
+
+    //Catalog record of the open session; details at open, peaks as rows are written (logger thread)
+    private SessionCatalog.Entry catalogEntry;
+    private long lastReceivedNanos;
+
+    /**
+     * @param standName Stand the ring belongs to, for the logger thread name
+     */
+    public DataLogger(TelemetryRing ring, String standName, SampleConverter converter) {
+        this.ring = ring;
+        this.standName = standName;
+        this.converter = converter;
         this.baseFilePath = System.getProperty("user.home") + "/thrust_data";
         this.appendTimestamp = true;
     }
-    
+
+    public void setLatencyTrace(LatencyTrace latencyTrace) {
+        this.latencyTrace = latencyTrace;
+    }
+
     public void setFilePath(String path) {
         this.baseFilePath = path;
     }
-    
+
     public void setAppendTimestamp(boolean append) {
         this.appendTimestamp = append;
     }
-    
+
+    //Binary session log instead of CSV; takes effect at the next startLogging()
+    public void setBinaryFormat(boolean binary) {
+        this.binaryFormat = binary;
+    }
+
+    public boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
     public String getCurrentFilePath() {
         return currentFilePath;
     }
-    
-    public void startLogging() throws IOException {
-        if (writer != null) {
-            stopLogging();
-        }
-        
+
+    public boolean isLogging() {
+        return worker != null;
+    }
+
+    //Samples published but not yet written
+    public long getQueueDepth() {
+        RingWorker current = worker;
+        return current != null ? current.getCursor().getLag() : 0;
+    }
+
+    //Samples the writer fell too far behind to log in the current or last session
+    public long getDroppedRecords() {
+        TelemetryRing.Cursor cursor = lastCursor;
+        return cursor != null ? cursor.getLost() : 0;
+    }
+
+    public long getBytesWritten() {
+        SessionLogWriter log = sessionLog;
+        return log != null ? log.getBytesWritten() : bytesWritten;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    /**
+     * Open a new log file and start writing samples from the ring.
+     * @param calibration Snapshot stored in a binary log for converting it later
+     * @param metadata Session details stored in a binary log (units, blade count, mode)
+     */
+    public synchronized void startLogging(Calibration calibration, Map<String, String> metadata) throws IOException {
+        //Close out any session still open
+        stopLogging();
+        openLog(calibration, metadata);
+        //The logger thread closes and catalogs the file itself once it has drained the ring
+        worker = new RingWorker(ring, "data-logger (" + standName + ")", this::logData, this::flushIfDue, this::finishSession).start();
+        lastCursor = worker.getCursor();
+    }
+
+    //Open a new log file without a writer thread; the caller then feeds logData() itself
+    void openLog(Calibration calibration, Map<String, String> metadata) throws IOException {
         String filePath = baseFilePath;
         if (appendTimestamp) {
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
             filePath += "_" + timestamp;
         }
-        filePath += ".csv";
-        
+        filePath += binaryFormat ? SessionLogFormat.FILE_EXTENSION : ".csv";
+
         // Create directories if they don't exist
         new File(filePath).getParentFile().mkdirs();
-        
-        writer = new PrintWriter(new FileWriter(filePath));
+
+        epochMillisAtStart = System.currentTimeMillis();
+        nanosAtStart = System.nanoTime();
+        lastFlushNanos = nanosAtStart;
+        if (binaryFormat) {
+            Map<String, String> header = new LinkedHashMap<>(metadata);
+            header.put(SessionLogFormat.KEY_START_EPOCH_MS, Long.toString(epochMillisAtStart));
+            header.put(SessionLogFormat.KEY_START_NANOS, Long.toString(nanosAtStart));
+            sessionLog = new SessionLogWriter(new File(filePath).toPath(), calibration, header);
+        } else {
+            channel = FileChannel.open(new File(filePath).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
         currentFilePath = filePath;
-        
-        // Write headers
-        writer.println(String.join(",", HEADERS));
-        writer.flush();
-    }
-    
-    public void logData(String thrust, String thrustUnit, 
-                       String incomingAirspeed, String wakeAirspeed, String airspeedUnit,
-                       String current, String voltage, 
-                       int bladeCount, String rpm) {
-        if (writer != null) {
-            List<String> values = new ArrayList<>();
-            values.add(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            values.add(thrust);
-            values.add(thrustUnit);
-            values.add(incomingAirspeed);
-            values.add(wakeAirspeed);
-            values.add(airspeedUnit);
-            values.add(current);
-            values.add(voltage);
-            values.add(rpm);
-            values.add(String.valueOf(bladeCount));
-            
-            writer.println(String.join(",", values));
-            writer.flush();
-        }
-    }
-    
+        catalogEntry = newCatalogEntry(calibration, metadata, binaryFormat);
+        unwrittenSinceNanos = -1;
+        bytesWritten = 0;
+        recordsWritten = 0;
+        writeFailures = 0;
+
+        if (channel != null) {
+            // Write headers, with unfiltered columns if the session is filtered
+            encoder.setUnfilteredColumns(metadata.containsKey(SessionLogFormat.KEY_FILTERS));
+            buffer.clear();
+            encoder.putHeader(buffer);
+            flush();
+        }
+    }
+
+    /**
+     * Write one sample to the open log. Only the logger thread may call this while
+     * logging is active.
+     */
+    public void logData(Sample sample) {
+        if (sessionLog != null) {
+            try {
+                //Converted only to track the session peaks; the log itself keeps the raw sample
+                converter.convert(sample, measurement);
+                trackPeaks(sample, SessionLogFormat.blockOffset(recordsWritten / SessionLogFormat.BLOCK_SAMPLES));
+                sessionLog.append(sample);
+                recordsWritten++;
+                rowLogged(sample);
+                if (!sessionLog.isDirty()) {
+                    rowsWritten();
+                }
+            } catch (IOException e) {
+                reportWriteFailure(e);
+            }
+            return;
+        }
+        if (channel == null) {
+            return;
+        }
+        converter.convert(sample, measurement);
+        trackPeaks(sample, bytesWritten + buffer.position());
+        encoder.putRow(buffer, epochMillisAtStart + (sample.receivedNanos - nanosAtStart) / 1_000_000, measurement);
+        recordsWritten++;
+        rowLogged(sample);
+
+        if (buffer.position() >= FLUSH_BYTES) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    private static SessionCatalog.Entry newCatalogEntry(Calibration calibration, Map<String, String> metadata, boolean binary) {
+        SessionCatalog.Entry entry = new SessionCatalog.Entry();
+        entry.binary = binary;
+        entry.calibrationHash = calibration.hash();
+        entry.stand = metadata.getOrDefault(SessionLogFormat.KEY_STAND, "");
+        entry.mode = metadata.getOrDefault(SessionLogFormat.KEY_MODE, "");
+        entry.thrustUnit = metadata.getOrDefault(SessionLogFormat.KEY_THRUST_UNIT, "");
+        entry.airspeedUnit = metadata.getOrDefault(SessionLogFormat.KEY_AIRSPEED_UNIT, "");
+        try {
+            entry.bladeCount = Integer.parseInt(metadata.getOrDefault(SessionLogFormat.KEY_BLADE_COUNT, "0"));
+            entry.propDiameter = Double.parseDouble(metadata.getOrDefault(SessionLogFormat.KEY_PROP_DIAMETER, "0"));
+        } catch (NumberFormatException e) {
+            //Left at 0
+        }
+        return entry;
+    }
+
+    //offset: where this row or its block starts in the file
+    private void trackPeaks(Sample sample, long offset) {
+        SessionCatalog.Entry entry = catalogEntry;
+        double grams = measurement.thrustUnit.toGrams(measurement.thrust);
+        if (grams > entry.peakThrust || Double.isNaN(entry.peakThrust)) {
+            entry.peakThrust = grams;
+            entry.peakThrustOffset = offset;
+        }
+        if (measurement.current > entry.peakCurrent || Double.isNaN(entry.peakCurrent)) {
+            entry.peakCurrent = measurement.current;
+            entry.peakCurrentOffset = offset;
+        }
+        if (measurement.rpm > entry.peakRpm || Double.isNaN(entry.peakRpm)) {
+            entry.peakRpm = measurement.rpm;
+            entry.peakRpmOffset = offset;
+        }
+        lastReceivedNanos = sample.receivedNanos;
+    }
+
+    private void rowLogged(Sample sample) {
+        latencyTrace.record(LatencyTrace.Stage.LOG, System.nanoTime() - sample.readNanos);
+        if (unwrittenSinceNanos < 0) {
+            unwrittenSinceNanos = sample.readNanos;
+        }
+    }
+
+    //Buffered rows have just been handed to the file
+    private void rowsWritten() {
+        if (unwrittenSinceNanos >= 0) {
+            latencyTrace.record(LatencyTrace.Stage.DISK, System.nanoTime() - unwrittenSinceNanos);
+            unwrittenSinceNanos = -1;
+        }
+    }
+
+    private void flushIfDue() {
+        if (sessionLog != null) {
+            try {
+                sessionLog.flushIfDue();
+                if (!sessionLog.isDirty()) {
+                    rowsWritten();
+                }
+            } catch (IOException e) {
+                reportWriteFailure(e);
+            }
+        } else if (buffer.position() > 0 && System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        lastFlushNanos = System.nanoTime();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            reportWriteFailure(e);
+        }
+        buffer.clear();
+        rowsWritten();
+    }
+
+    private void reportWriteFailure(IOException e) {
+        writeFailures++;
+        System.err.println("Failed to write log file " + currentFilePath);
+        e.printStackTrace();
+    }
+
+    //Safe to call from several threads at once; every caller returns after the file is closed
     public void stopLogging() {
-        if (writer != null) {
-            writer.close();
-            writer = null;
+        RingWorker stopping;
+        synchronized (this) {
+            RingWorker current = worker;
+            if (current != null) {
+                worker = null;
+                closing = current;
+            } else if (closing == null && (channel != null || sessionLog != null)) {
+                //Opened with openLog() and fed by the caller
+                finishSession();
+                return;
+            }
+            stopping = closing;
+        }
+        if (stopping != null) {
+            //Drains whatever is already in the ring, then waits for the thread to close the file
+            stopping.stop();
+        }
+    }
+
+    /**
+     * Stop logging without waiting, for the JavaFX thread. The logger thread drains
+     * the ring, closes and catalogs the file, then runs onStopped; starting a new log
+     * before then waits for the old one to close.
+     * @param onStopped Runs on the logger thread once the file is closed
+     */
+    public synchronized void stopLogging(Runnable onStopped) {
+        RingWorker current = worker;
+        if (current == null) {
+            stopLogging();
+            onStopped.run();
+            return;
+        }
+        worker = null;
+        closing = current;
+        this.onStopped = onStopped;
+        current.requestStop();
+    }
+
+    //Last step of a session, run on the logger thread with the rest of its file I/O
+    private void finishSession() {
+        closeLog();
+        catalogSession();
+        Runnable stopped = onStopped;
+        if (stopped != null) {
+            onStopped = null;
+            stopped.run();
+        }
+    }
+
+    //Add the session just closed to the catalog in its directory; a failure only costs the entry
+    private void catalogSession() {
+        SessionCatalog.Entry entry = catalogEntry;
+        Path log = Paths.get(currentFilePath);
+        entry.file = log.getFileName().toString();
+        entry.rows = recordsWritten;
+        entry.fileBytes = bytesWritten;
+        entry.startEpochMillis = epochMillisAtStart;
+        entry.endEpochMillis = entry.rows > 0
+                ? epochMillisAtStart + (lastReceivedNanos - nanosAtStart) / 1_000_000
+                : System.currentTimeMillis();
+        try {
+            SessionCatalog.append(SessionCatalog.catalogFor(log), entry);
+        } catch (IOException e) {
+            System.err.println("Failed to add " + entry.file + " to the session catalog: " + e.getMessage());
+        }
+    }
+
+    //Flush and close the open log file, if any
+    void closeLog() {
+        if (channel != null) {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+        if (sessionLog != null) {
+            try {
+                sessionLog.close();
+            } catch (IOException e) {
+                reportWriteFailure(e);
+            }
+            //Keep the final size readable after stopping
+            bytesWritten = sessionLog.getBytesWritten();
+            sessionLog = null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+/*  Title:  DerivedChannels.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandPipeline.java
+ *  Description: Propeller performance figures computed from the converted channels:
+ *  electrical power, thrust efficiency, advance ratio and thrust coefficient. Plain
+ *  arithmetic on base units, so the pipeline fills them in for every sample without
+ *  allocating. Each reads 0 while its denominator is too small to mean anything,
+ *  e.g. with the motor stopped or no prop diameter entered.
+ */
+public final class DerivedChannels {
+    public static final double METERS_PER_INCH = 0.0254;
+    static final double MIN_POWER_WATTS = 1.0;          //Efficiency below this is sensor noise
+    static final double MIN_REVS_PER_SECOND = 1.0;      //Prop effectively stopped
+
+    private DerivedChannels() {
+    }
+
+    //Electrical power into the ESC in watts
+    public static double powerWatts(double volts, double amps) {
+        return volts * amps;
+    }
+
+    //Thrust per electrical watt, g/W
+    public static double efficiencyGramsPerWatt(double grams, double watts) {
+        return watts >= MIN_POWER_WATTS ? grams / watts : 0;
+    }
+
+    //J = V / (n D), with n in revolutions per second
+    public static double advanceRatio(double metersPerSecond, double rpm, double diameterMeters) {
+        double revsPerSecond = rpm / 60;
+        if (revsPerSecond < MIN_REVS_PER_SECOND || !(diameterMeters > 0)) {
+            return 0;
+        }
+        return metersPerSecond / (revsPerSecond * diameterMeters);
+    }
+
+    //Ct = T / (ρ n² D⁴), with T in newtons
+    public static double thrustCoefficient(double grams, double rpm, double diameterMeters) {
+        double revsPerSecond = rpm / 60;
+        if (revsPerSecond < MIN_REVS_PER_SECOND || !(diameterMeters > 0)) {
+            return 0;
+        }
+        double diameterSquared = diameterMeters * diameterMeters;
+        double newtons = ThrustUnit.N.fromGrams(grams);
+        return newtons / (Calibration.AIR_DENSITY * revsPerSecond * revsPerSecond * diameterSquared * diameterSquared);
+    }
+}
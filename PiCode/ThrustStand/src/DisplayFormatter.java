@@ -0,0 +1,40 @@
+/*  Title:  DisplayFormatter.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: Reusable fixed-point formatter for one display field. Formats into
+ *  its own buffer and hands back the previous String when the text has not changed,
+ *  so a steady reading costs no allocation and does not re-fire property listeners.
+ *  One instance per field; JavaFX thread only.
+ */
+public final class DisplayFormatter {
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final StringBuilder text = new StringBuilder(24);
+    private String last = "";
+
+    //Same text as String.format("%.Nf", value) for the ranges displayed
+    public String format(double value, int decimals) {
+        text.setLength(0);
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            text.append(value);
+        } else {
+            long scaled = Math.round(Math.abs(value) * POW10[decimals]);
+            if (value < 0 && scaled != 0) {
+                text.append('-');
+            }
+            text.append(scaled / POW10[decimals]);
+            if (decimals > 0) {
+                text.append('.');
+                long fraction = scaled % POW10[decimals];
+                for (long p = POW10[decimals - 1]; p > 0; p /= 10) {
+                    text.append((char) ('0' + fraction / p % 10));
+                }
+            }
+        }
+        if (!last.contentEquals(text)) {
+            last = text.toString();
+        }
+        return last;
+    }
+}
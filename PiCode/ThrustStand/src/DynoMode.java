@@ -23,10 +23,16 @@ public class DynoMode extends BaseController {
     @FXML private ToggleButton motorToggle;
     @FXML private ToggleButton loggingToggle;
     @FXML private Button returnToMainBtn;
+    @FXML private Button sequenceButton;
 
     //Dyno mode specific controls
     @FXML private Slider throttleSlider;
     @FXML private TextField rpmField;
+    @FXML private TextField powerField;
+    @FXML private TextField efficiencyField;
+    @FXML private TextField propDiameterField;
+    @FXML private TextField advanceRatioField;
+    @FXML private TextField thrustCoefficientField;
 
     @FXML
     public void initialize() {
@@ -49,14 +55,11 @@ public class DynoMode extends BaseController {
             loggingToggle
         );
 
-        // Set mode to DYNO
-        serialController.setMode("DYNO");
-        
-        // Add throttle slider listener
-        throttleSlider.valueChangingProperty().addListener((obs, wasChanging, isChanging) -> {
-            if (!isChanging && motorToggle.isSelected()) {
-                // Only send the command when the slider stops moving and motor is on
-                serialController.setThrottle((int) throttleSlider.getValue());
+        // Stream the throttle while the slider is dragged; setpoints coalesce in the
+        // command queue, so only the newest value waiting is sent
+        throttleSlider.valueProperty().addListener((obs, oldValue, newValue) -> {
+            if (motorToggle.isSelected() && oldValue.intValue() != newValue.intValue()) {
+                serialController.setThrottle(newValue.intValue());
             }
         });
         
@@ -65,28 +68,64 @@ public class DynoMode extends BaseController {
             sharedElements.handleMotorToggle();
         });
 
-        // Add data received listener for telemetry
-        serialController.addDataReceivedListener(this::onDataReceived);
-
         // Other control handlers
         tearButton.setOnAction(e -> sharedElements.handleTearButton());
         holdToggle.setOnAction(e -> sharedElements.handleHoldToggle());
         loggingToggle.setOnAction(e -> sharedElements.handleLoggerToggle());
+        sequenceButton.textProperty().bind(sharedElements.sequenceButtonTextProperty());
+        sequenceButton.setOnAction(e -> sharedElements.handleSequenceButton("DYNO", "0-100/5"));
         
         bladeCountCombo.setOnAction(event -> {
             serialController.setBladeCount(bladeCountCombo.getValue());
         });
+
+        // Derived readouts, filled by SharedElements with the other measurements
+        rpmField.textProperty().bind(sharedElements.rpmProperty());
+        powerField.textProperty().bind(sharedElements.powerProperty());
+        efficiencyField.textProperty().bind(sharedElements.efficiencyProperty());
+        advanceRatioField.textProperty().bind(sharedElements.advanceRatioProperty());
+        thrustCoefficientField.textProperty().bind(sharedElements.thrustCoefficientProperty());
+        propDiameterField.setOnAction(event -> handlePropDiameter());
+    }
+
+    //Prop diameter in inches; blank clears it and the advance ratio and Ct read 0
+    private void handlePropDiameter() {
+        String text = propDiameterField.getText().trim();
+        try {
+            sharedElements.setPropDiameterInches(text.isEmpty() ? 0 : Double.parseDouble(text));
+        } catch (IllegalArgumentException ex) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setContentText("Please enter a valid prop diameter in inches");
+            alert.showAndWait();
+        }
+        showPropDiameter();
+    }
+
+    private void showPropDiameter() {
+        double inches = sharedElements.getPropDiameterInches();
+        propDiameterField.setText(inches > 0 ? String.format("%.1f", inches) : "");
+    }
+
+    //The scene is cached, so the mode is sent each time it is shown
+    @Override
+    protected void onActivate() {
+        serialController.setMode("DYNO");
+        showPropDiameter();
     }
 
-    private void onDataReceived(String data) {
-        serialController.parseData(data);
+    //Come back to a zero throttle, as a freshly loaded scene would
+    @Override
+    protected void onDeactivate() {
+        throttleSlider.setValue(0);
     }
 
     @FXML
     void returnToMainBtn() {
         //System.out.println("Returning to launcher");  //Debug
         try {
-            // Turn off motor before returning
+            // Turn off motor before returning; a running sequence stops it itself
+            sharedElements.stopSequence();
             if (motorToggle.isSelected()) {
                 serialController.setMotor(false);
                 motorToggle.setSelected(false);
@@ -0,0 +1,485 @@
+/*  Title:  HeadlessRun.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandPipeline.java
+ *  Description: Command line entry point that connects to a stand, optionally steps it
+ *  through a throttle (or RPM) profile and logs everything to a file, without loading
+ *  JavaFX. Meant for unattended and overnight runs over SSH.
+ *      java HeadlessRun --port ttyACM0 --duration 8h --profile 0:20,3600:40 --out run.tslog
+ *      java HeadlessRun --port ttyACM0 --sequence 0-100/5 --dwell 5 --average 2 --out sweep.tslog
+ *  Run with no arguments for the full list of options.
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public final class HeadlessRun {
+    private static final int DEFAULT_BAUD = 2000000; //Match to arduino code
+    private static final long DEFAULT_STATUS_SECONDS = 10;
+
+    //One profile step: hold value from atNanos until the next step
+    private static final class Step {
+        final long atNanos;
+        final int value;
+
+        Step(long atNanos, int value) {
+            this.atNanos = atNanos;
+            this.value = value;
+        }
+    }
+
+    private String port;
+    private int baud = DEFAULT_BAUD;
+    private long durationNanos;        //0 runs until the profile ends, or until stopped
+    private String mode = "DYNO";
+    private final List<Step> profile = new ArrayList<>();
+    private String out;
+    private String calibrationFile;
+    private boolean binaryLink;
+    private Integer bladeCount;
+    private Double propDiameterInches;
+    private ThrustUnit thrustUnit;
+    private AirspeedUnit airspeedUnit;
+    private long statusNanos = DEFAULT_STATUS_SECONDS * 1_000_000_000L;
+    private String sequence;
+    private double dwellSeconds = 5;
+    private double averageSeconds = 2;
+    private TestProfile sequenceProfile;
+    private final Map<SampleStore.Channel, String> filterSpecs = new EnumMap<>(SampleStore.Channel.class);
+    private double filterRateHz = ChannelFilters.DEFAULT_SAMPLE_RATE_HZ;
+    private Integer metricsPort;
+    private String metricsBind = MetricsServer.DEFAULT_BIND;
+    private MetricsServer metrics;
+
+    private StandPipeline pipeline;
+    private SerialController link;
+    private volatile TestSequencer sequencer;
+    private final StreamingStats.Summary thrustStats = new StreamingStats.Summary(); //Main thread
+    private volatile boolean stopping;
+
+    private HeadlessRun() {}
+
+    public static void main(String[] args) {
+        HeadlessRun run = new HeadlessRun();
+        try {
+            run.parseArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+        System.exit(run.run());
+    }
+
+    private static void usage() {
+        System.err.println("Usage: HeadlessRun --port <name|sim> [options]");
+        System.err.println("  --baud <rate>           Serial baud rate (default " + DEFAULT_BAUD + ")");
+        System.err.println("  --duration <time>       Run time, e.g. 90s, 30m, 8h (default: end of profile, or until stopped)");
+        System.err.println("  --mode <LAB|DYNO>       Stand mode; the profile is throttle % in DYNO, RPM in LAB (default DYNO)");
+        System.err.println("  --profile <steps|file>  Steps as seconds:value pairs, e.g. 0:20,60:50,120:0,");
+        System.err.println("                          or a file with one \"seconds,value\" step per line");
+        System.err.println("  --sequence <setpoints>  Step sequence instead of a profile, e.g. 0-100/5 or 1000,2000,4000;");
+        System.err.println("                          writes averages per step to <out>_steps.csv");
+        System.err.println("  --dwell <seconds>       Time on each sequence step (default 5)");
+        System.err.println("  --average <seconds>     End of each step averaged into the summary (default 2)");
+        System.err.println("  --out <file>            Log file; .tslog for a binary session log, otherwise CSV");
+        System.err.println("  --calibration <file>    Calibration saved from the configuration screen");
+        System.err.println("  --binary-link           Use the binary telemetry link");
+        System.err.println("  --blades <n>            Propeller blade count recorded with the log");
+        System.err.println("  --prop-diameter <in>    Propeller diameter in inches, for the advance ratio and thrust coefficient");
+        System.err.println("  --thrust-unit <unit>    g, kg, lb or N (default kg)");
+        System.err.println("  --airspeed-unit <unit>  m/s, mph, ft/s or kph (default m/s)");
+        System.err.println("  --filter <ch>=<spec>    Filter a channel, e.g. thrust=median:5,lowpass:4; repeat per channel.");
+        System.err.println("                          Channels: thrust, incoming_pitot, wake_pitot, current, voltage, rpm");
+        System.err.println("  --filter-rate <hz>      Telemetry rate for low-pass cutoffs (default " + ChannelFilters.DEFAULT_SAMPLE_RATE_HZ + ")");
+        System.err.println("  --status <seconds>      Progress line interval, 0 for none (default " + DEFAULT_STATUS_SECONDS + ")");
+        System.err.println("  --metrics-port <port>   Serve Prometheus metrics at http://<bind>:<port>/metrics");
+        System.err.println("  --metrics-bind <addr>   Address for the metrics endpoint (default " + MetricsServer.DEFAULT_BIND + ")");
+    }
+
+    private void parseArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--binary-link")) {
+                binaryLink = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--port": port = value.equalsIgnoreCase("sim") ? SimulatedStand.NAME : value; break;
+                case "--baud": baud = parseInt(arg, value); break;
+                case "--duration": durationNanos = parseDuration(value); break;
+                case "--mode": mode = value.toUpperCase(); break;
+                case "--profile": parseProfile(value); break;
+                case "--sequence": sequence = value; break;
+                case "--dwell": dwellSeconds = parseDouble(arg, value); break;
+                case "--average": averageSeconds = parseDouble(arg, value); break;
+                case "--out": out = value; break;
+                case "--calibration": calibrationFile = value; break;
+                case "--blades": bladeCount = parseInt(arg, value); break;
+                case "--prop-diameter": propDiameterInches = parseDouble(arg, value); break;
+                case "--thrust-unit": thrustUnit = parseThrustUnit(value); break;
+                case "--airspeed-unit": airspeedUnit = parseAirspeedUnit(value); break;
+                case "--status": statusNanos = parseInt(arg, value) * 1_000_000_000L; break;
+                case "--filter": parseFilter(value); break;
+                case "--filter-rate": filterRateHz = parseDouble(arg, value); break;
+                case "--metrics-port": metricsPort = parseInt(arg, value); break;
+                case "--metrics-bind": metricsBind = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (port == null) {
+            throw new IllegalArgumentException("--port is required");
+        }
+        if (!mode.equals("LAB") && !mode.equals("DYNO")) {
+            throw new IllegalArgumentException("--mode must be LAB or DYNO");
+        }
+        if (propDiameterInches != null && !(propDiameterInches >= 0)) {
+            throw new IllegalArgumentException("--prop-diameter must be 0 or more inches");
+        }
+        if (sequence != null) {
+            if (!profile.isEmpty()) {
+                throw new IllegalArgumentException("Use either --profile or --sequence, not both");
+            }
+            sequenceProfile = TestProfile.parse(mode, sequence, dwellSeconds, averageSeconds);
+        }
+        //Check the filters now rather than after connecting
+        new ChannelFilters().configure(filterSpecs, filterRateHz);
+    }
+
+    private void parseFilter(String value) {
+        String[] parts = value.split("=", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("--filter expects channel=spec, e.g. thrust=lowpass:4");
+        }
+        filterSpecs.put(ChannelFilters.channelOf(parts[0]), parts[1]);
+    }
+
+    private static int parseInt(String option, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    private static double parseDouble(String option, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+    }
+
+    //Unlike ThrustUnit.fromLabel, a typo is an error rather than a log in grams
+    private static ThrustUnit parseThrustUnit(String value) {
+        for (ThrustUnit unit : ThrustUnit.values()) {
+            if (unit.getLabel().equalsIgnoreCase(value.trim())) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("--thrust-unit must be g, kg, lb or N: " + value);
+    }
+
+    private static AirspeedUnit parseAirspeedUnit(String value) {
+        for (AirspeedUnit unit : AirspeedUnit.values()) {
+            if (unit.getLabel().equalsIgnoreCase(value.trim())) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("--airspeed-unit must be m/s, mph, ft/s or kph: " + value);
+    }
+
+    //Seconds by default, or with an s, m or h suffix; anything else is an error, since
+    //a misread unit would silently end an unattended run early or late
+    private static long parseDuration(String value) {
+        String text = value.trim().toLowerCase();
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Missing duration");
+        }
+        long scale = 1;
+        char suffix = text.charAt(text.length() - 1);
+        if (Character.isLetter(suffix)) {
+            scale = switch (suffix) {
+                case 's' -> 1;
+                case 'm' -> 60;
+                case 'h' -> 3600;
+                default -> throw new IllegalArgumentException("Invalid duration: " + value + " (use s, m or h, e.g. 90s, 30m, 8h)");
+            };
+            text = text.substring(0, text.length() - 1);
+        }
+        //Plain decimal digits only; Double.parseDouble would also take "5d", "NaN" or "0x1p3"
+        if (!text.matches("\\d+(\\.\\d*)?|\\.\\d+")) {
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+        return (long) (Double.parseDouble(text) * scale * 1e9);
+    }
+
+    private void parseProfile(String value) throws IOException {
+        Path file = Paths.get(value);
+        List<String> steps = new ArrayList<>();
+        if (Files.isRegularFile(file)) {
+            for (String line : Files.readAllLines(file)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    steps.add(line.replace(',', ':'));
+                }
+            }
+        } else {
+            for (String step : value.split(",")) {
+                steps.add(step.trim());
+            }
+        }
+        for (String step : steps) {
+            String[] parts = step.split(":");
+            if (parts.length != 2 || parts[0].isBlank()) {
+                throw new IllegalArgumentException("Invalid profile step: " + step);
+            }
+            long at = parseDuration(parts[0]);
+            if (!profile.isEmpty() && at < profile.get(profile.size() - 1).atNanos) {
+                throw new IllegalArgumentException("Profile steps must be in time order: " + step);
+            }
+            profile.add(new Step(at, parseInt("--profile", parts[1])));
+        }
+    }
+
+    private int run() {
+        long startNanos = System.nanoTime();
+        pipeline = StandRegistry.getInstance().getSelected().getPipeline();
+        link = pipeline.getSerialController();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "headless-shutdown"));
+
+        try {
+            configurePipeline();
+        } catch (IOException e) {
+            System.err.println("Cannot load calibration " + calibrationFile + ": " + e.getMessage());
+            return 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            return 2;
+        }
+        if (!link.openPort(port, baud)) {
+            System.err.println("Failed to connect to " + port);
+            return 1;
+        }
+        link.setBinaryProtocol(binaryLink);
+        link.setMode(mode);
+        if (metricsPort != null) {
+            try {
+                metrics = MetricsServer.start(metricsBind, metricsPort);
+                System.out.printf("Serving metrics on http://%s:%d/metrics%n", metricsBind, metricsPort);
+            } catch (IOException e) {
+                System.err.println("Failed to start metrics endpoint: " + e.getMessage());
+            }
+        }
+        if (bladeCount != null) {
+            link.setBladeCount(bladeCount);
+        }
+        try {
+            pipeline.startLogging();
+        } catch (IOException e) {
+            System.err.println("Failed to start logging: " + e.getMessage());
+            shutdown();
+            return 1;
+        }
+        System.out.printf("Connected to %s in %d ms, logging to %s%n",
+                port, (System.nanoTime() - startNanos) / 1_000_000, pipeline.getDataLogger().getCurrentFilePath());
+
+        if (sequenceProfile != null) {
+            runSequence(System.nanoTime());
+        } else {
+            if (!profile.isEmpty()) {
+                link.setMotor(true);
+            }
+            runProfile(System.nanoTime());
+        }
+        shutdown();
+        return 0;
+    }
+
+    private void configurePipeline() throws IOException {
+        if (calibrationFile != null) {
+            pipeline.loadCalibration(calibrationFile);
+        }
+        if (thrustUnit != null) {
+            pipeline.setThrustUnit(thrustUnit);
+        }
+        if (airspeedUnit != null) {
+            pipeline.setAirspeedUnit(airspeedUnit);
+        }
+        if (bladeCount != null) {
+            pipeline.setBladeCount(bladeCount);
+        }
+        if (propDiameterInches != null) {
+            pipeline.setPropDiameterMeters(propDiameterInches * DerivedChannels.METERS_PER_INCH);
+        }
+        link.getFilters().configure(filterSpecs, filterRateHz);
+        DataLogger logger = pipeline.getDataLogger();
+        if (out != null) {
+            String path = Paths.get(out).toAbsolutePath().toString();
+            boolean binary = path.endsWith(SessionLogFormat.FILE_EXTENSION);
+            String extension = binary ? SessionLogFormat.FILE_EXTENSION : ".csv";
+            if (path.endsWith(extension)) {
+                path = path.substring(0, path.length() - extension.length());
+            }
+            logger.setBinaryFormat(binary);
+            logger.setAppendTimestamp(false);
+            logger.setFilePath(path);
+        }
+    }
+
+    //Main thread: send each profile step on time and print progress until the run ends
+    private void runProfile(long start) {
+        long end = durationNanos > 0 ? start + durationNanos
+                : !profile.isEmpty() ? start + profile.get(profile.size() - 1).atNanos
+                : Long.MAX_VALUE;
+        int nextStep = 0;
+        long nextStatus = statusNanos > 0 ? start + statusNanos : Long.MAX_VALUE;
+        long lastSamples = 0;
+        long lastStatus = start;
+
+        while (!stopping && link.isPortOpen()) {
+            long now = System.nanoTime();
+            while (nextStep < profile.size() && now - start >= profile.get(nextStep).atNanos) {
+                sendStep(profile.get(nextStep++).value);
+            }
+            if (now - end >= 0) {
+                break;
+            }
+            if (now - nextStatus >= 0) {
+                long samples = pipeline.getHistory().getTotalAppended();
+                printStatus(now - start, (samples - lastSamples) * 1e9 / (now - lastStatus));
+                lastSamples = samples;
+                lastStatus = now;
+                nextStatus += statusNanos;
+            }
+
+            long wake = Math.min(end, nextStatus);
+            if (nextStep < profile.size()) {
+                wake = Math.min(wake, start + profile.get(nextStep).atNanos);
+            }
+            long sleepMillis = Math.max(1, Math.min((wake - now) / 1_000_000, 1000));
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (!link.isPortOpen() && !stopping) {
+            System.err.println("Lost connection to " + port);
+        }
+    }
+
+    //Main thread: let the sequencer drive the stand and report each step as it completes
+    private void runSequence(long start) {
+        long end = durationNanos > 0 ? start + durationNanos : Long.MAX_VALUE;
+        TestSequencer run = new TestSequencer(pipeline, sequenceProfile);
+        run.setOnStepComplete(r -> System.out.printf("Step %d  %d %s  %.3f %s  %.1f W  %.0f RPM  (%d samples, sent %.3f ms late)%n",
+                r.step, r.setpoint, sequenceProfile.getSetpointUnit(), r.thrust, r.thrustUnit.getLabel(),
+                r.power, r.rpm, r.samples, r.latenessNanos / 1e6));
+        sequencer = run.start();
+        long nextStatus = statusNanos > 0 ? start + statusNanos : Long.MAX_VALUE;
+        long lastSamples = 0;
+        long lastStatus = start;
+        while (run.isRunning() && !stopping && System.nanoTime() - end < 0) {
+            long now = System.nanoTime();
+            if (now - nextStatus >= 0) {
+                long samples = pipeline.getHistory().getTotalAppended();
+                printStatus(now - start, (samples - lastSamples) * 1e9 / (now - lastStatus));
+                lastSamples = samples;
+                lastStatus = now;
+                nextStatus += statusNanos;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        run.stop();
+        run.awaitFinished();
+        if (run.getFailure() != null) {
+            System.err.println(run.getFailure());
+        }
+        System.out.printf("Completed %d of %d steps, worst dispatch %.3f ms late%n",
+                run.getResults().size(), sequenceProfile.getStepCount(), run.getMaxLatenessNanos() / 1e6);
+    }
+
+    private void sendStep(int value) {
+        boolean sent = mode.equals("LAB") ? link.setRPM(value) : link.setThrottle(value);
+        if (!sent) {
+            System.err.println("Failed to send profile step " + value);
+        }
+    }
+
+    private void printStatus(long elapsedNanos, double samplesPerSecond) {
+        DataLogger logger = pipeline.getDataLogger();
+        long seconds = elapsedNanos / 1_000_000_000L;
+        ThrustUnit unit = pipeline.getThrustUnit();
+        pipeline.getStats().read(StreamingStats.Channel.THRUST, thrustStats);
+        System.out.printf("%d:%02d:%02d  %.0f samples/s  thrust %.3f +/- %.3f %s  rows %d  dropped %d  parse errors %d  heap %d MB%n",
+                seconds / 3600, seconds / 60 % 60, seconds % 60, samplesPerSecond,
+                unit.fromGrams(thrustStats.mean), unit.fromGrams(thrustStats.stdDev), unit.getLabel(),
+                logger.getRecordsWritten(), logger.getDroppedRecords(), link.getParseFailures(),
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+    }
+
+    //Motor off, flush the log and close the port; runs once, on exit or Ctrl+C
+    private synchronized void shutdown() {
+        if (stopping) {
+            return;
+        }
+        stopping = true;
+        TestSequencer run = sequencer;
+        if (run != null) {
+            run.stop(); //Zeroes the throttle and turns the motor off itself
+            run.awaitFinished();
+        }
+        if (link.isPortOpen() && !profile.isEmpty()) {
+            link.setMotor(false);
+        }
+        DataLogger logger = pipeline.getDataLogger();
+        logger.stopLogging();
+        link.closePort();
+        if (metrics != null) {
+            metrics.stop();
+        }
+        System.out.printf("Wrote %d rows (%d dropped) to %s%n",
+                logger.getRecordsWritten(), logger.getDroppedRecords(), logger.getCurrentFilePath());
+        StreamingStats.Summary peak = new StreamingStats.Summary();
+        if (pipeline.getStats().read(StreamingStats.Channel.THRUST, peak)) {
+            ThrustUnit unit = pipeline.getThrustUnit();
+            System.out.printf("Peak thrust %.3f %s", unit.fromGrams(peak.peakMax), unit.getLabel());
+            pipeline.getStats().read(StreamingStats.Channel.CURRENT, peak);
+            System.out.printf(", current %.2f A", peak.peakMax);
+            pipeline.getStats().read(StreamingStats.Channel.RPM, peak);
+            System.out.printf(", RPM %.0f", peak.peakMax);
+            pipeline.getStats().read(StreamingStats.Channel.POWER, peak);
+            System.out.printf(", power %.1f W", peak.peakMax);
+            pipeline.getStats().read(StreamingStats.Channel.EFFICIENCY, peak);
+            System.out.printf(", mean efficiency %.2f g/W%n", peak.overallMean);
+        }
+        for (LatencyTrace.Stage stage : LatencyTrace.Stage.values()) {
+            LatencyHistogram.Snapshot latency = link.getLatencyTrace().get(stage).snapshot();
+            if (latency.count > 0) {
+                System.out.printf("%s: p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n", stage.getLabel(),
+                        latency.p50 / 1e6, latency.p99 / 1e6, latency.p999 / 1e6, latency.max / 1e6);
+            }
+        }
+        for (CommandChannel.CommandStats command : link.getCommandChannel().getStats()) {
+            System.out.printf("%s: %d sent, %d coalesced, %d acked, %d rejected, %d unanswered, round trip mean %.1f ms, max %.1f ms%n",
+                    command.getName(), command.getSent(), command.getCoalesced(), command.getAcknowledged(),
+                    command.getRejected(), command.getTimedOut(),
+                    command.getMeanRoundTripNanos() / 1e6, command.getMaxRoundTripNanos() / 1e6);
+        }
+    }
+}
@@ -24,13 +24,13 @@ public class LabMode extends BaseController{
     @FXML private ToggleButton motorToggle;
     @FXML private ToggleButton loggingToggle;
     @FXML private Button returnToMainBtn;
+    @FXML private Button sequenceButton;
 
     //Lab mode specific controls
     @FXML private ComboBox<Integer> rpmCombo;
 
     @FXML
     public void initialize(){
-        serialController.setMode("LAB");
         sharedElements.initializeControls(
             thrustField,
             tearButton,
@@ -47,8 +47,6 @@ public class LabMode extends BaseController{
             loggingToggle
         );
 
-        serialController.addDataReceivedListener(this::onDataReceived);
-
         //Generate RPM values from 1000 to 30000 in increments of 1000 for combo box
         int minRPM = 1000;
         int maxRPM = 30000;
@@ -68,18 +66,25 @@ public class LabMode extends BaseController{
         tearButton.setOnAction(e -> sharedElements.handleTearButton());
         holdToggle.setOnAction(e -> sharedElements.handleHoldToggle());
         loggingToggle.setOnAction(e -> sharedElements.handleLoggerToggle());
+        sequenceButton.textProperty().bind(sharedElements.sequenceButtonTextProperty());
+        sequenceButton.setOnAction(e -> sharedElements.handleSequenceButton("LAB", "1000-10000/1000"));
         motorToggle.setOnAction(event -> {
             sharedElements.handleMotorToggle();
         });
+    }
 
-        
+    //The scene is cached, so the mode is sent each time it is shown
+    @Override
+    protected void onActivate(){
+        serialController.setMode("LAB");
     }
 
     @FXML
     void returnToMainBtn(ActionEvent rtn){
         //System.out.println("Returning to launcher");  //Debug
         try {
-            // Turn off motor before returning
+            // Turn off motor before returning; a running sequence stops it itself
+            sharedElements.stopSequence();
             if (motorToggle.isSelected()) {
                 serialController.setMotor(false);
                 motorToggle.setSelected(false);
@@ -89,10 +94,4 @@ public class LabMode extends BaseController{
             e.printStackTrace();
         }
     }
-
-
-    private void onDataReceived(String data) {
-        serialController.parseData(data); //Send to serial controller parsing function
-    }
-
 }
@@ -0,0 +1,112 @@
+/*  Title:  LatencyHistogram.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: LatencyTrace.java
+ *  Description: Fixed-size log-linear histogram of nanosecond latencies, in the style of
+ *  HdrHistogram: exact below 128 ns, then 64 buckets per power of two (within 1.6%)
+ *  up to about 68 s. Recording is one bucket increment, with no allocation or locking,
+ *  so it can sit on the ingest path; percentiles are computed from a snapshot on demand.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;         //Buckets per power of two
+    private static final int LINEAR_LIMIT = SUB_COUNT * 2;      //Values below this are exact
+    private static final int MAX_EXPONENT = 36;                 //2^36 ns ~ 68 s
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BITS - 1) * SUB_COUNT;
+
+    //Percentiles and extremes at the time of the snapshot, in nanoseconds
+    public static final class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long p50;
+        public final long p99;
+        public final long p999;
+        public final long max;
+
+        private Snapshot(long count, double mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    //Record one latency; negative values count as 0, huge ones as the top bucket
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucketOf(value));
+        total.addAndGet(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        if (count == 0) {
+            return new Snapshot(0, Double.NaN, 0, 0, 0, 0);
+        }
+        long highest = max.get();
+        return new Snapshot(count, (double) total.get() / count,
+                Math.min(percentile(copy, count, 0.50), highest),
+                Math.min(percentile(copy, count, 0.99), highest),
+                Math.min(percentile(copy, count, 0.999), highest),
+                highest);
+    }
+
+    //Highest value in the bucket holding the given fraction of the counts
+    private static long percentile(long[] copy, long count, double fraction) {
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += copy[i];
+            if (seen >= target) {
+                return highestValueIn(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;
+        return LINEAR_LIMIT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int octave = (bucket - LINEAR_LIMIT) / SUB_COUNT;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_COUNT;
+        int shift = octave + 1;
+        return ((long) (SUB_COUNT + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,52 @@
+/*  Title:  LatencyTrace.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Per-stage latency histograms for one stand. Each sample carries the
+ *  System.nanoTime() at which its bytes were read from the port, when it was parsed
+ *  and when it was converted; every stage that handles it records how long it took
+ *  to get there. Shown on the Diagnostics tab of the configuration screen to tell
+ *  whether lag comes from the link, the display or the logger.
+ */
+public final class LatencyTrace {
+    public enum Stage {
+        PARSE("Read to parsed"),                //Ingest thread
+        CONVERT("Parsed to converted"),         //Display hand-off, ingest thread
+        DISPLAY("Converted to on screen"),      //JavaFX thread
+        SCREEN("Read to on screen"),            //JavaFX thread, end to end
+        LOG("Read to logged"),                  //Logger thread, row encoded or appended
+        DISK("Read to file write");             //Logger thread, oldest row of each write
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    public LatencyTrace() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
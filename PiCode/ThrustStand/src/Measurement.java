@@ -0,0 +1,39 @@
+/*  Title:  Measurement.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: One sample converted to physical units, as plain numbers. This is
+ *  what the display and the loggers consume; text is only produced at the edge
+ *  (display formatting, CSV encoding). Instances are reused, not shared between
+ *  threads without a hand-off. The main values are filtered (see ChannelFilters);
+ *  the derived figures are computed from them (see DerivedChannels).
+ */
+public final class Measurement {
+    public long sequence = -1;  //Ring sequence of the sample it came from, -1 before any
+    public long readNanos;      //Host System.nanoTime() when read from the port
+    public long receivedNanos;  //Host System.nanoTime() at receive
+    public long convertedNanos; //Host System.nanoTime() when converted for display
+    public double thrust;
+    public ThrustUnit thrustUnit = ThrustUnit.G;
+    public double incomingAirspeed;
+    public double wakeAirspeed;
+    public AirspeedUnit airspeedUnit = AirspeedUnit.METERS_PER_SECOND;
+    public double current;      //Amps
+    public double voltage;      //Volts
+    public double rpm;
+    public double power;        //Watts
+    public double efficiency;   //Grams-force per watt
+    public double advanceRatio;
+    public double thrustCoefficient;
+    //The same channels before filtering; equal to the values above unless filtered is set
+    public boolean filtered;
+    public double unfilteredThrust;
+    public double unfilteredIncomingAirspeed;
+    public double unfilteredWakeAirspeed;
+    public double unfilteredCurrent;
+    public double unfilteredVoltage;
+    public double unfilteredRpm;
+    public int bladeCount;
+    public double propDiameter; //Meters, 0 if not entered
+    public int step = -1;       //Test sequencer step, -1 outside a sequence
+}
@@ -0,0 +1,277 @@
+/*  Title:  MetricsServer.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandRegistry.java
+ *  Description: Optional HTTP endpoint serving every stand's pipeline counters at
+ *  /metrics in the Prometheus text format, so lab monitoring can scrape the stand.
+ *  Off unless a port is given: -Dthruststand.metricsPort=9464 for the GUI, or
+ *  --metrics-port for HeadlessRun. Binds to localhost unless an address is given
+ *  (thruststand.metricsBind / --metrics-bind, e.g. 0.0.0.0 for the LAN).
+ *  A scrape only reads volatile counters and histogram snapshots on the server's own
+ *  thread; it never takes a pipeline lock or touches the JavaFX thread.
+ */
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+public final class MetricsServer {
+    public static final String PORT_PROPERTY = "thruststand.metricsPort";
+    public static final String BIND_PROPERTY = "thruststand.metricsBind";
+    public static final String DEFAULT_BIND = "127.0.0.1";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    //Previous scrape per stand, for the sample rate gauge (server thread only)
+    private static final class RateState {
+        long samples;
+        long nanos;
+        double rate;
+    }
+
+    private final HttpServer server;
+    private final Map<String, RateState> rates = new HashMap<>();
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Serve /metrics on a single daemon thread.
+     * @throws IOException if the address cannot be bound
+     */
+    public static MetricsServer start(String bindAddress, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        MetricsServer metrics = new MetricsServer(http);
+        http.createContext("/metrics", metrics::handle);
+        http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        http.start();
+        return metrics;
+    }
+
+    //Start from the system properties, or return null if no port is configured
+    public static MetricsServer startFromProperties() {
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        String bind = System.getProperty(BIND_PROPERTY, DEFAULT_BIND);
+        try {
+            MetricsServer metrics = start(bind, port);
+            System.out.println("Serving metrics on http://" + bind + ":" + port + "/metrics");
+            return metrics;
+        } catch (IOException e) {
+            System.err.println("Failed to start metrics endpoint on " + bind + ":" + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    //Whole exposition for all stands, grouped by metric as the format requires
+    String render() {
+        long now = System.nanoTime();
+        StringBuilder out = new StringBuilder(8192);
+        Iterable<StandRegistry.Stand> stands = StandRegistry.getInstance().getStands();
+
+        header(out, "thruststand_link_up", "gauge", "1 while the serial link (or simulated stand) is open");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_link_up", stand, stand.getSerialController().isPortOpen() ? 1 : 0);
+        }
+        header(out, "thruststand_replaying", "gauge", "1 while a recorded session is replaying");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_replaying", stand, stand.getSerialController().isReplaying() ? 1 : 0);
+        }
+        header(out, "thruststand_lines_received_total", "counter", "Text lines and binary frames received");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_lines_received_total", stand, stand.getSerialController().getLinesReceived());
+        }
+        header(out, "thruststand_parse_failures_total", "counter", "Lines that could not be parsed as telemetry");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_parse_failures_total", stand, stand.getSerialController().getParseFailures());
+        }
+        header(out, "thruststand_frames_dropped_total", "counter", "Binary frames lost in transit");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_frames_dropped_total", stand, stand.getSerialController().getFramesDropped());
+        }
+        header(out, "thruststand_frames_corrupt_total", "counter", "Binary frames rejected by the decoder");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_frames_corrupt_total", stand, stand.getSerialController().getFramesCorrupt());
+        }
+        header(out, "thruststand_samples_total", "counter", "Samples published to the telemetry ring");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_samples_total", stand, stand.getSerialController().getTelemetryRing().getPublishedSequence());
+        }
+        header(out, "thruststand_sample_rate_hz", "gauge", "Samples per second since the previous scrape");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_sample_rate_hz", stand, sampleRate(stand, now));
+        }
+        header(out, "thruststand_last_sample_age_seconds", "gauge", "Time since the newest sample arrived over the link");
+        for (StandRegistry.Stand stand : stands) {
+            long last = stand.getSerialController().getLastSampleNanos();
+            sample(out, "thruststand_last_sample_age_seconds", stand, last != 0 ? Math.max(0, now - last) / 1e9 : Double.NaN);
+        }
+        header(out, "thruststand_motor_on", "gauge", "1 if the last motor command was ON");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_motor_on", stand, stand.getSerialController().isMotorOn() ? 1 : 0);
+        }
+        header(out, "thruststand_sequence_step", "gauge", "Test sequencer step running, -1 outside a sequence");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_sequence_step", stand, stand.getSerialController().getSequenceStep());
+        }
+        header(out, "thruststand_command_queue_depth", "gauge", "Commands waiting to be written to the stand");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_command_queue_depth", stand, stand.getSerialController().getCommandChannel().getQueueDepth());
+        }
+        header(out, "thruststand_commands_sent_total", "counter", "Commands written to the stand");
+        for (StandRegistry.Stand stand : stands) {
+            for (CommandChannel.CommandStats command : stand.getSerialController().getCommandChannel().getStats()) {
+                sample(out, "thruststand_commands_sent_total", stand, "command", command.getName(), command.getSent());
+            }
+        }
+        header(out, "thruststand_commands_acked_total", "counter", "Commands acknowledged by the stand");
+        for (StandRegistry.Stand stand : stands) {
+            for (CommandChannel.CommandStats command : stand.getSerialController().getCommandChannel().getStats()) {
+                sample(out, "thruststand_commands_acked_total", stand, "command", command.getName(), command.getAcknowledged());
+            }
+        }
+        header(out, "thruststand_commands_rejected_total", "counter", "Commands the stand answered with a NAK");
+        for (StandRegistry.Stand stand : stands) {
+            for (CommandChannel.CommandStats command : stand.getSerialController().getCommandChannel().getStats()) {
+                sample(out, "thruststand_commands_rejected_total", stand, "command", command.getName(), command.getRejected());
+            }
+        }
+        header(out, "thruststand_commands_unanswered_total", "counter", "Commands the stand never answered");
+        for (StandRegistry.Stand stand : stands) {
+            for (CommandChannel.CommandStats command : stand.getSerialController().getCommandChannel().getStats()) {
+                sample(out, "thruststand_commands_unanswered_total", stand, "command", command.getName(), command.getTimedOut());
+            }
+        }
+        header(out, "thruststand_command_round_trip_max_seconds", "gauge", "Longest command to ack round trip");
+        for (StandRegistry.Stand stand : stands) {
+            for (CommandChannel.CommandStats command : stand.getSerialController().getCommandChannel().getStats()) {
+                sample(out, "thruststand_command_round_trip_max_seconds", stand, "command", command.getName(),
+                        command.getMaxRoundTripNanos() / 1e9);
+            }
+        }
+        header(out, "thruststand_logging", "gauge", "1 while a log file is open");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_logging", stand, stand.getPipeline().getDataLogger().isLogging() ? 1 : 0);
+        }
+        //Only the current file is reported, by name alone; each new session still starts a
+        //new series, so alert on thruststand_logging rather than on this
+        header(out, "thruststand_log_info", "gauge", "Name of the current or last log file");
+        for (StandRegistry.Stand stand : stands) {
+            String file = stand.getPipeline().getDataLogger().getCurrentFilePath();
+            if (file != null) {
+                sample(out, "thruststand_log_info", stand, "file", Paths.get(file).getFileName().toString(), 1);
+            }
+        }
+        header(out, "thruststand_log_queue_depth", "gauge", "Samples published but not yet logged");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_log_queue_depth", stand, stand.getPipeline().getDataLogger().getQueueDepth());
+        }
+        header(out, "thruststand_log_bytes", "gauge", "Bytes written to the current or last log file");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_log_bytes", stand, stand.getPipeline().getDataLogger().getBytesWritten());
+        }
+        header(out, "thruststand_log_rows", "gauge", "Rows written to the current or last log file");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_log_rows", stand, stand.getPipeline().getDataLogger().getRecordsWritten());
+        }
+        header(out, "thruststand_log_rows_dropped", "gauge", "Samples the logger fell too far behind to write");
+        for (StandRegistry.Stand stand : stands) {
+            sample(out, "thruststand_log_rows_dropped", stand, stand.getPipeline().getDataLogger().getDroppedRecords());
+        }
+        header(out, "thruststand_stage_latency_seconds", "summary", "Pipeline stage latency since start or the last reset");
+        for (StandRegistry.Stand stand : stands) {
+            LatencyTrace trace = stand.getSerialController().getLatencyTrace();
+            for (LatencyTrace.Stage stage : LatencyTrace.Stage.values()) {
+                LatencyHistogram.Snapshot snapshot = trace.get(stage).snapshot();
+                String name = stage.name().toLowerCase();
+                long[] values = {snapshot.p50, snapshot.p99, snapshot.p999};
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    out.append("thruststand_stage_latency_seconds{stand=\"").append(escape(stand.getName()))
+                            .append("\",stage=\"").append(name).append("\",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                            .append(snapshot.count > 0 ? Double.toString(values[i] / 1e9) : "NaN").append('\n');
+                }
+                sample(out, "thruststand_stage_latency_seconds_count", stand, "stage", name, snapshot.count);
+                sample(out, "thruststand_stage_latency_seconds_sum", stand, "stage", name,
+                        snapshot.count > 0 ? snapshot.mean * snapshot.count / 1e9 : 0);
+            }
+        }
+        return out.toString();
+    }
+
+    private double sampleRate(StandRegistry.Stand stand, long now) {
+        long samples = stand.getSerialController().getTelemetryRing().getPublishedSequence();
+        RateState state = rates.computeIfAbsent(stand.getName(), name -> new RateState());
+        if (state.nanos != 0 && now > state.nanos) {
+            state.rate = (samples - state.samples) * 1e9 / (now - state.nanos);
+        }
+        state.samples = samples;
+        state.nanos = now;
+        return state.rate;
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, StandRegistry.Stand stand, double value) {
+        out.append(name).append("{stand=\"").append(escape(stand.getName())).append("\"} ");
+        appendValue(out, value);
+    }
+
+    private static void sample(StringBuilder out, String name, StandRegistry.Stand stand, String label, String labelValue, double value) {
+        out.append(name).append("{stand=\"").append(escape(stand.getName())).append("\",")
+                .append(label).append("=\"").append(escape(labelValue)).append("\"} ");
+        appendValue(out, value);
+    }
+
+    //Whole numbers without a decimal point, as counters are usually written
+    private static void appendValue(StringBuilder out, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    //Label values escape backslash, quote and newline
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,119 @@
+/*  Title:  RingWorker.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ThrustStand.java
+ *  Description: Daemon thread that drains a TelemetryRing cursor into a handler.
+ *  Used for consumers that must see every sample (data logger, alarms) without
+ *  running on the JavaFX thread or holding up the serial ingest thread.
+ *  An optional exit action runs on the worker thread after the last sample, so a
+ *  consumer can release what its handler uses without racing it; stop() returns
+ *  only once the thread has exited, requestStop() at once.
+ */
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class RingWorker {
+    private static final long IDLE_WAIT_MS = 100;
+
+    private final TelemetryRing.Cursor cursor;
+    private final Consumer<Sample> handler;
+    private final Runnable idleAction;
+    private final Runnable exitAction;
+    private final Sample scratch = new Sample();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public RingWorker(TelemetryRing ring, String name, Consumer<Sample> handler) {
+        this(ring, name, handler, null);
+    }
+
+    /**
+     * @param idleAction Optional task run whenever the cursor has caught up
+     */
+    public RingWorker(TelemetryRing ring, String name, Consumer<Sample> handler, Runnable idleAction) {
+        this(ring, name, handler, idleAction, null);
+    }
+
+    /**
+     * @param idleAction Optional task run whenever the cursor has caught up
+     * @param exitAction Optional task run once on the worker thread after stopping
+     */
+    public RingWorker(TelemetryRing ring, String name, Consumer<Sample> handler, Runnable idleAction, Runnable exitAction) {
+        this.cursor = ring.newCursor(name);
+        this.handler = handler;
+        this.idleAction = idleAction;
+        this.exitAction = exitAction;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    public RingWorker start() {
+        thread.start();
+        return this;
+    }
+
+    public TelemetryRing.Cursor getCursor() {
+        return cursor;
+    }
+
+    private void run() {
+        while (true) {
+            //Read the flag first so samples published before stop() are still drained
+            boolean stopping = !running;
+            while (cursor.poll(scratch)) {
+                try {
+                    handler.accept(scratch);
+                } catch (RuntimeException e) {
+                    System.err.println(thread.getName() + " failed to handle sample " + scratch.sequence);
+                    e.printStackTrace();
+                }
+            }
+            if (idleAction != null) {
+                idleAction.run();
+            }
+            if (stopping) {
+                break;
+            }
+            cursor.await(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+        cursor.close();
+        if (exitAction != null) {
+            try {
+                exitAction.run();
+            } catch (RuntimeException e) {
+                System.err.println(thread.getName() + " failed to shut down");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //Ask the thread to stop after the samples already published, without waiting for it
+    public void requestStop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stop after the samples already published have been handled. Blocks until the
+     * thread, and its exit action, have finished; a slow disk makes this slow
+     * rather than leaving the handler running alongside the caller.
+     */
+    public void stop() {
+        requestStop();
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
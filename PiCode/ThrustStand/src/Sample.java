@@ -0,0 +1,90 @@
+/*  Title:  Sample.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ThrustStand.java
+ *  Description: Mutable holder for one telemetry sample from the Teensy. Instances
+ *  are preallocated as TelemetryRing slots and as per-consumer scratch copies so
+ *  that no objects are created per sample.
+ */
+public final class Sample {
+    //Ring sequence number assigned when the sample was published
+    long sequence;
+    //Host System.nanoTime() when the bytes holding it were read from the port
+    long readNanos;
+    //Host System.nanoTime() when the line was received and parsed
+    long receivedNanos;
+    //Teensy micros() at sampling, or -1 when the link does not carry it (text mode)
+    long deviceMicros = -1;
+
+    //Raw sensor values as sent by the Teensy
+    float incomingPitotV;
+    float wakePitotV;
+    float currentV;
+    float voltageV;
+    long rawThrust;
+    float rpm;
+
+    //Values after the stand's ChannelFilters, equal to the raw ones on unfiltered channels
+    double filteredThrust;
+    float filteredIncomingPitotV;
+    float filteredWakePitotV;
+    float filteredCurrentV;
+    float filteredVoltageV;
+    float filteredRpm;
+    //True if any channel was filtered, so the raw and filtered values can differ
+    boolean filtered;
+
+    //Test sequencer step running when the sample arrived, -1 outside a sequence
+    int step = -1;
+
+    //Copy the raw values into the filtered ones; every decoder does this on success
+    void passThrough() {
+        filteredThrust = rawThrust;
+        filteredIncomingPitotV = incomingPitotV;
+        filteredWakePitotV = wakePitotV;
+        filteredCurrentV = currentV;
+        filteredVoltageV = voltageV;
+        filteredRpm = rpm;
+        filtered = false;
+    }
+
+    public void copyFrom(Sample other) {
+        this.sequence = other.sequence;
+        this.readNanos = other.readNanos;
+        this.receivedNanos = other.receivedNanos;
+        this.deviceMicros = other.deviceMicros;
+        this.incomingPitotV = other.incomingPitotV;
+        this.wakePitotV = other.wakePitotV;
+        this.currentV = other.currentV;
+        this.voltageV = other.voltageV;
+        this.rawThrust = other.rawThrust;
+        this.rpm = other.rpm;
+        this.filteredThrust = other.filteredThrust;
+        this.filteredIncomingPitotV = other.filteredIncomingPitotV;
+        this.filteredWakePitotV = other.filteredWakePitotV;
+        this.filteredCurrentV = other.filteredCurrentV;
+        this.filteredVoltageV = other.filteredVoltageV;
+        this.filteredRpm = other.filteredRpm;
+        this.filtered = other.filtered;
+        this.step = other.step;
+    }
+
+    public long getSequence() { return sequence; }
+    public long getReadNanos() { return readNanos; }
+    public long getReceivedNanos() { return receivedNanos; }
+    public long getDeviceMicros() { return deviceMicros; }
+    public float getIncomingPitotV() { return incomingPitotV; }
+    public float getWakePitotV() { return wakePitotV; }
+    public float getCurrentV() { return currentV; }
+    public float getVoltageV() { return voltageV; }
+    public long getRawThrust() { return rawThrust; }
+    public float getRpm() { return rpm; }
+    public double getFilteredThrust() { return filteredThrust; }
+    public float getFilteredIncomingPitotV() { return filteredIncomingPitotV; }
+    public float getFilteredWakePitotV() { return filteredWakePitotV; }
+    public float getFilteredCurrentV() { return filteredCurrentV; }
+    public float getFilteredVoltageV() { return filteredVoltageV; }
+    public float getFilteredRpm() { return filteredRpm; }
+    public boolean isFiltered() { return filtered; }
+    public int getStep() { return step; }
+}
@@ -0,0 +1,154 @@
+/*  Title:  SampleStore.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: Fixed-capacity columnar history of recent telemetry. Each channel is
+ *  a primitive array written in a circle, so memory use is fixed no matter how long
+ *  a session runs. One thread appends; any thread can take a View over a range of
+ *  the history, which reads the live arrays without copying or boxing.
+ */
+import java.lang.invoke.VarHandle;
+
+public class SampleStore {
+    public static final int DEFAULT_CAPACITY = 1 << 16; //~21 min at 50Hz
+
+    //Values are stored in the units the Teensy sends them in
+    public enum Channel {
+        THRUST,         //Raw HX711 counts
+        INCOMING_PITOT, //Sensor volts
+        WAKE_PITOT,     //Sensor volts
+        CURRENT,        //Sensor volts
+        VOLTAGE,        //Divider volts
+        RPM
+    }
+
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final double[][] columns;
+    private final long[] timestamps;   //Host System.nanoTime() at receive
+    private final int mask;
+
+    //Number of samples ever appended; index of the next write
+    private volatile long head;
+
+    public SampleStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SampleStore(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Store capacity must be a power of two: " + capacity);
+        }
+        columns = new double[CHANNELS.length][capacity];
+        timestamps = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    public long getTotalAppended() {
+        return head;
+    }
+
+    //O(1) append; only one thread may call this
+    public void append(Sample sample) {
+        long index = head;
+        int slot = (int) (index & mask);
+        timestamps[slot] = sample.receivedNanos;
+        columns[Channel.THRUST.ordinal()][slot] = sample.rawThrust;
+        columns[Channel.INCOMING_PITOT.ordinal()][slot] = sample.incomingPitotV;
+        columns[Channel.WAKE_PITOT.ordinal()][slot] = sample.wakePitotV;
+        columns[Channel.CURRENT.ordinal()][slot] = sample.currentV;
+        columns[Channel.VOLTAGE.ordinal()][slot] = sample.voltageV;
+        columns[Channel.RPM.ordinal()][slot] = sample.rpm;
+        head = index + 1;
+    }
+
+    //The newest n samples (fewer if the store holds less)
+    public View latest(int n) {
+        long end = head;
+        long first = Math.max(oldest(end), end - n);
+        return new View(first, end);
+    }
+
+    //All retained samples received at or after the given System.nanoTime()
+    public View since(long fromNanos) {
+        long end = head;
+        return new View(lowerBound(oldest(end), end, fromNanos), end);
+    }
+
+    //Retained samples received in [fromNanos, toNanos)
+    public View range(long fromNanos, long toNanos) {
+        long end = head;
+        long first = lowerBound(oldest(end), end, fromNanos);
+        return new View(first, Math.max(first, lowerBound(first, end, toNanos)));
+    }
+
+    private long oldest(long end) {
+        //Keep one slot of slack so a concurrent append cannot hit the first element
+        return Math.max(0, end - timestamps.length + 1);
+    }
+
+    //First absolute index in [lo, hi) whose timestamp is >= nanos
+    private long lowerBound(long lo, long hi, long nanos) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[(int) (mid & mask)] - nanos < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Window over a contiguous run of samples. Reads go straight to the store's
+     * arrays; if the writer laps the window while it is in use, isValid() turns
+     * false and the values read should be discarded.
+     */
+    public final class View {
+        private final long first;
+        private final long end;
+
+        private View(long first, long end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        public int length() {
+            return (int) (end - first);
+        }
+
+        public boolean isEmpty() {
+            return end == first;
+        }
+
+        public double get(Channel channel, int i) {
+            return columns[channel.ordinal()][(int) ((first + i) & mask)];
+        }
+
+        public long timestamp(int i) {
+            return timestamps[(int) ((first + i) & mask)];
+        }
+
+        //True while none of the window has been overwritten
+        public boolean isValid() {
+            //Order any reads already made before re-reading the write position
+            VarHandle.loadLoadFence();
+            return head - first < timestamps.length;
+        }
+
+        //Mean of a channel over the window, NaN if empty
+        public double mean(Channel channel) {
+            double[] column = columns[channel.ordinal()];
+            double sum = 0;
+            for (long i = first; i < end; i++) {
+                sum += column[(int) (i & mask)];
+            }
+            return isEmpty() ? Double.NaN : sum / length();
+        }
+    }
+}
@@ -2,182 +2,526 @@
  *  Author: Evan Schober
  *  Email:  evan.e.schober@wmich.edu
  *  Parent Class: ThrustStand.java
- *  Description: 
- *  
+ *  Description: Link to one thrust stand: opens the transport, runs the ingest thread
+ *  that publishes telemetry to this stand's ring and bus, and sends commands through
+ *  a CommandChannel so no caller ever waits on the port.
+ *  One instance per stand, created by StandRegistry.
  */
 import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortEvent;
-import com.fazecast.jSerialComm.SerialPortMessageListener;
-import javafx.application.Platform;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 public class SerialController {
-    private static SerialController instance;
-    private SerialPort serialPort;
-    private List<Consumer<String>> dataReceivedListeners = new ArrayList<>();
-
-    // Data indices for parsing CSV
-    private static final int PITOT1_INDEX = 0;
-    private static final int PITOT2_INDEX = 1;
-    private static final int CURRENT_INDEX = 2;
-    private static final int VOLTAGE_INDEX = 3;
-    private static final int LOADCELL_INDEX = 4;
-    private static final int RPM_INDEX = 5;
-
-    // Command prefixes for sending to Teensy
-    private static final String CMD_SET_THROTTLE = "THR:";  // THR:50 for 50% throttle
-    private static final String CMD_SET_MODE = "MODE:";     // MODE:LAB or MODE:DYNO
-    private static final String CMD_SET_BLADES = "BLADE:";  // BLADE:2 for 2 blades
-    private static final String CMD_MOTOR = "MOTOR:";       // MOTOR:ON or MOTOR:OFF
-    private static final String CMD_SET_RPM = "RPM:";          // RPM:1000 for target RPM
+    private final String standName;
+    private Transport transport;
+
+    //Parsed samples are published here by the ingest thread for all consumers
+    private final TelemetryRing telemetryRing = new TelemetryRing();
+    //Raw lines, samples and link changes for subscribers that need every event
+    private final TelemetryBus telemetryBus = new TelemetryBus();
+    //Time spent in each stage of the pipeline, from port read to screen and disk
+    private final LatencyTrace latencyTrace = new LatencyTrace();
+    //Outgoing commands, written and acknowledged off the calling thread
+    private final CommandChannel commands;
+    //Per-channel filters, run on each sample just before it is published
+    private final ChannelFilters filters = new ChannelFilters();
+
+    // Receive path state, owned by the ingest thread
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final int READ_TIMEOUT_MS = 100;
+    //Telemetry rate for the simulated stand, e.g. -Dthruststand.simRateHz=2000
+    private static final String SIM_RATE_PROPERTY = "thruststand.simRateHz";
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final TelemetryParser lineParser = new TelemetryParser();
+    private final BinaryFrameDecoder frameDecoder = new BinaryFrameDecoder();
+    private volatile boolean binaryProtocol;    //Requested link mode
+    private boolean binaryFraming;              //Mode the ingest thread is currently framing
+    private boolean resyncing;                  //Discard until the first good record after a switch
+    private long chunkReadNanos;                //When the bytes being framed were read
+    private Thread ingestThread;
+    private volatile boolean ingestRunning;
+    private volatile SessionReplayer replayer;  //Stands in for the port while a session replays
+    private volatile String currentMode;        //Last mode sent with setMode, null if none
+    private volatile long parseFailures;
+    private volatile long linesReceived;        //Text lines and binary frames framed by the ingest thread
+    private volatile long lastSampleNanos;      //Receive time of the newest sample, 0 if none yet
+    private volatile boolean motorOn;           //Last motor command queued
+    private volatile int sequenceStep = -1;    //Tagged onto each sample, set by TestSequencer
+    private volatile Runnable displayRefresh = () -> {}; //Set by this stand's SharedElements
+
+    // Command names for sending to Teensy, sent as NAME:VALUE@id
+    private static final String CMD_SET_THROTTLE = "THR";   // THR:50 for 50% throttle
+    private static final String CMD_SET_MODE = "MODE";      // MODE:LAB or MODE:DYNO
+    private static final String CMD_SET_BLADES = "BLADE";   // BLADE:2 for 2 blades
+    private static final String CMD_MOTOR = "MOTOR";        // MOTOR:ON or MOTOR:OFF
+    private static final String CMD_SET_RPM = "RPM";        // RPM:1000 for target RPM
+    private static final String CMD_PROTOCOL = "PROTO";     // PROTO:BIN or PROTO:TEXT
+    //Sent back by the Teensy once a command has been applied, ACK:id, or NAK:id if it was not
+    private static final byte[] ACK_PREFIX = "ACK:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAK_PREFIX = "NAK:".getBytes(StandardCharsets.US_ASCII);
     
     
-    private SerialController() {}
+    SerialController(String standName) {
+        this.standName = standName;
+        this.commands = new CommandChannel(standName);
+    }
 
+    //Controller of the selected stand
     public static SerialController getInstance(){
-        if(instance == null){
-            instance = new SerialController();
-        }
-        return instance;
+        return StandRegistry.getInstance().getSelected().getSerialController();
+    }
+
+    public String getStandName(){
+        return standName;
+    }
+
+    //Called after each batch of published samples so the display can pick up the newest
+    void setDisplayRefresh(Runnable displayRefresh){
+        this.displayRefresh = displayRefresh;
     }
 
-    //Public method for opening a given serial port
+    //Public method for opening a given serial port, or the simulated stand by its name
     public boolean openPort(String portName, int buadRate){
-        serialPort = SerialPort.getCommPort(portName);
-        serialPort.setBaudRate(buadRate);
-        serialPort.setNumDataBits(8);
-        serialPort.setNumStopBits(1);
-        serialPort.setParity(SerialPort.NO_PARITY);
-
-        if(serialPort.openPort()){
-            //System.out.println("Connection with " + serialPort.getSystemPortName() + " opened successfully!"); //Debug
-            addDataListener();
+        if (SimulatedStand.NAME.equals(portName)) {
+            //Every stand gets its own simulator
+            return openTransport(new SimulatedStand(Integer.getInteger(SIM_RATE_PROPERTY, SimulatedStand.DEFAULT_RATE_HZ)));
+        }
+        if (StandRegistry.getInstance().isPortInUse(portName, this)) {
+            System.err.println(portName + " is already connected to another stand");
+            return false;
+        }
+        return openTransport(new SerialTransport(portName, buadRate, READ_TIMEOUT_MS));
+    }
+
+    //Open any transport as the link to the stand
+    public boolean openTransport(Transport link){
+        if (isReplaying()) {
+            //The ring only takes one producer at a time
+            System.err.println("Stop the session replay before connecting to " + link.getName());
+            return false;
+        }
+        if(link.open()){
+            //System.out.println("Connection with " + link.getName() + " opened successfully!"); //Debug
+            transport = link;
+            startIngest();
+            commands.open(link);
+            telemetryBus.publishLinkStatus(TelemetryBus.LinkStatus.CONNECTED);
             return true;
         } else {
-            //System.out.println("Connection with " + serialPort.getSystemPortName() + " failed to open!"); //Debug
+            //System.out.println("Connection with " + link.getName() + " failed to open!"); //Debug
             return false;
         }
     }
 
     //Public method for closing a serial port
     public void closePort(){
-        if (serialPort != null && serialPort.isOpen()) {
-            serialPort.closePort();
-            System.out.println("Closed port: " + serialPort.getSystemPortName());
+        commands.close(); //Writes out anything still queued, such as MOTOR:OFF
+        stopIngest();
+        if (transport != null && transport.isOpen()) {
+            transport.close();
+        }
+        if (!isReplaying()) {
+            telemetryBus.publishLinkStatus(TelemetryBus.LinkStatus.DISCONNECTED);
         }
     }
 
-    private boolean sendData(String data) {
-        if(serialPort != null && serialPort.isOpen()) {
-            byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
-            int bytesWritten = serialPort.writeBytes(bytes, bytes.length);
-            if(bytesWritten == -1) {
-                System.err.println("Failed to write data to serial port");
-                return false;
-            } else {
-                System.out.println("Sent: " + data.trim());
-                return true;
-            }
-        } else {
+    //Queued commands return true once accepted; write failures are counted by the channel
+    private boolean sendData(String name, String value) {
+        if (!isPortOpen()) {
             System.err.println("Serial port is not open");
             return false;
         }
+        if (!commands.send(name, value)) {
+            //The port is up but the channel is closing or stopped after a write failure
+            System.err.println("Command channel for " + standName + " is closed, " + name + ":" + value + " not sent");
+            return false;
+        }
+        return true;
     }
 
-    public void addDataReceivedListener(Consumer<String> listener){
-        dataReceivedListeners.add(listener);
+    public boolean isPortOpen(){
+        return transport != null && transport.isOpen();
     }
 
-    public void removeDataReceivedListner(Consumer<String> listener){
-        dataReceivedListeners.remove(listener);
+    //Name of the open transport, null if not connected
+    public String getPortName(){
+        Transport current = transport;
+        return current != null && current.isOpen() ? current.getName() : null;
     }
 
+    /**
+     * Replay a recorded session log into the telemetry ring in place of the port.
+     * @param speed Playback rate, 1.0 for real time or SessionReplayer.AS_FAST_AS_POSSIBLE
+     * @param onFinished Optional task run on the replay thread when playback ends
+     * @throws IllegalStateException if a port is open or a replay is already running
+     */
+    public synchronized SessionReplayer startReplay(Path session, double speed, Runnable onFinished) throws IOException {
+        if (isPortOpen()) {
+            throw new IllegalStateException("Disconnect the serial port before replaying a session");
+        }
+        if (isReplaying()) {
+            throw new IllegalStateException("A session is already replaying");
+        }
+        SessionReplayer next = new SessionReplayer(session, standName, telemetryRing, telemetryBus, filters, displayRefresh, speed);
+        next.setOnFinished(() -> {
+            telemetryBus.publishLinkStatus(TelemetryBus.LinkStatus.DISCONNECTED);
+            if (onFinished != null) {
+                onFinished.run();
+            }
+        });
+        replayer = next;
+        telemetryBus.publishLinkStatus(TelemetryBus.LinkStatus.REPLAYING);
+        next.start();
+        return next;
+    }
 
-    //Internal method to create a data listener
-    private void addDataListener() {
-        serialPort.addDataListener(new SerialPortMessageListener() {
-            @Override
-            public int getListeningEvents() { return SerialPort.LISTENING_EVENT_DATA_RECEIVED; }
+    public synchronized void stopReplay(){
+        if (replayer != null) {
+            replayer.stop();
+            replayer = null;
+        }
+    }
 
-            @Override
-            public byte[] getMessageDelimiter() { return new byte[] { (byte)'\n' }; }
+    public boolean isReplaying(){
+        SessionReplayer current = replayer;
+        return current != null && current.isRunning();
+    }
 
-            @Override
-            public boolean delimiterIndicatesEndOfMessage() { return true; }
+    public TelemetryRing getTelemetryRing(){
+        return telemetryRing;
+    }
 
-            @Override
-            public void serialEvent(SerialPortEvent event) {
-                byte[] newData = event.getReceivedData();
-                String message = new String(newData, StandardCharsets.UTF_8).trim();
-                Platform.runLater(() -> {
-                    for (Consumer<String> listener : dataReceivedListeners) {
-                        listener.accept(message);
-                    }
-                });
+    //Subscribe through BaseController.subscribe() from scene controllers so the
+    //subscription is closed when the scene changes
+    public TelemetryBus getTelemetryBus(){
+        return telemetryBus;
+    }
+
+    public LatencyTrace getLatencyTrace(){
+        return latencyTrace;
+    }
+
+    //Per-channel filters applied by the ingest thread before each sample is published
+    public ChannelFilters getFilters(){
+        return filters;
+    }
+
+    //Command queue depth and acknowledgement round trip times
+    public CommandChannel getCommandChannel(){
+        return commands;
+    }
+
+
+    //Starts the ingest thread. It bulk-reads into one reusable buffer, frames lines in
+    //place and parses them straight into telemetry ring slots, so the steady state
+    //allocates nothing per sample.
+    private void startIngest() {
+        readBuffer.clear();
+        binaryFraming = binaryProtocol;
+        resyncing = true;
+        frameDecoder.resync();
+        ingestRunning = true;
+        ingestThread = new Thread(this::ingestLoop, "serial-ingest (" + standName + ")");
+        ingestThread.setDaemon(true);
+        ingestThread.start();
+    }
+
+    private void stopIngest() {
+        ingestRunning = false;
+        if (ingestThread != null && Thread.currentThread() != ingestThread) {
+            try {
+                ingestThread.join(READ_TIMEOUT_MS * 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
+        }
+        ingestThread = null;
+    }
+
+    private void ingestLoop() {
+        Transport port = transport;
+        byte[] bytes = readBuffer.array();
+        while (ingestRunning && port.isOpen()) {
+            int readFrom = readBuffer.position();
+            int scanFrom = readFrom;
+            if (binaryFraming != binaryProtocol) {
+                binaryFraming = binaryProtocol;
+                resyncing = true;
+                frameDecoder.resync();
+                //The kept tail was only searched for the old delimiter
+                scanFrom = 0;
+            }
+            int bytesRead = port.read(bytes, readFrom, readBuffer.remaining());
+            if (bytesRead < 0) {
+                System.err.println("Serial read failed on " + port.getName());
+                telemetryBus.publishLinkStatus(TelemetryBus.LinkStatus.DISCONNECTED);
+                break;
+            }
+            if (bytesRead > 0) {
+                chunkReadNanos = System.nanoTime();
+                readBuffer.position(readFrom + bytesRead);
+                if (frameInput(scanFrom) > 0) {
+                    // Let the UI know there is something new to show
+                    displayRefresh.run();
+                }
+            }
+        }
+    }
+
+    //Publishes every complete line or frame in the read buffer and keeps the partial tail
+    private int frameInput(int scanFrom) {
+        byte[] bytes = readBuffer.array();
+        int end = readBuffer.position();
+        byte delimiter = binaryFraming ? (byte) 0 : (byte) '\n';
+        int lineStart = 0;
+        int published = 0;
+        for (int i = scanFrom; i < end; i++) {
+            if (bytes[i] == delimiter) {
+                linesReceived++;
+                boolean ok = binaryFraming
+                        ? publishFrame(bytes, lineStart, i)
+                        : publishLine(bytes, lineStart, i);
+                if (ok) {
+                    published++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        //Move the unfinished line to the front of the buffer
+        readBuffer.flip();
+        readBuffer.position(lineStart);
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            //A full buffer without a newline is noise, drop it and resynchronise
+            parseFailures++;
+            readBuffer.clear();
+        }
+        return published;
+    }
+
+    //Parses one line into the next ring slot and publishes it (ingest thread only)
+    private boolean publishLine(byte[] bytes, int start, int end) {
+        if (telemetryBus.hasSubscribers(TelemetryBus.RAW_LINE)) {
+            telemetryBus.publish(TelemetryBus.RAW_LINE,
+                    new String(bytes, start, end - start, StandardCharsets.US_ASCII).trim());
+        }
+        long ackId = parseReply(ACK_PREFIX, bytes, start, end);
+        if (ackId >= 0) {
+            commands.acknowledge(ackId, System.nanoTime());
+            return false;
+        }
+        long nakId = parseReply(NAK_PREFIX, bytes, start, end);
+        if (nakId >= 0) {
+            commands.reject(nakId);
+            return false;
+        }
+        Sample sample = telemetryRing.claim();
+        if (lineParser.parse(bytes, start, end, sample)) {
+            sample.receivedNanos = System.nanoTime();
+            sample.readNanos = chunkReadNanos;
+            latencyTrace.record(LatencyTrace.Stage.PARSE, sample.receivedNanos - chunkReadNanos);
+            sample.deviceMicros = -1;
+            sample.step = sequenceStep;
+            filters.apply(sample);
+            telemetryRing.publish();
+            lastSampleNanos = sample.receivedNanos;
+            publishSample(sample);
+            resyncing = false;
+            return true;
+        }
+        if (!resyncing && !isBlank(bytes, start, end)) {
+            parseFailures++;
+            System.err.println("Error parsing data: " + new String(bytes, start, end - start, StandardCharsets.US_ASCII).trim());
+        }
+        return false;
+    }
+
+    //Decodes one binary frame into the next ring slot and publishes it (ingest thread only)
+    private boolean publishFrame(byte[] bytes, int start, int end) {
+        if (resyncing) {
+            //Whatever preceded the first delimiter after a switch is leftover text,
+            //even if the text side already consumed it and the segment is empty
+            resyncing = false;
+            return false;
+        }
+        if (start == end) {
+            return false;
+        }
+        Sample sample = telemetryRing.claim();
+        if (frameDecoder.decode(bytes, start, end, sample)) {
+            sample.receivedNanos = System.nanoTime();
+            sample.readNanos = chunkReadNanos;
+            latencyTrace.record(LatencyTrace.Stage.PARSE, sample.receivedNanos - chunkReadNanos);
+            sample.step = sequenceStep;
+            filters.apply(sample);
+            telemetryRing.publish();
+            lastSampleNanos = sample.receivedNanos;
+            publishSample(sample);
+            return true;
+        }
+        long ackId = frameDecoder.pollAck();
+        if (ackId >= 0) {
+            commands.acknowledge(ackId, System.nanoTime());
+        }
+        long nakId = frameDecoder.pollNak();
+        if (nakId >= 0) {
+            commands.reject(nakId);
+        }
+        return false;
+    }
+
+    //Id from an "ACK:id" or "NAK:id" line, -1 if the line is anything else
+    private static long parseReply(byte[] prefix, byte[] bytes, int start, int end) {
+        if (end - start <= prefix.length || bytes[start] != prefix[0]) {
+            return -1;
+        }
+        for (int i = 1; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return -1;
+            }
+        }
+        long id = 0;
+        int digits = 0;
+        for (int i = start + prefix.length; i < end && bytes[i] > ' '; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || ++digits > 10) {
+                return -1;
+            }
+            id = id * 10 + digit;
+        }
+        return digits > 0 ? id : -1;
+    }
+
+    //The slot stays valid until this thread claims the next one
+    private void publishSample(Sample sample) {
+        if (telemetryBus.hasSubscribers(TelemetryBus.SAMPLE)) {
+            telemetryBus.publish(TelemetryBus.SAMPLE, sample);
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Step index tagged onto samples from now on, -1 to clear
+    public void setSequenceStep(int step) {
+        sequenceStep = step;
+    }
+
+    public int getSequenceStep() {
+        return sequenceStep;
+    }
+
+    public long getParseFailures() {
+        return parseFailures;
+    }
+
+    public long getLinesReceived() {
+        return linesReceived;
+    }
+
+    //System.nanoTime() when the newest sample arrived over the link, 0 if none has
+    public long getLastSampleNanos() {
+        return lastSampleNanos;
+    }
+
+    public boolean isMotorOn() {
+        return motorOn;
+    }
+
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    //Binary frames lost in transit, detected from gaps in the device sequence counter
+    public long getFramesDropped() {
+        return frameDecoder.getFramesDropped();
+    }
+
+    //Binary frames rejected for bad COBS encoding, length, type or CRC
+    public long getFramesCorrupt() {
+        return frameDecoder.getFramesCorrupt();
     }
 
     public String[] getAvailablePorts() {
-        return Arrays.stream(SerialPort.getCommPorts())
-                .map(SerialPort::getSystemPortName)
+        //The simulated stand is always offered last
+        return Stream.concat(
+                Arrays.stream(SerialPort.getCommPorts()).map(SerialPort::getSystemPortName),
+                Stream.of(SimulatedStand.NAME))
                 .toArray(String[]::new);
     }
 
-    // Method to parse received data
+    // Method to parse a received line and publish it to the telemetry ring.
+    // Must only be called from the ingest thread (the ring has a single producer).
     public void parseData(String data) {
-        try {
-            String[] values = data.trim().split(",");
-            if (values.length == 6) {  // Verify we got all expected values
-                float pitot1 = Float.parseFloat(values[PITOT1_INDEX]);
-                float pitot2 = Float.parseFloat(values[PITOT2_INDEX]);
-                float current = Float.parseFloat(values[CURRENT_INDEX]);
-                float voltage = Float.parseFloat(values[VOLTAGE_INDEX]);
-                long loadCell = Long.parseLong(values[LOADCELL_INDEX]);
-                float rpm = Float.parseFloat(values[RPM_INDEX]);
-                
-                // Now update UI elements through SharedElements
-                SharedElements.getInstance().updateMeasurements(
-                    loadCell,    // You'll need to convert raw value to actual units
-                    pitot1,      // Convert voltage to airspeed
-                    pitot2,      // Convert voltage to airspeed
-                    current,     // Convert to actual current
-                    voltage,     // Convert to actual voltage
-                    rpm
-                );
-            }
-        } catch (NumberFormatException e) {
-            System.err.println("Error parsing data: " + data);
-            e.printStackTrace();
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        chunkReadNanos = System.nanoTime();
+        if (publishLine(bytes, 0, bytes.length)) {
+            displayRefresh.run();
         }
     }
 
     // Methods to send commands to Teensy
+    //Setpoints coalesce: only the newest one still waiting is sent
     public boolean setThrottle(int percentage) {
-        return sendData(String.format(CMD_SET_THROTTLE + percentage + "\n"));
+        return isPortOpen() && commands.latest(CMD_SET_THROTTLE, Integer.toString(percentage));
     }
 
     public boolean setMode(String mode) {
         if (mode.equals("LAB") || mode.equals("DYNO")) {
-            return sendData(CMD_SET_MODE + mode + "\n");
+            currentMode = mode;
+            return sendData(CMD_SET_MODE, mode);
         }
         return false;
     }
 
+    public String getMode() {
+        return currentMode;
+    }
+
     public boolean setBladeCount(int blades) {
-        return sendData(CMD_SET_BLADES + blades + "\n");
+        return sendData(CMD_SET_BLADES, Integer.toString(blades));
     }
 
+    //Stopping the motor jumps the queue and drops any setpoints still waiting
     public boolean setMotor(boolean on) {
-        return sendData(CMD_MOTOR + (on ? "ON" : "OFF") + "\n");
+        if (on) {
+            if (sendData(CMD_MOTOR, "ON")) {
+                motorOn = true;
+                return true;
+            }
+            return false;
+        }
+        //Recorded as off even if the command cannot be sent
+        motorOn = false;
+        return isPortOpen() && commands.urgent(CMD_MOTOR, "OFF");
     }
 
     public boolean setRPM(int rpm) {
-        return sendData(CMD_SET_RPM + rpm + "\n");
+        return isPortOpen() && commands.latest(CMD_SET_RPM, Integer.toString(rpm));
+    }
+
+    //Switch the Teensy between CSV text lines and COBS framed binary telemetry
+    //If no port is open the choice is remembered and has to be sent again after connecting
+    public boolean setBinaryProtocol(boolean binary) {
+        if (!isPortOpen()) {
+            binaryProtocol = binary;
+            return true;
+        }
+        if (sendData(CMD_PROTOCOL, binary ? "BIN" : "TEXT")) {
+            binaryProtocol = binary;
+            return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,59 @@
+/*  Title:  SerialTransport.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Transport over a USB serial port to the Teensy, using jSerialComm.
+ */
+import com.fazecast.jSerialComm.SerialPort;
+
+public class SerialTransport implements Transport {
+    private final SerialPort serialPort;
+    private final int readTimeoutMs;
+
+    public SerialTransport(String portName, int baudRate, int readTimeoutMs) {
+        this.serialPort = SerialPort.getCommPort(portName);
+        this.readTimeoutMs = readTimeoutMs;
+        serialPort.setBaudRate(baudRate);
+        serialPort.setNumDataBits(8);
+        serialPort.setNumStopBits(1);
+        serialPort.setParity(SerialPort.NO_PARITY);
+    }
+
+    @Override
+    public boolean open() {
+        if (!serialPort.openPort()) {
+            return false;
+        }
+        //Return as soon as any bytes arrive, or after the timeout
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, readTimeoutMs, 0);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (serialPort.isOpen()) {
+            serialPort.closePort();
+            System.out.println("Closed port: " + serialPort.getSystemPortName());
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort.isOpen();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        return serialPort.readBytes(buffer, length, offset);
+    }
+
+    @Override
+    public int write(byte[] bytes, int length) {
+        return serialPort.writeBytes(bytes, length);
+    }
+
+    @Override
+    public String getName() {
+        return serialPort.getSystemPortName();
+    }
+}
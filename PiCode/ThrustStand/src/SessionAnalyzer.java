@@ -0,0 +1,702 @@
+/*  Title:  SessionAnalyzer.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: DataLogger.java
+ *  Description: Batch analysis of a directory of logged sessions (thrust_data_*.csv,
+ *  and binary .tslog sessions through SessionLogReader). Each file is a task on a
+ *  fork/join pool and is streamed through one fixed buffer, with fields parsed in
+ *  place the way TelemetryParser reads the serial link, so memory use does not grow
+ *  with file size and the work spreads across every core. Per blade count it builds
+ *  mean thrust against RPM, mean efficiency against throttle, maximum thrust and total
+ *  test time, plus one summary line per session.
+ *  The logs do not record a manually set throttle, so efficiency against throttle comes
+ *  from dyno sequence runs: the step averages in each <log>_steps.csv next to the log.
+ *  Can also be run on its own:
+ *      java SessionAnalyzer <directory> [--out <prefix>] [--rpm-bin <rpm>] [--threads <n>]
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public final class SessionAnalyzer {
+    public static final int DEFAULT_RPM_BIN = 500;
+    private static final String FILE_GLOB = "thrust_data_*";
+    private static final String STEPS_SUFFIX = "_steps.csv";
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_THROTTLE = 100;
+    private static final int DEFAULT_BLADE_COUNT = 2;   //As SessionCsvExporter assumes
+    private static final int MAX_BLADE_COUNT = 64;      //Anything larger is a corrupt field
+
+    private SessionAnalyzer() {}
+
+    //Aggregates for one blade count; thrust in grams-force
+    public static final class BladeSummary {
+        public final int bladeCount;
+        private final int rpmBin;
+        private double[] thrustSum = new double[0];     //Per RPM bin
+        private long[] thrustSamples = new long[0];
+        private final double[] efficiencySum = new double[MAX_THROTTLE + 1];   //Per throttle %, weighted by samples
+        private final double[] stepThrustSum = new double[MAX_THROTTLE + 1];
+        private final double[] stepPowerSum = new double[MAX_THROTTLE + 1];
+        private final long[] stepSamples = new long[MAX_THROTTLE + 1];
+        int sessions;
+        long rows;
+        long durationMillis;
+        double maxThrustGrams = Double.NEGATIVE_INFINITY;
+
+        BladeSummary(int bladeCount, int rpmBin) {
+            this.bladeCount = bladeCount;
+            this.rpmBin = rpmBin;
+        }
+
+        void addRow(double grams, double rpm) {
+            rows++;
+            if (!Double.isFinite(grams)) {
+                return;
+            }
+            maxThrustGrams = Math.max(maxThrustGrams, grams);
+            if (!(rpm >= 0) || Double.isInfinite(rpm)) {
+                return;
+            }
+            int bin = (int) (rpm / rpmBin);
+            if (bin >= thrustSum.length) {
+                int length = Math.max(bin + 1, thrustSum.length * 2);
+                thrustSum = Arrays.copyOf(thrustSum, length);
+                thrustSamples = Arrays.copyOf(thrustSamples, length);
+            }
+            thrustSum[bin] += grams;
+            thrustSamples[bin]++;
+        }
+
+        void addStep(int throttle, long samples, double grams, double watts, double efficiency) {
+            efficiencySum[throttle] += efficiency * samples;
+            stepThrustSum[throttle] += grams * samples;
+            stepPowerSum[throttle] += watts * samples;
+            stepSamples[throttle] += samples;
+        }
+
+        void merge(BladeSummary other) {
+            if (other.thrustSum.length > thrustSum.length) {
+                thrustSum = Arrays.copyOf(thrustSum, other.thrustSum.length);
+                thrustSamples = Arrays.copyOf(thrustSamples, other.thrustSamples.length);
+            }
+            for (int bin = 0; bin < other.thrustSum.length; bin++) {
+                thrustSum[bin] += other.thrustSum[bin];
+                thrustSamples[bin] += other.thrustSamples[bin];
+            }
+            for (int t = 0; t <= MAX_THROTTLE; t++) {
+                efficiencySum[t] += other.efficiencySum[t];
+                stepThrustSum[t] += other.stepThrustSum[t];
+                stepPowerSum[t] += other.stepPowerSum[t];
+                stepSamples[t] += other.stepSamples[t];
+            }
+            sessions += other.sessions;
+            rows += other.rows;
+            durationMillis += other.durationMillis;
+            maxThrustGrams = Math.max(maxThrustGrams, other.maxThrustGrams);
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        //NaN if no row had a thrust value
+        public double getMaxThrustGrams() {
+            return rows > 0 && maxThrustGrams > Double.NEGATIVE_INFINITY ? maxThrustGrams : Double.NaN;
+        }
+    }
+
+    //One log file
+    public static final class SessionSummary {
+        public final Path file;
+        public int bladeCount = DEFAULT_BLADE_COUNT;
+        public String start = "";       //Local time of the first row
+        public long durationMillis;
+        public long rows;
+        public long skippedRows;        //Malformed or cut short
+        public double maxThrustGrams = Double.NaN;
+        public double maxCurrent = Double.NaN;
+        public double maxRpm = Double.NaN;
+
+        SessionSummary(Path file) {
+            this.file = file;
+        }
+    }
+
+    //Everything found in a set of files; partial results from the tasks are merged into one
+    public static final class Result {
+        private final int rpmBin;
+        private BladeSummary[] byBlades = new BladeSummary[0];  //Indexed by blade count
+        private final List<SessionSummary> sessions = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+        private long bytes;
+
+        Result(int rpmBin) {
+            this.rpmBin = rpmBin;
+        }
+
+        BladeSummary blades(int bladeCount) {
+            if (bladeCount >= byBlades.length) {
+                byBlades = Arrays.copyOf(byBlades, bladeCount + 1);
+            }
+            if (byBlades[bladeCount] == null) {
+                byBlades[bladeCount] = new BladeSummary(bladeCount, rpmBin);
+            }
+            return byBlades[bladeCount];
+        }
+
+        void merge(Result other) {
+            for (BladeSummary summary : other.byBlades) {
+                if (summary != null) {
+                    blades(summary.bladeCount).merge(summary);
+                }
+            }
+            sessions.addAll(other.sessions);
+            failures.addAll(other.failures);
+            bytes += other.bytes;
+        }
+
+        public List<BladeSummary> getBladeSummaries() {
+            List<BladeSummary> list = new ArrayList<>();
+            for (BladeSummary summary : byBlades) {
+                if (summary != null) {
+                    list.add(summary);
+                }
+            }
+            return list;
+        }
+
+        public List<SessionSummary> getSessions() {
+            return Collections.unmodifiableList(sessions);
+        }
+
+        //"file: reason" for each file that could not be read
+        public List<String> getFailures() {
+            return Collections.unmodifiableList(failures);
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    //Splits the file list in half until each task holds one file
+    private static final class AnalyzeTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+        private final int rpmBin;
+
+        AnalyzeTask(List<Path> files, int from, int to, int rpmBin) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.rpmBin = rpmBin;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= 1) {
+                Result result = new Result(rpmBin);
+                if (from < to) {
+                    analyzeFile(files.get(from), result);
+                }
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            AnalyzeTask left = new AnalyzeTask(files, from, mid, rpmBin);
+            left.fork();
+            Result right = new AnalyzeTask(files, mid, to, rpmBin).compute();
+            Result result = left.join();
+            result.merge(right); //Left first, so sessions stay in file name order
+            return result;
+        }
+    }
+
+    //Session logs in a directory, by name; step summaries are read alongside their log
+    public static List<Path> findLogs(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_GLOB)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if ((name.endsWith(".csv") && !name.endsWith(STEPS_SUFFIX)) || name.endsWith(SessionLogFormat.FILE_EXTENSION)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Analyse every session log in a directory.
+     * @param rpmBin Width of the RPM bins for thrust against RPM
+     * @param threads Worker threads, e.g. Runtime.availableProcessors()
+     */
+    public static Result analyze(Path directory, int rpmBin, int threads) throws IOException {
+        if (rpmBin <= 0) {
+            throw new IllegalArgumentException("RPM bin must be positive: " + rpmBin);
+        }
+        List<Path> files = findLogs(directory);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new AnalyzeTask(files, 0, files.size(), rpmBin));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //A file that cannot be read is recorded as a failure rather than stopping the batch.
+    //Each file is scanned into its own Result, so a failure part way through adds nothing
+    private static void analyzeFile(Path file, Result result) {
+        SessionSummary session = new SessionSummary(file);
+        Result scanned = new Result(result.rpmBin);
+        try {
+            scanned.bytes = Files.size(file);
+            if (file.getFileName().toString().endsWith(SessionLogFormat.FILE_EXTENSION)) {
+                scanSessionLog(file, session, scanned);
+            } else {
+                scanCsv(file, session, scanned);
+            }
+            BladeSummary blades = scanned.blades(session.bladeCount);
+            blades.sessions++;
+            blades.durationMillis += session.durationMillis;
+            readSteps(stepsFileFor(file), blades);
+            scanned.sessions.add(session);
+            result.merge(scanned);
+        } catch (IOException | RuntimeException e) {
+            result.failures.add(file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    //run.csv or run.tslog -> run_steps.csv, as TestSequencer names it
+    private static Path stepsFileFor(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + STEPS_SUFFIX);
+    }
+
+    //Per-session maxima and the blade count of the first row
+    private static void addRow(Result result, SessionSummary session, int bladeCount,
+            double grams, double amps, double rpm) {
+        if (session.rows == 0) {
+            session.bladeCount = bladeCount;
+        }
+        session.rows++;
+        session.maxThrustGrams = max(session.maxThrustGrams, grams);
+        session.maxCurrent = max(session.maxCurrent, amps);
+        session.maxRpm = max(session.maxRpm, rpm);
+        result.blades(bladeCount).addRow(grams, rpm);
+    }
+
+    //Ignores NaN on either side
+    private static double max(double current, double value) {
+        return Double.isNaN(current) || value > current ? (Double.isNaN(value) ? current : value) : current;
+    }
+
+    private static void scanCsv(Path file, SessionSummary session, Result result) throws IOException {
+        CsvRowParser parser = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            byte[] bytes = buffer.array();
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int start = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    if (parser == null) {
+                        parser = new CsvRowParser(new String(bytes, start, i - start, StandardCharsets.US_ASCII));
+                    } else {
+                        parser.parseRow(bytes, start, i, session, result);
+                    }
+                    start = i + 1;
+                }
+                if (eof && start < limit && parser != null) {
+                    //Last row cut short when logging stopped; still counts if its fields parse
+                    parser.parseRow(bytes, start, limit, session, result);
+                    start = limit;
+                }
+                if (start == 0 && limit == bytes.length) {
+                    //A whole buffer without a newline is not a log row
+                    session.skippedRows++;
+                    start = limit;
+                }
+                System.arraycopy(bytes, start, bytes, 0, limit - start);
+                buffer.position(limit - start);
+            }
+        }
+        if (parser == null) {
+            throw new IOException("No header row");
+        }
+        if (parser.firstTimestamp != null) {
+            session.start = parser.firstTimestamp;
+            try {
+                session.durationMillis = epochMillis(parser.lastTimestamp()) - epochMillis(parser.firstTimestamp);
+            } catch (DateTimeParseException e) {
+                //Rows still count; the duration stays 0
+            }
+        }
+    }
+
+    private static long epochMillis(String timestamp) {
+        return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    //Binary sessions are converted with the calibration and filters stored in their header
+    private static void scanSessionLog(Path file, SessionSummary session, Result result) throws IOException {
+        try (SessionLogReader reader = SessionLogReader.open(file)) {
+            Calibration calibration = reader.getCalibration();
+            ChannelFilters filters = ChannelFilters.fromDescription(reader.getMetadata(SessionLogFormat.KEY_FILTERS));
+            int bladeCount = (int) parseNumber(reader.getMetadata(SessionLogFormat.KEY_BLADE_COUNT), DEFAULT_BLADE_COUNT);
+            if (bladeCount < 0 || bladeCount > MAX_BLADE_COUNT) {
+                bladeCount = DEFAULT_BLADE_COUNT;
+            }
+            long startEpochMillis = (long) parseNumber(reader.getMetadata(SessionLogFormat.KEY_START_EPOCH_MS), 0);
+            long startNanos = (long) parseNumber(reader.getMetadata(SessionLogFormat.KEY_START_NANOS), 0);
+
+            session.bladeCount = bladeCount;
+            Sample sample = new Sample();
+            Measurement measurement = new Measurement();
+            measurement.thrustUnit = ThrustUnit.G;
+            long rows = reader.getSampleCount();
+            long firstNanos = 0;
+            for (long i = 0; i < rows; i++) {
+                reader.read(i, sample);
+                filters.apply(sample);
+                StandPipeline.convertValues(calibration, sample, measurement);
+                addRow(result, session, bladeCount, measurement.thrust, measurement.current, measurement.rpm);
+                if (i == 0) {
+                    firstNanos = sample.receivedNanos;
+                }
+            }
+            if (rows > 0) {
+                long firstMillis = startEpochMillis + (firstNanos - startNanos) / 1_000_000;
+                session.start = LocalDateTime.ofInstant(Instant.ofEpochMilli(firstMillis), ZoneId.systemDefault()).toString();
+                session.durationMillis = (sample.receivedNanos - firstNanos) / 1_000_000;
+            }
+        }
+    }
+
+    /**
+     * Add the step averages of a dyno sequence to the efficiency against throttle curve.
+     * Missing files, lab sequences (RPM setpoints) and unreadable rows are skipped.
+     */
+    private static void readSteps(Path stepsFile, BladeSummary blades) throws IOException {
+        if (!Files.isRegularFile(stepsFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(stepsFile, StandardCharsets.US_ASCII)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            List<String> columns = Arrays.asList(header.split(","));
+            int setpointCol = columns.indexOf("Setpoint");
+            int unitCol = columns.indexOf("Setpoint Unit");
+            int samplesCol = columns.indexOf("Samples");
+            int thrustCol = columns.indexOf("Thrust");
+            int thrustUnitCol = columns.indexOf("Thrust Unit");
+            int powerCol = columns.indexOf("Power (W)");
+            int efficiencyCol = columns.indexOf("Efficiency (g/W)");  //Summaries from before it was added compute it
+            if (setpointCol < 0 || unitCol < 0 || samplesCol < 0 || thrustCol < 0 || thrustUnitCol < 0 || powerCol < 0) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < columns.size() || !fields[unitCol].equals("%")) {
+                    continue;
+                }
+                try {
+                    int throttle = Integer.parseInt(fields[setpointCol].trim());
+                    long samples = Long.parseLong(fields[samplesCol].trim());
+                    if (throttle < 0 || throttle > MAX_THROTTLE || samples <= 0) {
+                        continue;
+                    }
+                    double grams = ThrustUnit.fromLabel(fields[thrustUnitCol]).toGrams(Double.parseDouble(fields[thrustCol]));
+                    double watts = Double.parseDouble(fields[powerCol]);
+                    double efficiency = efficiencyCol >= 0 ? Double.parseDouble(fields[efficiencyCol])
+                            : DerivedChannels.efficiencyGramsPerWatt(grams, watts);
+                    blades.addStep(throttle, samples, grams, watts, efficiency);
+                } catch (NumberFormatException e) {
+                    //Leave the step out
+                }
+            }
+        }
+    }
+
+    private static double parseNumber(String value, double fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /*  Reads the columns the analysis needs from DataLogger rows, found by name in the
+     *  header so logs from before a column was added still read. Fields are parsed from
+     *  the buffer without creating Strings; one instance per file.
+     */
+    private static final class CsvRowParser {
+        private static final int NONE = 0, TIMESTAMP = 1, THRUST = 2, THRUST_UNIT = 3, CURRENT = 4, RPM = 5, BLADES = 6;
+        private static final int TIMESTAMP_BYTES = 32;
+
+        private final int[] roles;
+        private final int columnCount;
+        String firstTimestamp;
+        private final byte[] lastTimestamp = new byte[TIMESTAMP_BYTES];
+        int lastTimestampLength;
+        private ThrustUnit thrustUnit = ThrustUnit.G;
+        private byte[] thrustUnitLabel = new byte[0];
+
+        //Fields of the row being parsed
+        private int timestampStart, timestampEnd;
+        private double thrust, current, rpm;
+        private int bladeCount;
+        private boolean valid;
+
+        CsvRowParser(String header) throws IOException {
+            String[] names = header.trim().split(",");
+            columnCount = names.length;
+            roles = new int[names.length];
+            boolean hasTimestamp = false;
+            boolean hasThrust = false;
+            for (int c = 0; c < names.length; c++) {
+                switch (names[c].trim()) {
+                    case "Timestamp": roles[c] = TIMESTAMP; hasTimestamp = true; break;
+                    case "Thrust": roles[c] = THRUST; hasThrust = true; break;
+                    case "Thrust Unit": roles[c] = THRUST_UNIT; break;
+                    case "Current (A)": roles[c] = CURRENT; break;
+                    case "RPM": roles[c] = RPM; break;
+                    case "Blade Count": roles[c] = BLADES; break;
+                    default: roles[c] = NONE;
+                }
+            }
+            if (!hasTimestamp || !hasThrust) {
+                throw new IOException("Not a thrust stand log (no Timestamp and Thrust columns)");
+            }
+        }
+
+        void parseRow(byte[] bytes, int start, int end, SessionSummary session, Result result) {
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            if (end == start) {
+                return;
+            }
+            valid = true;
+            timestampStart = timestampEnd = start;
+            thrust = current = rpm = Double.NaN;
+            bladeCount = DEFAULT_BLADE_COUNT;
+            int column = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || bytes[i] == ',') {
+                    if (column < columnCount) {
+                        field(roles[column], bytes, fieldStart, i);
+                    }
+                    column++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (!valid || timestampEnd == timestampStart || timestampEnd - timestampStart > TIMESTAMP_BYTES) {
+                session.skippedRows++;
+                return;
+            }
+            if (firstTimestamp == null) {
+                firstTimestamp = new String(bytes, timestampStart, timestampEnd - timestampStart, StandardCharsets.US_ASCII);
+            }
+            lastTimestampLength = timestampEnd - timestampStart;
+            System.arraycopy(bytes, timestampStart, lastTimestamp, 0, lastTimestampLength);
+            addRow(result, session, bladeCount, thrustUnit.toGrams(thrust), current, rpm);
+        }
+
+        private void field(int role, byte[] bytes, int start, int end) {
+            switch (role) {
+                case TIMESTAMP:
+                    timestampStart = start;
+                    timestampEnd = end;
+                    break;
+                case THRUST:
+                    thrust = parseDecimal(bytes, start, end);
+                    valid &= !Double.isNaN(thrust);
+                    break;
+                case THRUST_UNIT:
+                    if (!Arrays.equals(bytes, start, end, thrustUnitLabel, 0, thrustUnitLabel.length)) {
+                        //Only when the unit changes, normally once per file
+                        thrustUnitLabel = Arrays.copyOfRange(bytes, start, end);
+                        thrustUnit = ThrustUnit.fromLabel(new String(thrustUnitLabel, StandardCharsets.US_ASCII));
+                    }
+                    break;
+                case CURRENT:
+                    current = parseDecimal(bytes, start, end);
+                    break;
+                case RPM:
+                    rpm = parseDecimal(bytes, start, end);
+                    break;
+                case BLADES:
+                    double blades = parseDecimal(bytes, start, end);
+                    if (blades >= 0 && blades <= MAX_BLADE_COUNT) {
+                        bladeCount = (int) blades;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        String lastTimestamp() {
+            return new String(lastTimestamp, 0, lastTimestampLength, StandardCharsets.US_ASCII);
+        }
+
+        //Plain decimal as CsvRowEncoder writes it; NaN for anything else (including "NaN")
+        private static double parseDecimal(byte[] bytes, int start, int end) {
+            int pos = start;
+            boolean negative = pos < end && bytes[pos] == '-';
+            if (negative) {
+                pos++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = -1;
+            for (; pos < end; pos++) {
+                byte b = bytes[pos];
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (digits == 0 || digits > 18) {
+                return Double.NaN;
+            }
+            double value = fractionDigits > 0 ? mantissa / POW10[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+
+        private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+                1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    }
+
+    //<prefix>_sessions.csv, <prefix>_thrust_rpm.csv and <prefix>_efficiency_throttle.csv
+    public static void writeResults(Result result, String prefix) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(prefix + "_sessions.csv")))) {
+            writer.println("File,Blade Count,Start,Duration (s),Rows,Skipped Rows,Max Thrust (g),Max Current (A),Max RPM");
+            for (SessionSummary s : result.sessions) {
+                writer.printf("%s,%d,%s,%.3f,%d,%d,%.1f,%.2f,%.0f%n", s.file.getFileName(), s.bladeCount, s.start,
+                        s.durationMillis / 1000.0, s.rows, s.skippedRows, s.maxThrustGrams, s.maxCurrent, s.maxRpm);
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(prefix + "_thrust_rpm.csv")))) {
+            writer.println("Blade Count,RPM,Samples,Mean Thrust (g)");
+            for (BladeSummary b : result.getBladeSummaries()) {
+                for (int bin = 0; bin < b.thrustSum.length; bin++) {
+                    if (b.thrustSamples[bin] > 0) {
+                        writer.printf("%d,%d,%d,%.1f%n", b.bladeCount, bin * b.rpmBin + b.rpmBin / 2,
+                                b.thrustSamples[bin], b.thrustSum[bin] / b.thrustSamples[bin]);
+                    }
+                }
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(prefix + "_efficiency_throttle.csv")))) {
+            writer.println("Blade Count,Throttle (%),Samples,Mean Efficiency (g/W),Mean Thrust (g),Mean Power (W)");
+            for (BladeSummary b : result.getBladeSummaries()) {
+                for (int t = 0; t <= MAX_THROTTLE; t++) {
+                    long n = b.stepSamples[t];
+                    if (n > 0) {
+                        writer.printf("%d,%d,%d,%.3f,%.1f,%.2f%n", b.bladeCount, t, n,
+                                b.efficiencySum[t] / n, b.stepThrustSum[t] / n, b.stepPowerSum[t] / n);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: SessionAnalyzer <directory> [options]");
+        System.err.println("  --out <prefix>     Output files <prefix>_sessions.csv, _thrust_rpm.csv and");
+        System.err.println("                     _efficiency_throttle.csv (default <directory>/analysis)");
+        System.err.println("  --rpm-bin <rpm>    Width of the RPM bins for thrust against RPM (default " + DEFAULT_RPM_BIN + ")");
+        System.err.println("  --threads <n>      Worker threads (default: one per core)");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length % 2 == 0) {
+            usage();
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        String prefix = directory.resolve("analysis").toString();
+        int rpmBin = DEFAULT_RPM_BIN;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--out": prefix = args[i + 1]; break;
+                    case "--rpm-bin": rpmBin = Integer.parseInt(args[i + 1]); break;
+                    case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (rpmBin <= 0 || threads <= 0) {
+                throw new IllegalArgumentException("--rpm-bin and --threads must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+
+        long startNanos = System.nanoTime();
+        Result result = analyze(directory, rpmBin, threads);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        writeResults(result, prefix);
+
+        System.out.printf("Analysed %d sessions (%.1f MB) in %.1f s on %d threads%n",
+                result.sessions.size(), result.bytes / 1e6, seconds, threads);
+        for (BladeSummary b : result.getBladeSummaries()) {
+            System.out.printf("%d blades: %d sessions, %.2f h, %d rows, max thrust %.1f g%n",
+                    b.bladeCount, b.sessions, b.durationMillis / 3.6e6, b.rows, b.getMaxThrustGrams());
+        }
+        for (String failure : result.failures) {
+            System.err.println("Skipped " + failure);
+        }
+        System.out.println("Wrote " + prefix + "_sessions.csv, _thrust_rpm.csv and _efficiency_throttle.csv");
+    }
+}
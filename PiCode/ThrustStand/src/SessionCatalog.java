@@ -0,0 +1,353 @@
+/*  Title:  SessionCatalog.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: DataLogger.java
+ *  Description: Index of logged sessions, so runs can be found without opening any
+ *  log. DataLogger appends one record each time logging stops, to thrust_sessions.catalog
+ *  in the log's directory. All values are little-endian.
+ *
+ *  File header, HEADER_BYTES long: int magic, int version, 8 reserved bytes.
+ *  Then one record per session:
+ *      int recordBytes (this int included),
+ *      long startEpochMillis, long endEpochMillis, long rows, long fileBytes,
+ *      int bladeCount, int calibrationHash (Calibration.hash()),
+ *      double propDiameter (m), double peakThrust (g), double peakCurrent (A), double peakRpm,
+ *      long peakThrustOffset, long peakCurrentOffset, long peakRpmOffset,
+ *      byte binary (1 for .tslog),
+ *      then short-length-prefixed UTF-8 strings: file name, stand, mode, thrust unit, airspeed unit.
+ *  Peak offsets are the byte offset in the log of the CSV row, or .tslog block, holding
+ *  that peak, -1 if there was none. Records are only ever appended, never rewritten; one
+ *  cut short by a crash is dropped on the next append. A query reads the whole file
+ *  (about 130 bytes a session) and filters in memory.
+ *  Can also be run on its own:
+ *      java SessionCatalog [catalog or log directory] [--blades <n>] [--min-current <A>] [--since 30d]
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+public final class SessionCatalog {
+    public static final String FILE_NAME = "thrust_sessions.catalog";
+
+    static final int MAGIC = 0x54435354;        //"TSCT"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FIXED_BYTES = 4 + 4 * 8 + 2 * 4 + 4 * 8 + 3 * 8 + 1;
+    private static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+
+    private SessionCatalog() {}
+
+    //One logged session
+    public static final class Entry {
+        public String file = "";            //Log file name, in the catalog's directory
+        public String stand = "";
+        public String mode = "";            //LAB or DYNO, empty if never set
+        public String thrustUnit = "";
+        public String airspeedUnit = "";
+        public boolean binary;
+        public long startEpochMillis;
+        public long endEpochMillis;
+        public long rows;
+        public long fileBytes;
+        public int bladeCount;
+        public int calibrationHash;
+        public double propDiameter;         //Meters, 0 if not entered
+        public double peakThrust = Double.NaN;  //Grams-force
+        public double peakCurrent = Double.NaN;
+        public double peakRpm = Double.NaN;
+        public long peakThrustOffset = -1;
+        public long peakCurrentOffset = -1;
+        public long peakRpmOffset = -1;
+
+        public long getDurationMillis() {
+            return endEpochMillis - startEpochMillis;
+        }
+
+        //Hex form of the calibration hash, as printed and matched by --calibration
+        public String getCalibrationId() {
+            return String.format("%08x", calibrationHash);
+        }
+    }
+
+    //The catalog that indexes a log file
+    public static Path catalogFor(Path logFile) {
+        return logFile.toAbsolutePath().resolveSibling(FILE_NAME);
+    }
+
+    /**
+     * Append one session. Safe to call from several stands, or another process logging
+     * to the same directory; the file is locked while writing.
+     */
+    @SuppressWarnings("try") //The lock is only held for the try block, never referenced in it
+    public static synchronized void append(Path catalog, Entry entry) throws IOException {
+        ByteBuffer record = encode(entry);
+        try (FileChannel channel = FileChannel.open(catalog,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            long end;
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(channel, header, 0);
+                end = HEADER_BYTES;
+            } else {
+                end = validEnd(channel);
+            }
+            if (channel.size() > end) {
+                channel.truncate(end); //Drop a record left half written
+            }
+            writeFully(channel, record, end);
+            channel.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    //Offset just past the last complete record
+    private static long validEnd(FileChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining() && channel.read(bytes, bytes.position()) > 0) {
+            //Keep reading
+        }
+        bytes.flip();
+        checkHeader(bytes);
+        int position = HEADER_BYTES;
+        while (bytes.limit() - position >= 4) {
+            int length = bytes.getInt(position);
+            if (length < FIXED_BYTES || length > bytes.limit() - position) {
+                break;
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    private static void checkHeader(ByteBuffer bytes) throws IOException {
+        if (bytes.limit() < HEADER_BYTES || bytes.getInt(0) != MAGIC) {
+            throw new IOException("Not a session catalog");
+        }
+        if (bytes.getInt(4) > VERSION) {
+            throw new IOException("Session catalog version " + bytes.getInt(4) + " is newer than this program");
+        }
+    }
+
+    static ByteBuffer encode(Entry e) {
+        byte[][] strings = {bytesOf(e.file), bytesOf(e.stand), bytesOf(e.mode), bytesOf(e.thrustUnit), bytesOf(e.airspeedUnit)};
+        int length = FIXED_BYTES;
+        for (byte[] s : strings) {
+            length += 2 + s.length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(length);
+        record.putLong(e.startEpochMillis).putLong(e.endEpochMillis).putLong(e.rows).putLong(e.fileBytes);
+        record.putInt(e.bladeCount).putInt(e.calibrationHash);
+        record.putDouble(e.propDiameter).putDouble(e.peakThrust).putDouble(e.peakCurrent).putDouble(e.peakRpm);
+        record.putLong(e.peakThrustOffset).putLong(e.peakCurrentOffset).putLong(e.peakRpmOffset);
+        record.put((byte) (e.binary ? 1 : 0));
+        for (byte[] s : strings) {
+            record.putShort((short) s.length).put(s);
+        }
+        return record.flip();
+    }
+
+    private static byte[] bytesOf(String text) {
+        byte[] bytes = (text != null ? text : "").getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+    }
+
+    /**
+     * Sessions in the catalog that match, oldest first.
+     * @return Empty if the catalog does not exist yet
+     */
+    public static List<Entry> query(Path catalog, Predicate<Entry> filter) throws IOException {
+        List<Entry> matches = new ArrayList<>();
+        if (!Files.exists(catalog)) {
+            return matches;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(catalog)).order(ByteOrder.LITTLE_ENDIAN);
+        checkHeader(bytes);
+        int position = HEADER_BYTES;
+        while (bytes.limit() - position >= 4) {
+            int length = bytes.getInt(position);
+            if (length < FIXED_BYTES || length > bytes.limit() - position) {
+                break; //Cut short; everything before it is still good
+            }
+            Entry entry = decode(bytes.position(position + 4), position + length);
+            if (filter.test(entry)) {
+                matches.add(entry);
+            }
+            position += length;
+        }
+        return matches;
+    }
+
+    private static Entry decode(ByteBuffer b, int end) {
+        Entry e = new Entry();
+        e.startEpochMillis = b.getLong();
+        e.endEpochMillis = b.getLong();
+        e.rows = b.getLong();
+        e.fileBytes = b.getLong();
+        e.bladeCount = b.getInt();
+        e.calibrationHash = b.getInt();
+        e.propDiameter = b.getDouble();
+        e.peakThrust = b.getDouble();
+        e.peakCurrent = b.getDouble();
+        e.peakRpm = b.getDouble();
+        e.peakThrustOffset = b.getLong();
+        e.peakCurrentOffset = b.getLong();
+        e.peakRpmOffset = b.getLong();
+        e.binary = b.get() != 0;
+        e.file = getString(b, end);
+        e.stand = getString(b, end);
+        e.mode = getString(b, end);
+        e.thrustUnit = getString(b, end);
+        e.airspeedUnit = getString(b, end);
+        return e;
+    }
+
+    //Later versions may add fields after the strings; missing strings read as empty
+    private static String getString(ByteBuffer b, int end) {
+        if (end - b.position() < 2) {
+            return "";
+        }
+        int length = b.getShort() & 0xFFFF;
+        if (length > end - b.position()) {
+            return "";
+        }
+        String text = new String(b.array(), b.position(), length, StandardCharsets.UTF_8);
+        b.position(b.position() + length);
+        return text;
+    }
+
+    //"30d", "12h" back from now, or a date such as 2026-09-01 (local midnight)
+    static long parseTime(String value) {
+        String text = value.trim();
+        try {
+            if (text.endsWith("d") || text.endsWith("h")) {
+                long amount = Long.parseLong(text.substring(0, text.length() - 1));
+                long unitMillis = text.endsWith("d") ? 86_400_000L : 3_600_000L;
+                return System.currentTimeMillis() - amount * unitMillis;
+            }
+            if (text.contains("T")) {
+                return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(text).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected a time such as 30d, 12h or 2026-09-01: " + value);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: SessionCatalog [catalog file or log directory] [filters]");
+        System.err.println("  Default catalog: ~/" + FILE_NAME);
+        System.err.println("  --blades <n>            Blade count");
+        System.err.println("  --mode <LAB|DYNO>       Stand mode");
+        System.err.println("  --min-current <A>       Peak current at least this");
+        System.err.println("  --min-thrust <g>        Peak thrust at least this, in grams");
+        System.err.println("  --min-rpm <rpm>         Peak RPM at least this");
+        System.err.println("  --since <time>          Started at or after, e.g. 30d, 12h or 2026-09-01");
+        System.err.println("  --until <time>          Started before");
+        System.err.println("  --calibration <hash>    Logged with this calibration (as printed)");
+        System.err.println("  --stand <name>          Logged by this stand");
+        System.err.println("e.g. all 3-blade runs over 20 A in the last month: --blades 3 --min-current 20 --since 30d");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path catalog = Paths.get(System.getProperty("user.home"), FILE_NAME);
+        Predicate<Entry> filter = e -> true;
+        int i = 0;
+        if (Arrays.asList(args).contains("--help")) {
+            usage();
+            return;
+        }
+        try {
+            if (args.length > 0 && !args[0].startsWith("--")) {
+                Path path = Paths.get(args[0]);
+                catalog = Files.isDirectory(path) ? path.resolve(FILE_NAME) : path;
+                i = 1;
+            }
+            for (; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(args[i] + " needs a value");
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--blades": {
+                        int blades = Integer.parseInt(value);
+                        filter = filter.and(e -> e.bladeCount == blades);
+                        break;
+                    }
+                    case "--mode": filter = filter.and(e -> e.mode.equalsIgnoreCase(value)); break;
+                    case "--min-current": {
+                        double amps = Double.parseDouble(value);
+                        filter = filter.and(e -> e.peakCurrent >= amps);
+                        break;
+                    }
+                    case "--min-thrust": {
+                        double grams = Double.parseDouble(value);
+                        filter = filter.and(e -> e.peakThrust >= grams);
+                        break;
+                    }
+                    case "--min-rpm": {
+                        double rpm = Double.parseDouble(value);
+                        filter = filter.and(e -> e.peakRpm >= rpm);
+                        break;
+                    }
+                    case "--since": {
+                        long since = parseTime(value);
+                        filter = filter.and(e -> e.startEpochMillis >= since);
+                        break;
+                    }
+                    case "--until": {
+                        long until = parseTime(value);
+                        filter = filter.and(e -> e.startEpochMillis < until);
+                        break;
+                    }
+                    case "--calibration": filter = filter.and(e -> e.getCalibrationId().equalsIgnoreCase(value)); break;
+                    case "--stand": filter = filter.and(e -> e.stand.equals(value)); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        }
+
+        DateTimeFormatter startFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        long startNanos = System.nanoTime();
+        List<Entry> matches = query(catalog, filter);
+        double millis = (System.nanoTime() - startNanos) / 1e6;
+
+        System.out.printf("%-19s %9s %6s %-4s %10s %9s %7s %-8s %s%n",
+                "Start", "Duration", "Blades", "Mode", "Thrust (g)", "Current", "RPM", "Cal", "File");
+        for (Entry e : matches) {
+            System.out.printf("%-19s %8.0fs %6d %-4s %10.1f %8.2fA %7.0f %-8s %s%n",
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(e.startEpochMillis), ZoneId.systemDefault()).format(startFormat),
+                    e.getDurationMillis() / 1000.0, e.bladeCount, e.mode, e.peakThrust, e.peakCurrent, e.peakRpm,
+                    e.getCalibrationId(), e.file);
+        }
+        System.out.printf("%d sessions matched in %.1f ms (%s)%n", matches.size(), millis, catalog);
+    }
+}
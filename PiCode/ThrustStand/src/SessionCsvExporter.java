@@ -0,0 +1,121 @@
+/*  Title:  SessionCsvExporter.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: Configuration.java
+ *  Description: Converts a binary session log into the same CSV layout the live logger
+ *  writes. Values are converted on read using the calibration stored in the log, and
+ *  rows are streamed through one reusable buffer so memory use does not grow with
+ *  the length of the session.
+ *  Can also be run on its own:
+ *      java SessionCsvExporter <session.tslog> [out.csv] [thrust unit] [airspeed unit]
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public final class SessionCsvExporter {
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private SessionCsvExporter() {}
+
+    /**
+     * Export a session log to CSV.
+     * @param thrustUnit thrust unit for the CSV, or null to use the unit recorded with the session
+     * @param airspeedUnit airspeed unit for the CSV, or null to use the unit recorded with the session
+     * @return Number of rows written
+     */
+    public static long export(Path in, Path out, String thrustUnit, String airspeedUnit) throws IOException {
+        try (SessionLogReader reader = SessionLogReader.open(in);
+             FileChannel channel = FileChannel.open(out,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Calibration calibration = reader.getCalibration();
+            long startEpochMillis = parseLong(reader.getMetadata(SessionLogFormat.KEY_START_EPOCH_MS), 0);
+            long startNanos = parseLong(reader.getMetadata(SessionLogFormat.KEY_START_NANOS), 0);
+
+            Measurement measurement = new Measurement();
+            measurement.thrustUnit = ThrustUnit.fromLabel(thrustUnit != null ? thrustUnit
+                    : reader.getMetadata(SessionLogFormat.KEY_THRUST_UNIT));
+            measurement.airspeedUnit = AirspeedUnit.fromLabel(airspeedUnit != null ? airspeedUnit
+                    : reader.getMetadata(SessionLogFormat.KEY_AIRSPEED_UNIT));
+            measurement.bladeCount = (int) parseLong(reader.getMetadata(SessionLogFormat.KEY_BLADE_COUNT), 2);
+            measurement.propDiameter = parseDouble(reader.getMetadata(SessionLogFormat.KEY_PROP_DIAMETER), 0);
+
+            //Rerun the filters recorded with the session over its raw samples
+            ChannelFilters filters = ChannelFilters.fromDescription(reader.getMetadata(SessionLogFormat.KEY_FILTERS));
+
+            CsvRowEncoder encoder = new CsvRowEncoder();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES + CsvRowEncoder.MAX_ROW_BYTES);
+            Sample sample = new Sample();
+            encoder.setUnfilteredColumns(filters.isActive());
+            encoder.putHeader(buffer);
+
+            long rows = reader.getSampleCount();
+            for (long i = 0; i < rows; i++) {
+                reader.read(i, sample);
+                filters.apply(sample);
+                StandPipeline.convertValues(calibration, sample, measurement);
+
+                long epochMillis = startEpochMillis + (sample.receivedNanos - startNanos) / 1_000_000;
+                encoder.putRow(buffer, epochMillis, measurement);
+                if (buffer.position() >= BUFFER_BYTES) {
+                    drain(buffer, channel);
+                }
+            }
+            drain(buffer, channel);
+            return rows;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static double parseDouble(String value, double fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    //Default output name: same path with the .tslog extension swapped for .csv
+    public static Path defaultOutput(Path in) {
+        String name = in.getFileName().toString();
+        if (name.endsWith(SessionLogFormat.FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - SessionLogFormat.FILE_EXTENSION.length());
+        }
+        return in.resolveSibling(name + ".csv");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SessionCsvExporter <session.tslog> [out.csv] [thrust unit] [airspeed unit]");
+            System.exit(2);
+        }
+        Path in = Paths.get(args[0]);
+        Path out = args.length > 1 ? Paths.get(args[1]) : defaultOutput(in);
+        long rows = export(in, out, args.length > 2 ? args[2] : null, args.length > 3 ? args[3] : null);
+        System.out.println("Exported " + rows + " rows to " + out);
+    }
+}
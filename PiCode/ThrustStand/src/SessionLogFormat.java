@@ -0,0 +1,135 @@
+/*  Title:  SessionLogFormat.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: DataLogger.java
+ *  Description: Layout of the binary session log (.tslog). All values are little-endian.
+ *
+ *  File header, HEADER_BYTES long:
+ *      int magic, int version, int headerBytes, int blockSamples, int textLength,
+ *      then textLength bytes of UTF-8 "key=value" lines: the calibration snapshot
+ *      (same keys as calibration.txt) followed by session metadata.
+ *
+ *  Followed by fixed-size blocks of BLOCK_SAMPLES samples each, BLOCK_BYTES long:
+ *      int blockMagic, int sampleCount, long firstSequence,
+ *      then one column per field, each BLOCK_SAMPLES entries wide.
+ *  Version 2 added the sequencer step column; version 1 blocks end before it.
+ *  Only the last block may be partly filled. Blocks sit at fixed offsets so a file
+ *  can be memory-mapped and any sample found without scanning.
+ */
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class SessionLogFormat {
+    public static final String FILE_EXTENSION = ".tslog";
+
+    static final int MAGIC = 0x474C5354;        //"TSLG"
+    static final int VERSION = 2;
+    static final int OLDEST_VERSION = 1;
+    static final int HEADER_BYTES = 4096;
+    static final int HEADER_FIXED_BYTES = 20;
+    static final int BLOCK_MAGIC = 0x4B425354;  //"TSBK"
+    static final int BLOCK_SAMPLES = 1024;
+    static final int BLOCK_HEADER_BYTES = 16;
+
+    //Metadata keys
+    static final String KEY_START_EPOCH_MS = "start_epoch_ms";
+    static final String KEY_START_NANOS = "start_nanos";
+    static final String KEY_THRUST_UNIT = "thrust_unit";
+    static final String KEY_AIRSPEED_UNIT = "airspeed_unit";
+    static final String KEY_BLADE_COUNT = "blade_count";
+    static final String KEY_PROP_DIAMETER = "prop_diameter_m";  //Absent if not entered
+    static final String KEY_MODE = "mode";
+    static final String KEY_STAND = "stand";
+    static final String KEY_FILTERS = "filters";      //ChannelFilters.describe(), absent if unfiltered
+
+    //Column offsets from the start of a block, in block order
+    static final int COL_RECEIVED_NANOS = BLOCK_HEADER_BYTES;                  //long, host nanoTime
+    static final int COL_DEVICE_MICROS = COL_RECEIVED_NANOS + 8 * BLOCK_SAMPLES; //long, -1 if unknown
+    static final int COL_INCOMING_PITOT = COL_DEVICE_MICROS + 8 * BLOCK_SAMPLES; //float, volts
+    static final int COL_WAKE_PITOT = COL_INCOMING_PITOT + 4 * BLOCK_SAMPLES;    //float, volts
+    static final int COL_CURRENT = COL_WAKE_PITOT + 4 * BLOCK_SAMPLES;           //float, volts
+    static final int COL_VOLTAGE = COL_CURRENT + 4 * BLOCK_SAMPLES;              //float, volts
+    static final int COL_RAW_THRUST = COL_VOLTAGE + 4 * BLOCK_SAMPLES;           //int, HX711 counts
+    static final int COL_RPM = COL_RAW_THRUST + 4 * BLOCK_SAMPLES;               //float
+    static final int COL_STEP = COL_RPM + 4 * BLOCK_SAMPLES;                     //int, -1 outside a sequence
+    static final int BLOCK_BYTES = COL_STEP + 4 * BLOCK_SAMPLES;
+
+    //Block length for a given file version
+    static int blockBytes(int version) {
+        return version >= 2 ? BLOCK_BYTES : COL_STEP;
+    }
+
+    private SessionLogFormat() {}
+
+    static long blockOffset(long block) {
+        return HEADER_BYTES + block * BLOCK_BYTES;
+    }
+
+    static int version(ByteBuffer header) {
+        return header.order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+    }
+
+    //Encode the file header into a HEADER_BYTES buffer ready to write
+    static ByteBuffer encodeHeader(Calibration calibration, Map<String, String> metadata) throws IOException {
+        StringWriter text = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(text)) {
+            calibration.write(writer);
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                writer.println(entry.getKey() + "=" + entry.getValue());
+            }
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > HEADER_BYTES - HEADER_FIXED_BYTES) {
+            throw new IOException("Session log header too large: " + bytes.length + " bytes");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(HEADER_BYTES).putInt(BLOCK_SAMPLES).putInt(bytes.length);
+        header.put(bytes);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * Decode a file header. Calibration keys go into calibration, everything else
+     * is returned as metadata.
+     */
+    static Map<String, String> decodeHeader(ByteBuffer header, Calibration.Builder calibration) throws IOException {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a thrust stand session log");
+        }
+        int version = header.getInt(4);
+        if (version < OLDEST_VERSION || version > VERSION || header.getInt(8) != HEADER_BYTES || header.getInt(12) != BLOCK_SAMPLES) {
+            throw new IOException("Unsupported session log version " + version);
+        }
+        int length = header.getInt(16);
+        if (length < 0 || length > HEADER_BYTES - HEADER_FIXED_BYTES) {
+            throw new IOException("Corrupt session log header");
+        }
+        byte[] bytes = new byte[length];
+        header.get(HEADER_FIXED_BYTES, bytes);
+
+        Map<String, String> metadata = new LinkedHashMap<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            String[] parts = line.trim().split("=", 2);
+            if (parts.length == 2) {
+                boolean isCalibration;
+                try {
+                    isCalibration = calibration.set(parts[0], parts[1]);
+                } catch (IllegalArgumentException e) {
+                    isCalibration = false;
+                }
+                if (!isCalibration) {
+                    metadata.put(parts[0], parts[1]);
+                }
+            }
+        }
+        return metadata;
+    }
+}
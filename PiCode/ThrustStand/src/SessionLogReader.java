@@ -0,0 +1,143 @@
+/*  Title:  SessionLogReader.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SessionCsvExporter.java
+ *  Description: Read-only access to a binary session log (see SessionLogFormat). The
+ *  file is memory-mapped in segments of whole blocks, so any sample can be read by
+ *  index without scanning or copying the file into the heap. Safe for one reader
+ *  thread per instance. Reads every version back to SessionLogFormat.OLDEST_VERSION.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+public class SessionLogReader implements Closeable {
+    private final FileChannel channel;
+    private final int blockBytes;
+    private final int blocksPerSegment;     //Whole blocks per mapping, keeping each under 2 GB
+    private final boolean hasSteps;
+    private final Calibration calibration;
+    private final Map<String, String> metadata;
+    private final MappedByteBuffer[] segments;
+    private final long blockCount;
+    private final long sampleCount;
+
+    private SessionLogReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(SessionLogFormat.HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Session log header is truncated");
+            }
+        }
+        Calibration.Builder stored = new Calibration.Builder();
+        metadata = Collections.unmodifiableMap(SessionLogFormat.decodeHeader(header, stored));
+        calibration = stored.build();
+        int version = SessionLogFormat.version(header);
+        blockBytes = SessionLogFormat.blockBytes(version);
+        blocksPerSegment = Integer.MAX_VALUE / blockBytes;
+        hasSteps = version >= 2;
+
+        //A block cut short by a crash mid-write is ignored
+        blockCount = (channel.size() - SessionLogFormat.HEADER_BYTES) / blockBytes;
+        segments = new MappedByteBuffer[(int) ((blockCount + blocksPerSegment - 1) / blocksPerSegment)];
+        for (int i = 0; i < segments.length; i++) {
+            long firstBlock = (long) i * blocksPerSegment;
+            long blocks = Math.min(blocksPerSegment, blockCount - firstBlock);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    SessionLogFormat.HEADER_BYTES + firstBlock * blockBytes, blocks * blockBytes);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long samples = 0;
+        for (long block = 0; block < blockCount; block++) {
+            ByteBuffer segment = segmentOf(block);
+            int base = baseOf(block);
+            if (segment.getInt(base) != SessionLogFormat.BLOCK_MAGIC) {
+                throw new IOException("Corrupt session log block " + block);
+            }
+            int count = segment.getInt(base + 4);
+            if (count < 0 || count > SessionLogFormat.BLOCK_SAMPLES
+                    || (count < SessionLogFormat.BLOCK_SAMPLES && block != blockCount - 1)) {
+                throw new IOException("Corrupt sample count in session log block " + block);
+            }
+            samples += count;
+        }
+        sampleCount = samples;
+    }
+
+    public static SessionLogReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SessionLogReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //Calibration in effect when the session was recorded
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public String getMetadata(String key) {
+        return metadata.get(key);
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    //Fill dst with sample number index (0 based)
+    public void read(long index, Sample dst) {
+        if (index < 0 || index >= sampleCount) {
+            throw new IndexOutOfBoundsException("Sample " + index + " of " + sampleCount);
+        }
+        long block = index / SessionLogFormat.BLOCK_SAMPLES;
+        int i = (int) (index % SessionLogFormat.BLOCK_SAMPLES);
+        ByteBuffer segment = segmentOf(block);
+        int base = baseOf(block);
+
+        dst.sequence = segment.getLong(base + 8) + i;
+        dst.receivedNanos = segment.getLong(base + SessionLogFormat.COL_RECEIVED_NANOS + i * 8);
+        dst.deviceMicros = segment.getLong(base + SessionLogFormat.COL_DEVICE_MICROS + i * 8);
+        dst.incomingPitotV = segment.getFloat(base + SessionLogFormat.COL_INCOMING_PITOT + i * 4);
+        dst.wakePitotV = segment.getFloat(base + SessionLogFormat.COL_WAKE_PITOT + i * 4);
+        dst.currentV = segment.getFloat(base + SessionLogFormat.COL_CURRENT + i * 4);
+        dst.voltageV = segment.getFloat(base + SessionLogFormat.COL_VOLTAGE + i * 4);
+        dst.rawThrust = segment.getInt(base + SessionLogFormat.COL_RAW_THRUST + i * 4);
+        dst.rpm = segment.getFloat(base + SessionLogFormat.COL_RPM + i * 4);
+        dst.step = hasSteps ? segment.getInt(base + SessionLogFormat.COL_STEP + i * 4) : -1;
+        dst.passThrough(); //Only raw values are stored
+    }
+
+    private ByteBuffer segmentOf(long block) {
+        return segments[(int) (block / blocksPerSegment)];
+    }
+
+    private int baseOf(long block) {
+        return (int) (block % blocksPerSegment) * blockBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        //Mappings are released by the GC; closing the channel does not invalidate them
+        channel.close();
+    }
+}
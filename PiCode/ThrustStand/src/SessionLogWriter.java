@@ -0,0 +1,122 @@
+/*  Title:  SessionLogWriter.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: DataLogger.java
+ *  Description: Writes raw telemetry to a binary session log (see SessionLogFormat).
+ *  Samples are placed straight into the columns of the current block. The block is
+ *  written at its fixed file offset when it fills, and the partly filled block is
+ *  rewritten in place once a second so a crash loses at most about a second.
+ *  Not thread safe; owned by the logger thread.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+public class SessionLogWriter implements Closeable {
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final FileChannel channel;
+    private final ByteBuffer block = ByteBuffer.allocateDirect(SessionLogFormat.BLOCK_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private long blockIndex;
+    private int count;
+    private boolean dirty;
+    private long lastFlushNanos = System.nanoTime();
+    private long samplesWritten;
+
+    public SessionLogWriter(Path path, Calibration calibration, Map<String, String> metadata) throws IOException {
+        ByteBuffer header = SessionLogFormat.encodeHeader(calibration, metadata);
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        block.putInt(0, SessionLogFormat.BLOCK_MAGIC);
+    }
+
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    //True while appended samples are waiting to be written to the file
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    //Bytes the file occupies so far
+    public long getBytesWritten() {
+        long blocks = blockIndex + (count > 0 ? 1 : 0);
+        return SessionLogFormat.blockOffset(blocks);
+    }
+
+    public void append(Sample sample) throws IOException {
+        if (count == 0) {
+            block.putLong(8, sample.sequence);
+        }
+        int i = count;
+        block.putLong(SessionLogFormat.COL_RECEIVED_NANOS + i * 8, sample.receivedNanos);
+        block.putLong(SessionLogFormat.COL_DEVICE_MICROS + i * 8, sample.deviceMicros);
+        block.putFloat(SessionLogFormat.COL_INCOMING_PITOT + i * 4, sample.incomingPitotV);
+        block.putFloat(SessionLogFormat.COL_WAKE_PITOT + i * 4, sample.wakePitotV);
+        block.putFloat(SessionLogFormat.COL_CURRENT + i * 4, sample.currentV);
+        block.putFloat(SessionLogFormat.COL_VOLTAGE + i * 4, sample.voltageV);
+        block.putInt(SessionLogFormat.COL_RAW_THRUST + i * 4, (int) sample.rawThrust);
+        block.putFloat(SessionLogFormat.COL_RPM + i * 4, sample.rpm);
+        block.putInt(SessionLogFormat.COL_STEP + i * 4, sample.step);
+        count++;
+        samplesWritten++;
+        dirty = true;
+
+        if (count == SessionLogFormat.BLOCK_SAMPLES) {
+            writeBlock();
+            blockIndex++;
+            count = 0;
+            //Clear stale columns so a partly filled block never shows old data
+            block.clear();
+            for (int offset = SessionLogFormat.BLOCK_HEADER_BYTES; offset < SessionLogFormat.BLOCK_BYTES; offset += 8) {
+                block.putLong(offset, 0);
+            }
+            block.putInt(0, SessionLogFormat.BLOCK_MAGIC);
+        }
+    }
+
+    //Rewrite the partly filled block if the flush interval has passed
+    public void flushIfDue() throws IOException {
+        if (dirty && System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        lastFlushNanos = System.nanoTime();
+        block.putInt(4, count);
+        block.clear();
+        long position = SessionLogFormat.blockOffset(blockIndex);
+        while (block.hasRemaining()) {
+            position += channel.write(block, position);
+        }
+        block.clear();
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (dirty) {
+                writeBlock();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*  Title:  SessionReplayer.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Plays a recorded binary session log back into the telemetry ring as
+ *  if it were arriving from the serial port, so the display, history and logger all
+ *  see it through their normal path. Samples are paced against absolute deadlines
+ *  taken from the recorded receive times: the thread parks until shortly before each
+ *  deadline and spins the rest of the way, so timing does not drift over a long run.
+ *  Flat out, it holds back whenever the slowest ring cursor gets close to being
+ *  lapped, and only replays past a cursor that has stopped reading altogether.
+ *  Started through SerialController.startReplay(), which keeps the ring to a single
+ *  producer.
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+public class SessionReplayer {
+    //Pass as the speed to publish samples as fast as the pipeline accepts them
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    //Park until this close to a deadline, then spin
+    private static final long SPIN_NANOS = 50_000;
+    //How often a flat-out replay asks the UI to refresh
+    private static final int REFRESH_EVERY = 256;
+    //Back-pressure for a flat-out replay: how long to park while the slowest cursor
+    //catches up, and how long it may make no progress before it is replayed past
+    private static final long CATCH_UP_PARK_NANOS = 200_000;
+    private static final long STALLED_NANOS = 500_000_000L;
+
+    private final SessionLogReader reader;
+    private final TelemetryRing ring;
+    private final TelemetryBus bus;
+    private final ChannelFilters filters;
+    private final Runnable displayRefresh;
+    private final double speed;
+    private final Sample scratch = new Sample();
+    private final Set<TelemetryRing.Cursor> stalled = new HashSet<>(); //Replay thread
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile Runnable onFinished;
+
+    //Statistics, written by the replay thread
+    private volatile long samplesReplayed;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile long maxLatenessNanos;
+
+    /**
+     * @param standName Stand being replayed into, for the replay thread name
+     * @param speed Playback rate, 1.0 for real time, or AS_FAST_AS_POSSIBLE
+     */
+    SessionReplayer(Path path, String standName, TelemetryRing ring, TelemetryBus bus, ChannelFilters filters, Runnable displayRefresh, double speed) throws IOException {
+        if (!(speed >= 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+        this.reader = SessionLogReader.open(path);
+        this.ring = ring;
+        this.bus = bus;
+        this.filters = filters;
+        this.displayRefresh = displayRefresh;
+        this.speed = speed;
+        this.thread = new Thread(this::run, "session-replay (" + standName + ")");
+        this.thread.setDaemon(true);
+    }
+
+    //Runs on the replay thread once playback ends or is stopped
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    //Stop playback and wait for the replay thread to exit
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        //Every wait on the replay thread checks running, so this returns promptly
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return thread.isAlive();
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public long getSampleCount() {
+        return reader.getSampleCount();
+    }
+
+    public long getSamplesReplayed() {
+        return samplesReplayed;
+    }
+
+    //Worst time a sample was published after its deadline
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    //Achieved publish rate over the replay so far
+    public double getSamplesPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return end > start ? samplesReplayed * 1e9 / (end - start) : 0;
+    }
+
+    private void run() {
+        long total = reader.getSampleCount();
+        long firstRecorded = 0;
+        long start = System.nanoTime();
+        startNanos = start;
+        try {
+            for (long i = 0; i < total && running; i++) {
+                reader.read(i, scratch);
+                if (i == 0) {
+                    firstRecorded = scratch.receivedNanos;
+                }
+                if (speed != AS_FAST_AS_POSSIBLE) {
+                    long deadline = start + (long) ((scratch.receivedNanos - firstRecorded) / speed);
+                    if (deadline - System.nanoTime() > 0) {
+                        //Let the UI catch up before idling until the next sample
+                        displayRefresh.run();
+                        if (!waitUntil(deadline)) {
+                            break;
+                        }
+                    }
+                    long late = System.nanoTime() - deadline;
+                    if (late > maxLatenessNanos) {
+                        maxLatenessNanos = late;
+                    }
+                }
+
+                Sample slot = ring.claim();
+                long sequence = slot.sequence;
+                slot.copyFrom(scratch);
+                slot.sequence = sequence;
+                slot.receivedNanos = System.nanoTime();
+                slot.readNanos = slot.receivedNanos;
+                filters.apply(slot); //The stand's current filters, as if the samples were live
+                ring.publish();
+                if (bus.hasSubscribers(TelemetryBus.SAMPLE)) {
+                    bus.publish(TelemetryBus.SAMPLE, slot);
+                }
+                samplesReplayed = i + 1;
+
+                if (speed == AS_FAST_AS_POSSIBLE && (i & (REFRESH_EVERY - 1)) == 0) {
+                    displayRefresh.run();
+                    //Checked every REFRESH_EVERY samples, so leave that much headroom
+                    awaitSlowestCursor(ring.getCapacity() - REFRESH_EVERY);
+                }
+            }
+            displayRefresh.run();
+        } catch (RuntimeException e) {
+            System.err.println("Session replay failed after " + samplesReplayed + " samples");
+            e.printStackTrace();
+        } finally {
+            finishNanos = System.nanoTime();
+            running = false;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Runnable finished = onFinished;
+            if (finished != null) {
+                finished.run();
+            }
+        }
+    }
+
+    //Hold a flat-out replay until every cursor is less than maxLag behind. A cursor still
+    //that far behind after STALLED_NANOS is passed by until it catches up again; it is
+    //lapped and counts its losses as it would behind a live stand
+    private void awaitSlowestCursor(long maxLag) {
+        long waitStart = 0;
+        while (running) {
+            TelemetryRing.Cursor slowest = null;
+            long worstLag = maxLag - 1;
+            for (TelemetryRing.Cursor cursor : ring.getCursors()) {
+                long lag = cursor.getLag();
+                if (lag < maxLag) {
+                    stalled.remove(cursor);
+                } else if (lag > worstLag && !stalled.contains(cursor)) {
+                    slowest = cursor;
+                    worstLag = lag;
+                }
+            }
+            if (slowest == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (waitStart == 0) {
+                waitStart = now;
+            } else if (now - waitStart > STALLED_NANOS) {
+                System.err.println("Replay not waiting for " + slowest.getName() + ", it has stopped reading");
+                stalled.add(slowest);
+                waitStart = 0;
+                continue;
+            }
+            LockSupport.parkNanos(CATCH_UP_PARK_NANOS);
+        }
+    }
+
+    //Park until just before the deadline, then spin; false if stopped meanwhile
+    private boolean waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            if (!running) {
+                return false;
+            }
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        return running;
+    }
+}
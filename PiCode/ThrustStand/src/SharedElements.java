@@ -3,47 +3,61 @@
  *  Email:  evan.e.schober@wmich.edu
  *  Parent Class: ThrustStand.java
  *  Description: Class used to define and managed shared resources between various scene controllers
+ *  One instance per stand, created by StandRegistry on top of the stand's StandPipeline,
+ *  which holds the JavaFX-free acquisition core (calibration, units, history, logger).
  */
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.beans.property.*;
 
 public class SharedElements{
-    private static SharedElements instance;
-
-    //Simplifies calibration constant handling
-    private static final class CalibrationConstants {
-        private static final double DEFAULT_LOADCELL_ZERO_OFFSET = 42363.0;
-        private static final double DEFAULT_LOADCELL_SCALE = 0.002296;
-        private static final double DEFAULT_INCOMING_PITOT = 1.0;
-        private static final double DEFAULT_WAKE_PITOT = 1.0;
-        private static final double DEFAULT_CURRENT_ZERO_OFFSET = 0.394;
-        private static final double DEFAULT_CURRENT_SENSITIVITY = 0.02;
-        private static final double DEFAULT_VOLTAGE_RATIO = 0.1;
-
-        // Instance variables initialized with default values
-        private double loadCellZeroOffset = DEFAULT_LOADCELL_ZERO_OFFSET;
-        private double loadCellScale = DEFAULT_LOADCELL_SCALE;
-        private double incomingPitotCalibration = DEFAULT_INCOMING_PITOT;
-        private double wakePitotCalibration = DEFAULT_WAKE_PITOT;
-        private double currentSensorZeroOffset = DEFAULT_CURRENT_ZERO_OFFSET;
-        private double currentSensorSensitivity = DEFAULT_CURRENT_SENSITIVITY;
-        private double voltageDividerRatio = DEFAULT_VOLTAGE_RATIO;
-    }
-
-    private final CalibrationConstants calibration = new CalibrationConstants();
-
-    private float lastRawVoltage = 0.0f;
-    private long lastRawThrust = 0;
-    private float lastRawCurrent = 0;
+    private final StandPipeline pipeline;
+    private final SerialController serialController;
+    private final LatencyTrace latencyTrace;
+
+    //Latest raw readings, written by the ingest thread for the calibration dialogs
+    private volatile float lastRawVoltage = 0.0f;
+    private volatile long lastRawThrust = 0;
+    private volatile float lastRawCurrent = 0;
 
     private boolean holdEnabled = false;
+    //Show window averages from the stand's StreamingStats instead of the newest sample
+    private boolean averagedDisplay = false;
+    private final StreamingStats.Summary averageSummary = new StreamingStats.Summary();
+
+    //The ingest thread converts the newest sample from its own ring cursor and hands it
+    //to the JavaFX thread through a triple buffer; a frame timer picks it up
+    private final TelemetryRing.Cursor uiCursor;
+    private final Sample uiSample = new Sample();
+    //Read on demand by the all-stands overview (JavaFX thread)
+    private TelemetryRing.Cursor overviewCursor;
+    private final Sample overviewSample = new Sample();
+    private Measurement uiBack = new Measurement();                 //Ingest thread
+    private final AtomicReference<Measurement> uiReady = new AtomicReference<>(new Measurement());
+    private Measurement uiFront = new Measurement();                //JavaFX thread
+    private long uiShownSequence = -1;                              //None yet; the first sample is 0
+    private final DisplayFormatter thrustFormat = new DisplayFormatter();
+    private final DisplayFormatter incomingAirspeedFormat = new DisplayFormatter();
+    private final DisplayFormatter wakeAirspeedFormat = new DisplayFormatter();
+    private final DisplayFormatter currentFormat = new DisplayFormatter();
+    private final DisplayFormatter voltageFormat = new DisplayFormatter();
+    private final DisplayFormatter rpmFormat = new DisplayFormatter();
+    private final DisplayFormatter powerFormat = new DisplayFormatter();
+    private final DisplayFormatter efficiencyFormat = new DisplayFormatter();
+    private final DisplayFormatter advanceRatioFormat = new DisplayFormatter();
+    private final DisplayFormatter thrustCoefficientFormat = new DisplayFormatter();
+
+    //Display refresh paced by the JavaFX pulse, independent of the telemetry rate
+    private static final int DEFAULT_DISPLAY_HZ = 20;
+    private AnimationTimer displayTimer;
+    private long displayIntervalNanos = intervalNanos(Integer.getInteger("thruststand.displayHz", DEFAULT_DISPLAY_HZ));
+    private long lastDisplayNanos;
 
     //FXML Element variables
     private TextField thrustField;
@@ -66,26 +80,68 @@ public class SharedElements{
     private final StringProperty wakeAirspeedProperty = new SimpleStringProperty();
     private final StringProperty currentProperty = new SimpleStringProperty();
     private final StringProperty voltageProperty = new SimpleStringProperty();
+    //Readouts only the dyno scene shows
+    private final StringProperty rpmProperty = new SimpleStringProperty("00000");
+    private final StringProperty powerProperty = new SimpleStringProperty("000.0");
+    private final StringProperty efficiencyProperty = new SimpleStringProperty("0.00");
+    private final StringProperty advanceRatioProperty = new SimpleStringProperty("0.000");
+    private final StringProperty thrustCoefficientProperty = new SimpleStringProperty("0.0000");
     private final BooleanProperty holdActiveProperty = new SimpleBooleanProperty();
     private final BooleanProperty motorActiveProperty = new SimpleBooleanProperty();
     private final BooleanProperty loggerActiveProperty = new SimpleBooleanProperty();
+    //Unit selections shared by the lab and dyno scenes, which are both kept loaded
+    private final ObjectProperty<String> thrustUnitProperty = new SimpleObjectProperty<>("kg");
+    private final ObjectProperty<String> incomingAirspeedUnitProperty = new SimpleObjectProperty<>("m/s");
+    private final ObjectProperty<String> wakeAirspeedUnitProperty = new SimpleObjectProperty<>("m/s");
+    private final ObjectProperty<Integer> bladeCountProperty = new SimpleObjectProperty<>(2);
+
+    //Automated test sequence; one per stand, whichever scene started it
+    private TestSequencer sequencer;
+    private final StringProperty sequenceButtonTextProperty = new SimpleStringProperty("Sequence");
 
     //DataLogger class instantiation
     private final DataLogger dataLogger;
 
-    private SharedElements(){
-        dataLogger = new DataLogger();
+    SharedElements(StandPipeline pipeline){
+        this.pipeline = pipeline;
+        this.serialController = pipeline.getSerialController();
+        this.dataLogger = pipeline.getDataLogger();
+        this.latencyTrace = serialController.getLatencyTrace();
+        uiCursor = serialController.getTelemetryRing().newCursor("ui");
+        serialController.setDisplayRefresh(this::requestDisplayRefresh);
+
+        //Mirror unit selections for use off the JavaFX thread
+        pipeline.setThrustUnit(ThrustUnit.fromLabel(thrustUnitProperty.get()));
+        pipeline.setAirspeedUnit(AirspeedUnit.fromLabel(incomingAirspeedUnitProperty.get()));
+        pipeline.setBladeCount(bladeCountProperty.get());
+        thrustUnitProperty.addListener((obs, oldUnit, newUnit) -> pipeline.setThrustUnit(ThrustUnit.fromLabel(newUnit)));
+        incomingAirspeedUnitProperty.addListener((obs, oldUnit, newUnit) -> pipeline.setAirspeedUnit(AirspeedUnit.fromLabel(newUnit)));
+        bladeCountProperty.addListener((obs, oldCount, newCount) -> {
+            if (newCount != null) {
+                pipeline.setBladeCount(newCount);
+            }
+        });
+    }
+
+    public SerialController getSerialController(){
+        return serialController;
+    }
+
+    public StandPipeline getPipeline(){
+        return pipeline;
     }
 
     public DataLogger getDataLogger(){
         return dataLogger;
     }
 
+    public SampleStore getHistory(){
+        return pipeline.getHistory();
+    }
+
+    //Shared elements of the selected stand
     public static SharedElements getInstance(){
-        if (instance == null) {
-            instance = new SharedElements();
-        }
-        return instance;
+        return StandRegistry.getInstance().getSelected().getSharedElements();
     }
 
     public void initializeControls(
@@ -118,6 +174,7 @@ public class SharedElements{
         
         setupControls();
         setupBindings();
+        startDisplayTimer();
     }
 
     private void setupControls(){
@@ -137,6 +194,7 @@ public class SharedElements{
         bladeCountCombo.getItems().addAll(1,2,3,4,5,6,7,8);
         bladeCountCombo.setValue(2);
 
+
         //Electircal measurements
         currentField.setEditable(false);
         voltageField.setEditable(false);
@@ -152,6 +210,10 @@ public class SharedElements{
         holdToggle.selectedProperty().bindBidirectional(holdActiveProperty);
         motorToggle.selectedProperty().bindBidirectional(motorActiveProperty);
         loggingToggle.selectedProperty().bindBidirectional(loggerActiveProperty);
+        thrustUnitCombo.valueProperty().bindBidirectional(thrustUnitProperty);
+        incomingAirspeedUnitCombo.valueProperty().bindBidirectional(incomingAirspeedUnitProperty);
+        wakeAirspeedUnitCombo.valueProperty().bindBidirectional(wakeAirspeedUnitProperty);
+        bladeCountCombo.valueProperty().bindBidirectional(bladeCountProperty);
 
     }
 
@@ -160,8 +222,14 @@ public class SharedElements{
     public StringProperty wakeAirspeedProperty() { return wakeAirspeedProperty; }
     public StringProperty currentProperty() { return currentProperty; }
     public StringProperty voltageProperty() { return voltageProperty; }
+    public StringProperty rpmProperty() { return rpmProperty; }
+    public StringProperty powerProperty() { return powerProperty; }
+    public StringProperty efficiencyProperty() { return efficiencyProperty; }
+    public StringProperty advanceRatioProperty() { return advanceRatioProperty; }
+    public StringProperty thrustCoefficientProperty() { return thrustCoefficientProperty; }
     public BooleanProperty motorRunningProperty() { return motorActiveProperty; }
     public BooleanProperty dataLoggingProperty() { return loggerActiveProperty; }
+    public StringProperty sequenceButtonTextProperty() { return sequenceButtonTextProperty; }
 
     public void handleTearButton(){
         tearButton.getOnAction();
@@ -171,7 +239,7 @@ public class SharedElements{
     public void handleMotorToggle(){
         if(motorToggle.isSelected()){
             //Motor is being turned on
-            if (SerialController.getInstance().setMotor(true)) {
+            if (serialController.setMotor(true)) {
                 //System.out.println("Motor Started");  //Debug
                 motorActiveProperty.set(true);    
             } else {
@@ -189,7 +257,7 @@ public class SharedElements{
             
         } else {
             //Motor is being turned off
-            if(SerialController.getInstance().setMotor(false)){
+            if(serialController.setMotor(false)){
                 //System.out.println("Motor Stopped"); //Debug  
                 motorActiveProperty.set(false);
             } else {
@@ -212,11 +280,19 @@ public class SharedElements{
         holdEnabled = holdToggle.isSelected();
     }
 
+    public boolean isAveragedDisplay(){
+        return averagedDisplay;
+    }
+
+    public void setAveragedDisplay(boolean averaged){
+        averagedDisplay = averaged;
+    }
+
     public void handleLoggerToggle(){
         if (loggingToggle.isSelected()) {
             //Start logging data
             try {
-                dataLogger.startLogging();
+                pipeline.startLogging();
                 loggerActiveProperty.set(true);
                 //System.out.println("Data logging started: " + dataLogger.getCurrentFilePath());   //Debug
             } catch (IOException e) {
@@ -231,27 +307,252 @@ public class SharedElements{
                 alert.showAndWait();
             }
         } else {
-            // Stop logging data
-            dataLogger.stopLogging();
+            // Stop logging data; the logger thread finishes the file, so keep the
+            // toggle disabled until it has closed rather than waiting here
             loggerActiveProperty.set(false);
+            loggingToggle.setDisable(true);
+            dataLogger.stopLogging(() -> Platform.runLater(() -> loggingToggle.setDisable(false)));
             //System.out.println("Data logging stopped");   //Debug
         }
     }
 
+    /**
+     * Ask for a test profile and start it, or stop the sequence already running (JavaFX thread).
+     * @param mode LAB steps through RPM setpoints, DYNO through throttle %
+     * @param defaultSetpoints Setpoints offered in the dialog, e.g. "0-100/5"
+     */
+    public void handleSequenceButton(String mode, String defaultSetpoints){
+        if (isSequenceRunning()) {
+            stopSequence();
+            return;
+        }
+        TestProfile profile = showSequenceDialog(mode, defaultSetpoints);
+        if (profile == null) {
+            return;
+        }
+        int steps = profile.getStepCount();
+        TestSequencer run = new TestSequencer(pipeline, profile);
+        run.setOnStepComplete(result -> {
+            if (result.step + 1 < steps) {
+                Platform.runLater(() -> sequenceButtonTextProperty.set("Stop Sequence\nStep " + (result.step + 2) + "/" + steps));
+            }
+        });
+        run.setOnFinished(() -> Platform.runLater(() -> onSequenceFinished(run)));
+        sequencer = run.start();
+        motorActiveProperty.set(true);
+        loggerActiveProperty.set(true);
+        sequenceButtonTextProperty.set("Stop Sequence\nStep 1/" + steps);
+    }
+
+    public boolean isSequenceRunning(){
+        return sequencer != null && sequencer.isRunning();
+    }
+
+    //Abort a running sequence; it stops the motor itself, and onSequenceFinished
+    //resets the controls once it has
+    public void stopSequence(){
+        if (isSequenceRunning()) {
+            sequencer.stop();
+            sequenceButtonTextProperty.set("Stopping...");
+        }
+    }
+
+    //JavaFX thread
+    private void onSequenceFinished(TestSequencer run){
+        motorActiveProperty.set(false);
+        loggerActiveProperty.set(dataLogger.isLogging());
+        sequenceButtonTextProperty.set("Sequence");
+
+        Alert alert;
+        if (run.getFailure() != null) {
+            alert = new Alert(Alert.AlertType.ERROR);
+            alert.setHeaderText("Sequence Stopped");
+            alert.setContentText(run.getFailure());
+        } else {
+            alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setHeaderText("Sequence Finished");
+            alert.setContentText(String.format("Completed %d of %d steps (worst step %.1f ms late).%nStep averages written to %s",
+                    run.getResults().size(), run.getProfile().getStepCount(),
+                    run.getMaxLatenessNanos() / 1e6, run.getSummaryPath()));
+        }
+        alert.setTitle("Test Sequence");
+        alert.showAndWait();
+    }
+
+    //Setpoints, dwell and averaging window; null if cancelled or invalid
+    private TestProfile showSequenceDialog(String mode, String defaultSetpoints){
+        TextField setpointsField = new TextField(defaultSetpoints);
+        TextField dwellField = new TextField("5");
+        TextField averageField = new TextField("2");
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.add(new Label(mode.equals("LAB") ? "RPM setpoints" : "Throttle steps (%)"), 0, 0);
+        grid.add(setpointsField, 1, 0);
+        grid.add(new Label("Dwell per step (s)"), 0, 1);
+        grid.add(dwellField, 1, 1);
+        grid.add(new Label("Average last (s)"), 0, 2);
+        grid.add(averageField, 1, 2);
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Test Sequence");
+        dialog.setHeaderText("Setpoints as a sweep (0-100/5) or a list (1000,2000,4000)");
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return null;
+        }
+        try {
+            return TestProfile.parse(mode, setpointsField.getText(),
+                    Double.parseDouble(dwellField.getText().trim()), Double.parseDouble(averageField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Test Sequence");
+            alert.setHeaderText("Invalid Sequence");
+            alert.setContentText(e.getMessage());
+            alert.showAndWait();
+            return null;
+        }
+    }
+
+    /**
+     * Called by the ingest thread after publishing. Converts the newest sample here,
+     * off the JavaFX thread, for the display timer to pick up on its next frame.
+     */
+    public void requestDisplayRefresh(){
+        if (!uiCursor.pollLatest(uiSample)) {
+            return;
+        }
+        lastRawThrust = uiSample.rawThrust;
+        lastRawCurrent = uiSample.currentV;
+        lastRawVoltage = uiSample.voltageV; //Saves the last raw value of the input voltage for calibration purposes
+        convert(uiSample, uiBack);
+        uiBack.convertedNanos = System.nanoTime();
+        latencyTrace.record(LatencyTrace.Stage.CONVERT, uiBack.convertedNanos - uiBack.receivedNanos);
+        uiBack = uiReady.getAndSet(uiBack);
+    }
+
+    /**
+     * Convert the newest sample for the all-stands overview (JavaFX thread).
+     * @return false if nothing new has arrived since the last call
+     */
+    public boolean pollLatestMeasurement(Measurement measurement){
+        if (overviewCursor == null) {
+            overviewCursor = serialController.getTelemetryRing().newCursor("overview");
+        }
+        if (!overviewCursor.pollLatest(overviewSample)) {
+            return false;
+        }
+        convert(overviewSample, measurement);
+        return true;
+    }
+
+    //Started once the display controls exist; runs on every JavaFX pulse (JavaFX thread)
+    private void startDisplayTimer(){
+        if (displayTimer != null) {
+            return;
+        }
+        displayTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastDisplayNanos >= displayIntervalNanos) {
+                    lastDisplayNanos = now;
+                    refreshDisplay();
+                }
+            }
+        };
+        displayTimer.start();
+    }
+
+    /**
+     * Set how often the display is refreshed (JavaFX thread).
+     * @param hz Refreshes per second, or 0 to refresh on every frame
+     */
+    public void setDisplayRefreshRate(int hz){
+        displayIntervalNanos = intervalNanos(hz);
+    }
+
+    private static long intervalNanos(int hz){
+        return hz > 0 ? 1_000_000_000L / hz : 0;
+    }
+
+    //JavaFX thread: take the newest converted measurement and show it
+    void refreshDisplay(){
+        uiFront = uiReady.getAndSet(uiFront);
+        //Getting an already shown buffer back means nothing new has been converted
+        if (uiFront.sequence > uiShownSequence) {
+            uiShownSequence = uiFront.sequence;
+            if (averagedDisplay) {
+                applyAverages(uiFront);
+            }
+            updateMeasurements(uiFront);
+            long shownNanos = System.nanoTime();
+            latencyTrace.record(LatencyTrace.Stage.DISPLAY, shownNanos - uiFront.convertedNanos);
+            latencyTrace.record(LatencyTrace.Stage.SCREEN, shownNanos - uiFront.readNanos);
+        }
+    }
+
+    //Replace the newest values with their window means, in the measurement's units (JavaFX thread)
+    private void applyAverages(Measurement measurement){
+        StreamingStats stats = pipeline.getStats();
+        if (stats.read(StreamingStats.Channel.THRUST, averageSummary)) {
+            measurement.thrust = measurement.thrustUnit.fromGrams(averageSummary.mean);
+        }
+        if (stats.read(StreamingStats.Channel.INCOMING_AIRSPEED, averageSummary)) {
+            measurement.incomingAirspeed = measurement.airspeedUnit.fromMetersPerSecond(averageSummary.mean);
+        }
+        if (stats.read(StreamingStats.Channel.WAKE_AIRSPEED, averageSummary)) {
+            measurement.wakeAirspeed = measurement.airspeedUnit.fromMetersPerSecond(averageSummary.mean);
+        }
+        if (stats.read(StreamingStats.Channel.CURRENT, averageSummary)) {
+            measurement.current = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.VOLTAGE, averageSummary)) {
+            measurement.voltage = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.RPM, averageSummary)) {
+            measurement.rpm = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.POWER, averageSummary)) {
+            measurement.power = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.EFFICIENCY, averageSummary)) {
+            measurement.efficiency = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.ADVANCE_RATIO, averageSummary)) {
+            measurement.advanceRatio = averageSummary.mean;
+        }
+        if (stats.read(StreamingStats.Channel.THRUST_COEFFICIENT, averageSummary)) {
+            measurement.thrustCoefficient = averageSummary.mean;
+        }
+    }
+
+    //Convert a raw sample with the current calibration and unit selections (any thread)
+    public void convert(Sample sample, Measurement measurement){
+        pipeline.convert(sample, measurement);
+    }
+
     public void resetAllFields(){
         thrustProperty.set("000.00");
         incomingAirspeedProperty.set("000.00");
         wakeAirspeedProperty.set("000.00");
         currentProperty.set("000.00");
         voltageProperty.set("000.00");
+        rpmProperty.set("00000");
+        powerProperty.set("000.0");
+        efficiencyProperty.set("0.00");
+        advanceRatioProperty.set("0.000");
+        thrustCoefficientProperty.set("0.0000");
         motorActiveProperty.set(false);
         loggerActiveProperty.set(false);
         tearThrust();
     }
 
     public void tearThrust(){
-        //Update zero offset to current raw value when taring
-        calibration.loadCellZeroOffset = lastRawThrust;
+        //Update zero offset to the recent average raw value when taring
+        double raw = getAveragedRaw(SampleStore.Channel.THRUST);
+        pipeline.editCalibration(c -> c.tare(raw));
+        pipeline.getStats().reset(); //Older thrust values were measured from the previous zero
         thrustProperty.set("000.00");
         holdEnabled = false;
         holdActiveProperty.set(false);
@@ -263,149 +564,73 @@ public class SharedElements{
         }
     }
 
-    private String convertRawToThrust(long rawValue) {
-        //Store raw value for calibration
-        lastRawThrust = rawValue;
-
-        //Apply zero offset and scaling
-        double zeroedValue = rawValue - calibration.loadCellZeroOffset;
-        double gramsForce = zeroedValue * calibration.loadCellScale;
-        
-        //Convert to selected units (lb, kg, or N)
-        String unit = thrustUnitCombo.getValue();
-        return switch (unit) {
-            case "lb" -> String.format("%.3f", gramsForce * 0.00220462);  // 1g ≈ 0.002 lb
-            case "kg" -> String.format("%.3f", gramsForce * 0.001);       // 1g = 0.001 kg
-            case "N" -> String.format("%.3f", gramsForce * 0.00981);      // 1g ≈ 0.01 N
-            default -> String.format("%.0f", gramsForce);                 // 1g for grams
-        };
+    //Raw load cell reading to the selected thrust unit
+    double convertRawToThrust(long rawValue) {
+        return pipeline.getThrustUnit().fromGrams(pipeline.getCalibration().thrustGrams(rawValue));
     }
-    
 
-    private String convertVoltageToAirspeed(float voltage, boolean isIncoming) {
-        final double SENSOR_SENSITIVITY = 0.270; //V/kPa
-        final double QUIESCENT_VOLTAGE = 0.283;  //Update this after measuring
+    //Pitot sensor voltage to the selected airspeed unit
+    double convertVoltageToAirspeed(float voltage, boolean isIncoming) {
+        return pipeline.getAirspeedUnit().fromMetersPerSecond(pipeline.getCalibration().airspeedMetersPerSecond(voltage, isIncoming));
+    }
 
-        //Remove quiescent voltage 
-        double differentialVoltage = voltage - QUIESCENT_VOLTAGE;
-        //Clamp negative values to 0 since sensors are unidirectional
-        if (differentialVoltage < 0) differentialVoltage = 0;
-        
-        //Convert voltage to pressure:
-        //1. Convert to kPa using sensitivity (V / (V/kPa) = kPa)
-        double pressureKPa = differentialVoltage / SENSOR_SENSITIVITY;
-        //2. Convert kPa to Pa
-        double pressurePa = pressureKPa * 1000;
-        
-        //Apply installation calibration factor
-        double calibrationFactor = isIncoming ? 
-            calibration.incomingPitotCalibration : calibration.wakePitotCalibration;
-        pressurePa *= calibrationFactor;
-        
-        //Calculate airspeed using Bernoulli's equation
-        double airDensity = 1.225; //kg/m³ at sea level, 15°C
-        double speedMS = Math.sqrt(2 * pressurePa / airDensity);
-        
-        //Convert to selected units
-        String unit = incomingAirspeedUnitCombo.getValue();
-        double convertedSpeed = switch (unit) {
-            case "mph" -> speedMS * 2.23694;
-            case "ft/s" -> speedMS * 3.28084;
-            case "kph" -> speedMS * 3.6;
-            case "m/s" -> speedMS;
-            default -> speedMS;
-        };
-        
-        return String.format("%.2f", convertedSpeed);
+    double convertVoltageToCurrent(float voltage) {
+        return pipeline.getCalibration().currentAmps(voltage);
     }
 
-    /**
-     * Convert voltage sensor reading to current
-     * @param voltage Raw voltage from current sensor
-     * @return Formatted current string in amperes
-     */
-    private String convertVoltageToCurrent(float voltage) {
-        // ACS758ECB-200U specifications:
-        // Sensitivity: 20mV/A = 0.02V/A
-        // Quiescent voltage (zero current): 0.6V
+    double convertVoltageToVoltage(float voltage) {
+        return pipeline.getCalibration().voltageVolts(voltage);
+    }
 
-        // Current = (Vout - Vq) / sensitivity
-        // Where: Vout = measured voltage
-        //        Vq = quiescent voltage (0.6V - Nominal)
-        double current = (voltage - calibration.currentSensorZeroOffset) / calibration.currentSensorSensitivity;
+    //Update all displayed measurements from a converted measurement (JavaFX thread)
+    public void updateMeasurements(Measurement measurement) {
+        //Update UI fields only if hold is disabled
+        if (!holdEnabled) {
+            setIfChanged(thrustProperty, thrustFormat.format(measurement.thrust, measurement.thrustUnit.getDisplayDecimals()));
+            setIfChanged(incomingAirspeedProperty, incomingAirspeedFormat.format(measurement.incomingAirspeed, 2));
+            setIfChanged(wakeAirspeedProperty, wakeAirspeedFormat.format(measurement.wakeAirspeed, 2));
+            setIfChanged(currentProperty, currentFormat.format(measurement.current, 2));
+            setIfChanged(voltageProperty, voltageFormat.format(measurement.voltage, 2));
+            setIfChanged(rpmProperty, rpmFormat.format(measurement.rpm, 0));
+            setIfChanged(powerProperty, powerFormat.format(measurement.power, 1));
+            setIfChanged(efficiencyProperty, efficiencyFormat.format(measurement.efficiency, 2));
+            setIfChanged(advanceRatioProperty, advanceRatioFormat.format(measurement.advanceRatio, 3));
+            setIfChanged(thrustCoefficientProperty, thrustCoefficientFormat.format(measurement.thrustCoefficient, 4));
+        }
+    }
 
-        return String.format("%.2f", current);
+    //Prop diameter for the advance ratio and thrust coefficient, in inches as props are sold
+    public double getPropDiameterInches() {
+        return pipeline.getPropDiameterMeters() / DerivedChannels.METERS_PER_INCH;
     }
 
     /**
-     * Convert voltage sensor reading to actual voltage
-     * @param voltage Raw voltage from voltage divider
-     * @return Formatted voltage string
+     * @param inches 0 to clear
+     * @throws IllegalArgumentException if negative or not a number
      */
-    private String convertVoltageToVoltage(float voltage) {
-        // Convert based on voltage divider ratio
-        double actualVoltage = voltage / calibration.voltageDividerRatio;
-
-        return String.format("%.2f", actualVoltage);
+    public void setPropDiameterInches(double inches) {
+        pipeline.setPropDiameterMeters(inches * DerivedChannels.METERS_PER_INCH);
     }
 
-    
-    //Update all measurements with converted values
-    public void updateMeasurements(long rawThrust, float incomingPitotV, float wakePitotV, float currentV, float voltageV, float rpm) {
-        //System.out.println("Raw Current Value: " + currentV);  // Debug
-        this.lastRawThrust = rawThrust;
-        this.lastRawCurrent = currentV;
-        lastRawVoltage = voltageV; //Saves the last raw value of the input voltage for calibration purposes
-        
-        //Convert all values
-        String thrustValue = convertRawToThrust(rawThrust);
-        String incomingSpeed = convertVoltageToAirspeed(incomingPitotV, true);
-        String wakeSpeed = convertVoltageToAirspeed(wakePitotV, false);
-        String currentValue = convertVoltageToCurrent(currentV);
-        String voltageValue = convertVoltageToVoltage(voltageV);
-
-        //Update UI fields only if hold is disabled
-        if (!holdEnabled) {
-            thrustProperty.set(thrustValue);
-            incomingAirspeedProperty.set(incomingSpeed);
-            wakeAirspeedProperty.set(wakeSpeed);
-            currentProperty.set(currentValue);
-            voltageProperty.set(voltageValue);
-        }
-
-        //Log data to CSV when toggle is enabled
-        if (loggerActiveProperty.get()) {
-            dataLogger.logData(
-                thrustValue,
-                thrustUnitCombo.getValue(),
-                incomingSpeed,
-                wakeSpeed, 
-                incomingAirspeedUnitCombo.getValue(),
-                currentValue,
-                voltageValue,
-                bladeCountCombo.getValue(),
-                String.format("%.1f", rpm));
+    //Skip the set, and the layout and CSS pass it would trigger, when the text is the same
+    private static void setIfChanged(StringProperty property, String text) {
+        if (!text.equals(property.get())) {
+            property.set(text);
         }
     }
 
     public void setIncomingPitotCalibration(double calibration) {
-        this.calibration.incomingPitotCalibration = calibration;
+        pipeline.editCalibration(c -> c.incomingPitotCalibration = calibration);
     }
 
     public void setWakePitotCalibration(double calibration) {
-        this.calibration.wakePitotCalibration = calibration;
+        pipeline.editCalibration(c -> c.wakePitotCalibration = calibration);
     }
 
     //Save calibration to a local file
     public void saveCalibration(String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            writer.println("loadcell_offset=" + calibration.loadCellZeroOffset);
-            writer.println("loadcell_scale=" + calibration.loadCellScale);
-            writer.println("incoming_pitot=" + calibration.incomingPitotCalibration);
-            writer.println("wake_pitot=" + calibration.wakePitotCalibration);
-            writer.println("current_zero=" + calibration.currentSensorZeroOffset);
-            writer.println("current_sensitivity=" + calibration.currentSensorSensitivity);
-            writer.println("voltage=" + calibration.voltageDividerRatio);
+        try {
+            pipeline.saveCalibration(filename);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -413,41 +638,31 @@ public class SharedElements{
 
     //Load saved calibration data from a file
     public void loadCalibration(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("=");
-                if (parts.length == 2) {
-                    double value = Double.parseDouble(parts[1]);
-                    switch (parts[0]) {
-                        case "loadcell_offset" -> calibration.loadCellZeroOffset = value;
-                        case "loadcell_scale" -> calibration.loadCellScale = value;
-                        case "incoming_pitot" -> calibration.incomingPitotCalibration = value;
-                        case "wake_pitot" -> calibration.wakePitotCalibration = value;
-                        case "current_zero" -> calibration.currentSensorZeroOffset = value;
-                        case "current_sensitivity" -> calibration.currentSensorSensitivity = value;
-                        case "voltage" -> calibration.voltageDividerRatio = value;
-                    }
-                }
-            }
+        try {
+            pipeline.loadCalibration(filename);
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Calibration not loaded, " + e.getMessage());
         }
     }
 
     //Calibration helper method
-    public void calibratePitotSensor(boolean isIncoming, double knownAirspeed, float measuredVoltage) {
-        double airDensity = 1.225; // kg/m³
-        double pressure = 0.5 * airDensity * knownAirspeed * knownAirspeed;
-        double calibrationFactor = pressure / measuredVoltage;
+    public void calibratePitotSensor(boolean isIncoming, double knownAirspeed, double measuredVoltage) {
+        double calibrationFactor = Calibration.pitotCalibrationFactor(measuredVoltage, knownAirspeed);
         
         if (isIncoming) {
-            calibration.incomingPitotCalibration = calibrationFactor;
+            pipeline.editCalibration(c -> c.incomingPitotCalibration = calibrationFactor);
         } else {
-            calibration.wakePitotCalibration = calibrationFactor;
+            pipeline.editCalibration(c -> c.wakePitotCalibration = calibrationFactor);
         }
     }
 
+    //Average of a raw channel over the last second, for calibration (see StandPipeline)
+    public double getAveragedRaw(SampleStore.Channel channel){
+        return pipeline.getAveragedRaw(channel);
+    }
+
     public float getRawVoltage(){
         return lastRawVoltage;
     }
@@ -465,61 +680,65 @@ public class SharedElements{
     }
 
     public double getCurrentSensorZeroOffset() {
-        return calibration.currentSensorZeroOffset;
+        return pipeline.getCalibration().currentSensorZeroOffset;
     }
     
     public void setCurrentSensorZeroOffset(double offset) {
-        this.calibration.currentSensorZeroOffset = offset;
+        pipeline.editCalibration(c -> c.currentSensorZeroOffset = offset);
     }
 
+    //Also re-zeroes a multi-point thrust curve at this reading
     public void setLoadCellZeroOffset(double offset){
-        this.calibration.loadCellZeroOffset = offset;
+        pipeline.editCalibration(c -> c.tare(offset));
     }
 
     public void setLoadCellScale(double scale){
-        this.calibration.loadCellScale = scale;
+        pipeline.editCalibration(c -> c.loadCellScale = scale);
     }
 
     public double getLoadCellZeroOffset(){
-        return calibration.loadCellZeroOffset;
+        return pipeline.getCalibration().loadCellZeroOffset;
     }
 
     public double getLoadCellScale(){
-        return calibration.loadCellScale;
+        return pipeline.getCalibration().loadCellScale;
     }
 
     public double getIncomingPitotCalibration() {
-        return calibration.incomingPitotCalibration;
+        return pipeline.getCalibration().incomingPitotCalibration;
     }
 
     public double getWakePitotCalibration() {
-        return calibration.wakePitotCalibration;
+        return pipeline.getCalibration().wakePitotCalibration;
     }
 
     public double getCurrentSensorSensitivity() {
-        return calibration.currentSensorSensitivity;
+        return pipeline.getCalibration().currentSensorSensitivity;
     }
 
     public double getVoltageDividerRatio() {
-        return calibration.voltageDividerRatio;
+        return pipeline.getCalibration().voltageDividerRatio;
     }
 
     public void setCurrentSensorSensitivity(double sensitivity) {
-        this.calibration.currentSensorSensitivity = sensitivity;
+        pipeline.editCalibration(c -> c.currentSensorSensitivity = sensitivity);
     }
 
     public void setVoltageDividerRatio(double ratio) {
-        this.calibration.voltageDividerRatio = ratio;
+        pipeline.editCalibration(c -> c.voltageDividerRatio = ratio);
+    }
+
+    //Multi-point fit in use on a channel, null if its single-point constants apply
+    public CalibrationCurve getCalibrationCurve(SampleStore.Channel channel) {
+        return pipeline.getCalibration().getCurve(channel);
+    }
+
+    public void setCalibrationCurve(SampleStore.Channel channel, CalibrationCurve curve) {
+        pipeline.editCalibration(c -> c.setCurve(channel, curve));
     }
 
     //Reset calibration to defaults
     public void resetCalibration() {
-        calibration.loadCellZeroOffset = CalibrationConstants.DEFAULT_LOADCELL_ZERO_OFFSET;
-        calibration.loadCellScale = CalibrationConstants.DEFAULT_LOADCELL_SCALE;
-        calibration.incomingPitotCalibration = CalibrationConstants.DEFAULT_INCOMING_PITOT;
-        calibration.wakePitotCalibration = CalibrationConstants.DEFAULT_WAKE_PITOT;
-        calibration.currentSensorZeroOffset = CalibrationConstants.DEFAULT_CURRENT_ZERO_OFFSET;
-        calibration.currentSensorSensitivity = CalibrationConstants.DEFAULT_CURRENT_SENSITIVITY;
-        calibration.voltageDividerRatio = CalibrationConstants.DEFAULT_VOLTAGE_RATIO;
+        pipeline.resetCalibration();
     }
 }
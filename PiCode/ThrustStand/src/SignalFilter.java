@@ -0,0 +1,246 @@
+/*  Title:  SignalFilter.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ChannelFilters.java
+ *  Description: Digital filters for one telemetry channel, written as a spec such as
+ *  "median:5,lowpass:4" and applied left to right:
+ *      lowpass:<Hz>    2nd order Butterworth low-pass (biquad) with the given cutoff
+ *      average:<n>     moving average of the last n samples (FIR)
+ *      median:<n>      median of the last n samples (n odd), rejects single-sample spikes
+ *      none            pass the samples through unchanged
+ *  Coefficients and state arrays are set up when the spec is parsed; apply() does no
+ *  allocation. The first sample primes the state as if the input had been steady, so
+ *  a new filter does not ramp up from zero. Each instance filters one channel on one thread.
+ */
+import java.util.Arrays;
+
+public abstract class SignalFilter {
+    public static final int MAX_AVERAGE_SAMPLES = 4096;
+    public static final int MAX_MEDIAN_SAMPLES = 99;
+
+    //Filter the next sample and return the output
+    public abstract double apply(double x);
+
+    //Forget the history; the next sample primes the state again
+    public abstract void reset();
+
+    /**
+     * Parse a filter spec.
+     * @param sampleRateHz Telemetry rate, used to place low-pass cutoffs
+     * @return The filter, or null for "none" or an empty spec
+     * @throws IllegalArgumentException if the spec is malformed or a cutoff is out of range
+     */
+    public static SignalFilter parse(String spec, double sampleRateHz) {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("none")) {
+            return null;
+        }
+        String[] parts = spec.split(",");
+        SignalFilter[] stages = new SignalFilter[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            stages[i] = parseStage(parts[i].trim(), sampleRateHz);
+        }
+        return stages.length == 1 ? stages[0] : new Cascade(stages);
+    }
+
+    private static SignalFilter parseStage(String stage, double sampleRateHz) {
+        String[] kv = stage.split(":", 2);
+        if (kv.length != 2) {
+            throw new IllegalArgumentException("Expected type:value, got \"" + stage + "\"");
+        }
+        String type = kv[0].trim().toLowerCase();
+        String value = kv[1].trim();
+        try {
+            switch (type) {
+                case "lowpass": {
+                    double cutoff = Double.parseDouble(value);
+                    if (!(cutoff > 0) || cutoff >= sampleRateHz / 2) {
+                        throw new IllegalArgumentException("Low-pass cutoff must be between 0 and "
+                                + sampleRateHz / 2 + " Hz (half the sample rate): " + value);
+                    }
+                    return new Biquad(cutoff, sampleRateHz);
+                }
+                case "average": {
+                    int n = Integer.parseInt(value);
+                    if (n < 1 || n > MAX_AVERAGE_SAMPLES) {
+                        throw new IllegalArgumentException("Average length must be 1 to " + MAX_AVERAGE_SAMPLES + ": " + value);
+                    }
+                    return new MovingAverage(n);
+                }
+                case "median": {
+                    int n = Integer.parseInt(value);
+                    if (n < 1 || n > MAX_MEDIAN_SAMPLES || n % 2 == 0) {
+                        throw new IllegalArgumentException("Median length must be odd, 1 to " + MAX_MEDIAN_SAMPLES + ": " + value);
+                    }
+                    return new Median(n);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown filter \"" + type + "\" (use lowpass, average or median)");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in \"" + stage + "\"");
+        }
+    }
+
+    //Butterworth low-pass, transposed direct form II
+    static final class Biquad extends SignalFilter {
+        private final double b0, b1, b2, a1, a2;
+        private double z1, z2;
+        private boolean primed;
+
+        Biquad(double cutoffHz, double sampleRateHz) {
+            //RBJ audio EQ cookbook, Q = 1/sqrt(2)
+            double w0 = 2 * Math.PI * cutoffHz / sampleRateHz;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / Math.sqrt(2);
+            double a0 = 1 + alpha;
+            b0 = (1 - cos) / 2 / a0;
+            b1 = (1 - cos) / a0;
+            b2 = b0;
+            a1 = -2 * cos / a0;
+            a2 = (1 - alpha) / a0;
+        }
+
+        @Override
+        public double apply(double x) {
+            if (!primed) {
+                //Steady state for a constant input x (unity DC gain)
+                z1 = x * (1 - b0);
+                z2 = x * (b2 - a2);
+                primed = true;
+            }
+            double y = b0 * x + z1;
+            z1 = b1 * x - a1 * y + z2;
+            z2 = b2 * x - a2 * y;
+            return y;
+        }
+
+        @Override
+        public void reset() {
+            primed = false;
+        }
+    }
+
+    //Running sum over a ring of the last n inputs
+    static final class MovingAverage extends SignalFilter {
+        private final double[] window;
+        private int next;
+        private double sum;
+        private boolean primed;
+
+        MovingAverage(int n) {
+            window = new double[n];
+        }
+
+        @Override
+        public double apply(double x) {
+            if (!primed) {
+                Arrays.fill(window, x);
+                sum = x * window.length;
+                primed = true;
+            }
+            sum += x - window[next];
+            window[next] = x;
+            if (++next == window.length) {
+                next = 0;
+                //Re-add from scratch once per lap so rounding cannot build up
+                double exact = 0;
+                for (double v : window) {
+                    exact += v;
+                }
+                sum = exact;
+            }
+            return sum / window.length;
+        }
+
+        @Override
+        public void reset() {
+            primed = false;
+            next = 0;
+        }
+    }
+
+    //Ring of the last n inputs plus the same values kept sorted; each sample is one remove and one insert
+    static final class Median extends SignalFilter {
+        private final double[] window;
+        private final double[] sorted;
+        private int next;
+        private boolean primed;
+
+        Median(int n) {
+            window = new double[n];
+            sorted = new double[n];
+        }
+
+        @Override
+        public double apply(double x) {
+            if (!primed) {
+                Arrays.fill(window, x);
+                Arrays.fill(sorted, x);
+                primed = true;
+            }
+            double oldest = window[next];
+            window[next] = x;
+            if (++next == window.length) {
+                next = 0;
+            }
+
+            //Drop the oldest value, then slide the new one into place
+            int i = indexOf(oldest);
+            int n = sorted.length;
+            while (i > 0 && sorted[i - 1] > x) {
+                sorted[i] = sorted[i - 1];
+                i--;
+            }
+            while (i < n - 1 && sorted[i + 1] < x) {
+                sorted[i] = sorted[i + 1];
+                i++;
+            }
+            sorted[i] = x;
+            return sorted[n / 2];
+        }
+
+        private int indexOf(double value) {
+            int lo = 0;
+            int hi = sorted.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        @Override
+        public void reset() {
+            primed = false;
+            next = 0;
+        }
+    }
+
+    //Stages applied in order
+    static final class Cascade extends SignalFilter {
+        private final SignalFilter[] stages;
+
+        Cascade(SignalFilter[] stages) {
+            this.stages = stages;
+        }
+
+        @Override
+        public double apply(double x) {
+            for (SignalFilter stage : stages) {
+                x = stage.apply(x);
+            }
+            return x;
+        }
+
+        @Override
+        public void reset() {
+            for (SignalFilter stage : stages) {
+                stage.reset();
+            }
+        }
+    }
+}
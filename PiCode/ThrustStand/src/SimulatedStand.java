@@ -0,0 +1,394 @@
+/*  Title:  SimulatedStand.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: In-process stand-in for the Teensy and the motor/prop on the stand.
+ *  Accepts the same commands as ThrustStand.ino and answers with telemetry in the
+ *  same text or binary format, at any rate up to several kHz, so the host can be
+ *  exercised and profiled without hardware.
+ *  Model: RPM follows the ESC throttle with a first order lag, thrust goes with RPM²,
+ *  current with RPM³, and the battery sags under load, which in turn limits RPM.
+ *  Sensor outputs are run back through the default calibration and the 12-bit ADC.
+ *  Telemetry is generated lazily on the reading thread when it falls due, so no
+ *  extra thread is needed. Commands may be written from any thread.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+public class SimulatedStand implements Transport {
+    public static final String NAME = "Simulated Stand";
+    public static final int DEFAULT_RATE_HZ = 50;   //Matches SEND_INTERVAL on the Teensy
+
+    private static final long READ_TIMEOUT_NANOS = 100_000_000L;
+    //Give up on a backlog longer than this instead of bursting it all out
+    private static final long MAX_BACKLOG_NANOS = 1_000_000_000L;
+    private static final int MAX_RECORD_BYTES = 64;
+
+    //Motor and prop
+    private static final double MAX_RPM = 12000;            //Full throttle at nominal voltage
+    private static final double RPM_TIME_CONSTANT = 0.2;    //Seconds
+    private static final double THRUST_PER_RPM2 = 1.0e-5;   //Grams-force per RPM²
+    private static final double CURRENT_PER_RPM3 = 2.0e-11; //Amps per RPM³
+    private static final double IDLE_CURRENT = 0.3;         //Amps with the ESC armed
+    private static final double WAKE_SPEED_PER_RPM = 0.0022; //m/s per RPM
+    private static final int PROP_BLADES = 2;               //Blades actually on the simulated prop
+
+    //Battery
+    private static final double BATTERY_VOLTS = 12.6;
+    private static final double BATTERY_RESISTANCE = 0.04;  //Ohms
+
+    //Teensy ADC and LAB mode RPM loop, as in ThrustStand.ino
+    private static final double ADC_VOLTS = 3.3;
+    private static final int ADC_MAX = 4095;
+    private static final double PID_INTERVAL = 0.05;
+    private static final double KP = 0.1, KI = 0.05, KD = 0.02;
+
+    private final long periodNanos;
+    private final double periodSeconds;
+    private final Calibration sensors = new Calibration();
+    private final Random noise = new Random(1);
+    private final Queue<String> commands = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer frame = ByteBuffer.allocate(BinaryFrameDecoder.FRAME_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final Queue<Long> pendingAcks = new ArrayDeque<>();   //Reading thread
+    private final Queue<Long> pendingNaks = new ArrayDeque<>();   //Reading thread
+    private volatile boolean open;
+
+    //Firmware state, owned by the reading thread
+    private boolean motorEnabled;
+    private String mode = "NONE";
+    private int throttle;
+    private double targetRPM;
+    private double integral;
+    private double lastError;
+    private double sincePID;
+    private int numBlades = 2;
+    private boolean binaryMode;
+    private boolean pendingTextMarker;
+    private boolean pendingBinaryMarker;
+    private long frameSeq;
+    private long startNanos;
+    private long nextSampleNanos;
+
+    //Physical state
+    private double rpm;
+    private double batteryVolts = BATTERY_VOLTS;
+
+    public SimulatedStand() {
+        this(DEFAULT_RATE_HZ);
+    }
+
+    public SimulatedStand(int rateHz) {
+        if (rateHz <= 0 || rateHz > 100_000) {
+            throw new IllegalArgumentException("Simulated telemetry rate out of range: " + rateHz);
+        }
+        periodNanos = 1_000_000_000L / rateHz;
+        periodSeconds = periodNanos / 1e9;
+    }
+
+    @Override
+    public boolean open() {
+        startNanos = System.nanoTime();
+        nextSampleNanos = startNanos + periodNanos;
+        open = true;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int write(byte[] bytes, int length) {
+        if (!open) {
+            return -1;
+        }
+        for (String line : new String(bytes, 0, length, StandardCharsets.US_ASCII).split("\n")) {
+            if (!line.isBlank()) {
+                commands.add(line.trim());
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (!open) {
+            return -1;
+        }
+        applyCommands();
+        long now = System.nanoTime();
+        if (nextSampleNanos - now > 0) {
+            LockSupport.parkNanos(Math.min(nextSampleNanos - now, READ_TIMEOUT_NANOS));
+            applyCommands();
+            now = System.nanoTime();
+        }
+        if (now - nextSampleNanos > MAX_BACKLOG_NANOS) {
+            //Reader stalled; like a real UART, what was not read in time is gone
+            nextSampleNanos = now;
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(buffer, offset, length);
+        if (pendingTextMarker && out.remaining() >= 2) {
+            out.put((byte) 0).put((byte) '\n');
+            pendingTextMarker = false;
+        }
+        if (pendingBinaryMarker && out.remaining() >= 2) {
+            out.put((byte) '\n').put((byte) 0);
+            pendingBinaryMarker = false;
+        }
+        while (!pendingAcks.isEmpty() && out.remaining() >= MAX_RECORD_BYTES) {
+            long id = pendingAcks.poll();
+            if (binaryMode) {
+                putAckFrame(out, 0x02, id);
+            } else {
+                out.put(("ACK:" + id + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        while (!pendingNaks.isEmpty() && out.remaining() >= MAX_RECORD_BYTES) {
+            long id = pendingNaks.poll();
+            if (binaryMode) {
+                putAckFrame(out, 0x03, id);
+            } else {
+                out.put(("NAK:" + id + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        while (nextSampleNanos - now <= 0 && out.remaining() >= MAX_RECORD_BYTES) {
+            step(periodSeconds);
+            if (binaryMode) {
+                putFrame(out, nextSampleNanos);
+            } else {
+                putLine(out);
+            }
+            nextSampleNanos += periodNanos;
+        }
+        return out.position() - offset;
+    }
+
+    //Same handling as processMSG() in ThrustStand.ino
+    private void applyCommands() {
+        String command;
+        while ((command = commands.poll()) != null) {
+            //Optional "@id" suffix, acknowledged once the command has been applied
+            long ackId = -1;
+            int at = command.indexOf('@');
+            if (at >= 0) {
+                try {
+                    ackId = Long.parseLong(command.substring(at + 1).trim());
+                } catch (NumberFormatException e) {
+                    //Like toInt() on the Teensy, a bad id is just not acknowledged
+                }
+                command = command.substring(0, at);
+            }
+            int colon = command.indexOf(':');
+            boolean applied = colon >= 0 && apply(command.substring(0, colon).trim(), command.substring(colon + 1).trim());
+            if (ackId >= 0) {
+                (applied ? pendingAcks : pendingNaks).add(ackId);
+            }
+        }
+    }
+
+    //True if the command was recognised and applied; the rest get a NAK
+    private boolean apply(String cmd, String value) {
+        try {
+            switch (cmd) {
+                case "MOTOR" -> {
+                    if (value.equals("ON")) {
+                        motorEnabled = true;
+                    } else if (value.equals("OFF")) {
+                        motorEnabled = false;
+                        throttle = 0;
+                    } else {
+                        return false;
+                    }
+                }
+                case "THR" -> {
+                    if (!motorEnabled) {
+                        return false;
+                    }
+                    throttle = clamp(Integer.parseInt(value), 0, 100);
+                }
+                case "MODE" -> {
+                    mode = value;
+                    integral = 0;
+                    lastError = 0;
+                    targetRPM = 0;
+                    throttle = 0;
+                }
+                case "BLADE", "BLAD" -> {
+                    int blades = Integer.parseInt(value);
+                    if (blades <= 0) {
+                        return false;
+                    }
+                    numBlades = blades;
+                }
+                case "RPM" -> {
+                    if (!mode.equals("LAB")) {
+                        return false;
+                    }
+                    targetRPM = Double.parseDouble(value);
+                }
+                case "PROTO" -> {
+                    if (value.equals("BIN")) {
+                        pendingBinaryMarker = true;
+                        pendingTextMarker = false;
+                        frameSeq = 0;
+                        binaryMode = true;
+                    } else if (value.equals("TEXT")) {
+                        pendingTextMarker = true;
+                        pendingBinaryMarker = false;
+                        binaryMode = false;
+                    } else {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            //The Teensy's toInt() would read junk as 0; rejecting it is close enough here
+            return false;
+        }
+    }
+
+    //Advance the motor model by dt seconds
+    private void step(double dt) {
+        if (mode.equals("LAB") && motorEnabled && targetRPM > 0) {
+            sincePID += dt;
+            if (sincePID >= PID_INTERVAL) {
+                double error = targetRPM - measuredRPM();
+                integral = Math.max(-20, Math.min(20, integral + error * sincePID));
+                double derivative = (error - lastError) / sincePID;
+                throttle = clamp((int) (KP * error + KI * integral + KD * derivative), 0, 100);
+                lastError = error;
+                sincePID = 0;
+            }
+        }
+        double drive = motorEnabled ? throttle / 100.0 : 0;
+        double steadyRPM = MAX_RPM * drive * (batteryVolts / BATTERY_VOLTS);
+        rpm += (steadyRPM - rpm) * (1 - Math.exp(-dt / RPM_TIME_CONSTANT));
+        batteryVolts = BATTERY_VOLTS - BATTERY_RESISTANCE * currentAmps();
+    }
+
+    private double currentAmps() {
+        return (motorEnabled ? IDLE_CURRENT : 0) + CURRENT_PER_RPM3 * rpm * rpm * rpm;
+    }
+
+    //The Teensy counts blade passes, so a wrong blade count scales the reading
+    private double measuredRPM() {
+        return rpm * PROP_BLADES / numBlades;
+    }
+
+    private long loadCellCounts() {
+        double grams = THRUST_PER_RPM2 * rpm * rpm;
+        return Math.round(sensors.loadCellZeroOffset + grams / sensors.loadCellScale + noise.nextGaussian() * 20);
+    }
+
+    private int pitotCounts(double speed) {
+        double pressureKPa = 0.5 * Calibration.AIR_DENSITY * speed * speed / 1000;
+        return adcCounts(Calibration.PITOT_QUIESCENT_VOLTAGE + pressureKPa * Calibration.PITOT_SENSOR_SENSITIVITY);
+    }
+
+    private int adcCounts(double volts) {
+        long counts = Math.round(volts / ADC_VOLTS * ADC_MAX + noise.nextGaussian());
+        return (int) Math.max(0, Math.min(ADC_MAX, counts));
+    }
+
+    private static double countsToVolts(int counts) {
+        return counts * ADC_VOLTS / ADC_MAX;
+    }
+
+    //CSV line as packageData() formats it
+    private void putLine(ByteBuffer out) {
+        CsvRowEncoder.putFixed(out, countsToVolts(pitotCounts(0)), 3);
+        out.put((byte) ',');
+        CsvRowEncoder.putFixed(out, countsToVolts(pitotCounts(WAKE_SPEED_PER_RPM * rpm)), 3);
+        out.put((byte) ',');
+        CsvRowEncoder.putFixed(out, countsToVolts(currentSensorCounts()), 3);
+        out.put((byte) ',');
+        CsvRowEncoder.putFixed(out, countsToVolts(voltageSensorCounts()), 3);
+        out.put((byte) ',');
+        CsvRowEncoder.putLong(out, loadCellCounts());
+        out.put((byte) ',');
+        CsvRowEncoder.putFixed(out, measuredRPM(), 1);
+        out.put((byte) '\r').put((byte) '\n');
+    }
+
+    //COBS encoded TelemetryFrame as sendFrame() writes it
+    private void putFrame(ByteBuffer out, long sampleNanos) {
+        frame.clear();
+        frame.put((byte) 0x01);
+        frame.putInt((int) frameSeq++);
+        frame.putInt((int) ((sampleNanos - startNanos) / 1000));
+        frame.putShort((short) pitotCounts(0));
+        frame.putShort((short) pitotCounts(WAKE_SPEED_PER_RPM * rpm));
+        frame.putShort((short) currentSensorCounts());
+        frame.putShort((short) voltageSensorCounts());
+        frame.putInt((int) loadCellCounts());
+        frame.putFloat((float) measuredRPM());
+        byte[] raw = frame.array();
+        frame.putShort((short) BinaryFrameDecoder.crc16(raw, 0, BinaryFrameDecoder.FRAME_LENGTH - 2));
+        cobsEncode(raw, BinaryFrameDecoder.FRAME_LENGTH, out);
+        out.put((byte) 0);
+    }
+
+    //COBS encoded AckFrame as sendAck() writes it on the binary link; type 0x02 ACK, 0x03 NAK
+    private void putAckFrame(ByteBuffer out, int type, long id) {
+        frame.clear();
+        frame.put((byte) type);
+        frame.putInt((int) id);
+        byte[] raw = frame.array();
+        frame.putShort((short) BinaryFrameDecoder.crc16(raw, 0, BinaryFrameDecoder.ACK_FRAME_LENGTH - 2));
+        cobsEncode(raw, BinaryFrameDecoder.ACK_FRAME_LENGTH, out);
+        out.put((byte) 0);
+    }
+
+    private int currentSensorCounts() {
+        return adcCounts(sensors.currentSensorZeroOffset + currentAmps() * sensors.currentSensorSensitivity);
+    }
+
+    private int voltageSensorCounts() {
+        return adcCounts(batteryVolts * sensors.voltageDividerRatio);
+    }
+
+    //COBS for frames shorter than 254 bytes: one overhead byte, no trailing delimiter
+    private static void cobsEncode(byte[] src, int length, ByteBuffer out) {
+        int codeIndex = out.position();
+        out.put((byte) 0);
+        int code = 1;
+        for (int i = 0; i < length; i++) {
+            if (src[i] == 0) {
+                out.put(codeIndex, (byte) code);
+                codeIndex = out.position();
+                out.put((byte) 0);
+                code = 1;
+            } else {
+                out.put(src[i]);
+                code++;
+            }
+        }
+        out.put(codeIndex, (byte) code);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,117 @@
+/*  Title:  StandOverview.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ThrustStand.java
+ *  Description: Controller class for the all-stands overview. Shows the newest reading
+ *  from every stand side by side, converted with each stand's own calibration and units.
+ *  Referenced by StandOverview.fxml
+ */
+import javafx.animation.AnimationTimer;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+
+import java.util.List;
+
+public class StandOverview extends BaseController {
+    @FXML private GridPane standGrid;
+    @FXML private Button returnToMainBtn;
+
+    private static final String[] HEADERS = {
+        "Stand", "Link", "Thrust", "Incoming", "Wake", "Current (A)", "Voltage (V)", "RPM", "Logging", ""
+    };
+    private static final long REFRESH_INTERVAL_NANOS = 100_000_000L; //10 Hz is plenty for a summary
+
+    private List<StandRegistry.Stand> stands;
+    private Measurement[] latest;
+    private Label[][] cells;
+    private AnimationTimer refreshTimer;
+    private long lastRefreshNanos;
+
+    @FXML
+    public void initialize() {
+        refreshTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastRefreshNanos >= REFRESH_INTERVAL_NANOS) {
+                    lastRefreshNanos = now;
+                    refresh();
+                }
+            }
+        };
+    }
+
+    //Rebuilt on every visit since stands may have been added while the scene was cached
+    @Override
+    protected void onActivate() {
+        standGrid.getChildren().clear();
+        stands = StandRegistry.getInstance().getStands();
+        latest = new Measurement[stands.size()];
+        cells = new Label[stands.size()][HEADERS.length - 1];
+
+        for (int column = 0; column < HEADERS.length; column++) {
+            standGrid.add(new Label(HEADERS[column]), column, 0);
+        }
+        for (int row = 0; row < stands.size(); row++) {
+            StandRegistry.Stand stand = stands.get(row);
+            latest[row] = new Measurement();
+            for (int column = 0; column < cells[row].length; column++) {
+                cells[row][column] = new Label("-");
+                standGrid.add(cells[row][column], column, row + 1);
+            }
+            cells[row][0].setText(stand.getName());
+
+            //Bind the next scene to this stand
+            Button select = new Button(stand == StandRegistry.getInstance().getSelected() ? "Selected" : "Select");
+            select.setOnAction(e -> selectStand(stand));
+            standGrid.add(select, HEADERS.length - 1, row + 1);
+        }
+        refreshTimer.start();
+        refresh();
+    }
+
+    //JavaFX thread: pull the newest sample from each stand's ring
+    private void refresh() {
+        for (int row = 0; row < stands.size(); row++) {
+            StandRegistry.Stand stand = stands.get(row);
+            SerialController link = stand.getSerialController();
+            Label[] cells = this.cells[row];
+            cells[1].setText(link.isPortOpen() ? link.getPortName()
+                    : link.getTelemetryBus().getLinkStatus().toString());
+            cells[8].setText(stand.getSharedElements().getDataLogger().isLogging() ? "On" : "Off");
+
+            Measurement measurement = latest[row];
+            if (!stand.getSharedElements().pollLatestMeasurement(measurement)) {
+                continue;
+            }
+            cells[2].setText(String.format("%." + measurement.thrustUnit.getDisplayDecimals() + "f %s",
+                    measurement.thrust, measurement.thrustUnit.getLabel()));
+            cells[3].setText(String.format("%.2f %s", measurement.incomingAirspeed, measurement.airspeedUnit.getLabel()));
+            cells[4].setText(String.format("%.2f %s", measurement.wakeAirspeed, measurement.airspeedUnit.getLabel()));
+            cells[5].setText(String.format("%.2f", measurement.current));
+            cells[6].setText(String.format("%.2f", measurement.voltage));
+            cells[7].setText(String.format("%.0f", measurement.rpm));
+        }
+    }
+
+    private void selectStand(StandRegistry.Stand stand) {
+        StandRegistry.getInstance().select(stand);
+        returnToMainBtn(null);
+    }
+
+    @Override
+    protected void onDeactivate() {
+        refreshTimer.stop();
+    }
+
+    @FXML
+    void returnToMainBtn(ActionEvent rtn) {
+        try {
+            thrustStand.changeScene("fxml/Launcher.fxml");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*  Title:  StandPipeline.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandRegistry.java
+ *  Description: Acquisition core for one stand with no JavaFX dependency: the serial
+ *  link, calibration, unit selections, sample history, running statistics and data
+ *  logger. SharedElements layers the display on top of this for the GUI; HeadlessRun
+ *  uses it on its own so unattended runs never load the FX toolkit.
+ */
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class StandPipeline {
+    //Window averaged for calibration readings
+    private static final long CALIBRATION_WINDOW_NANOS = 1_000_000_000L;
+
+    private final SerialController serialController;
+    private volatile Calibration calibration = new Calibration();   //Replaced whole on every edit
+    private final SampleStore history = new SampleStore();
+    private final StreamingStats stats = new StreamingStats();
+    private final double[] statsValues = new double[StreamingStats.Channel.values().length]; //Stats thread
+    private final DataLogger dataLogger;
+
+    //Unit selections, read by the ingest and logger threads on every conversion
+    private volatile ThrustUnit thrustUnit = ThrustUnit.KG;
+    private volatile AirspeedUnit airspeedUnit = AirspeedUnit.METERS_PER_SECOND;
+    private volatile int bladeCount = 2;
+    private volatile double propDiameterMeters;
+
+    /**
+     * @param primary The first stand keeps the original log file name, others add their
+     * stand number so two stands logging at once never write the same file
+     */
+    StandPipeline(SerialController serialController, boolean primary) {
+        this.serialController = serialController;
+        TelemetryRing ring = serialController.getTelemetryRing();
+        dataLogger = new DataLogger(ring, serialController.getStandName(), this::convert);
+        dataLogger.setLatencyTrace(serialController.getLatencyTrace());
+        if (!primary) {
+            String suffix = serialController.getStandName().toLowerCase().replace(' ', '_');
+            dataLogger.setFilePath(System.getProperty("user.home") + "/thrust_data_" + suffix);
+        }
+        new RingWorker(ring, "sample-history (" + serialController.getStandName() + ")", history::append).start();
+        new RingWorker(ring, "stream-stats (" + serialController.getStandName() + ")", this::updateStats).start();
+    }
+
+    public SerialController getSerialController() {
+        return serialController;
+    }
+
+    //Snapshot in use now; a later edit replaces it rather than changing it
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    //Change the calibration (any thread); converting threads pick it up from their next sample
+    public synchronized void editCalibration(Consumer<Calibration.Builder> edit) {
+        Calibration.Builder builder = calibration.edit();
+        edit.accept(builder);
+        calibration = builder.build();
+    }
+
+    //Back to the default calibration
+    public synchronized void resetCalibration() {
+        calibration = new Calibration();
+    }
+
+    public SampleStore getHistory() {
+        return history;
+    }
+
+    public StreamingStats getStats() {
+        return stats;
+    }
+
+    public DataLogger getDataLogger() {
+        return dataLogger;
+    }
+
+    public ThrustUnit getThrustUnit() {
+        return thrustUnit;
+    }
+
+    public void setThrustUnit(ThrustUnit thrustUnit) {
+        this.thrustUnit = thrustUnit;
+    }
+
+    public AirspeedUnit getAirspeedUnit() {
+        return airspeedUnit;
+    }
+
+    public void setAirspeedUnit(AirspeedUnit airspeedUnit) {
+        this.airspeedUnit = airspeedUnit;
+    }
+
+    public int getBladeCount() {
+        return bladeCount;
+    }
+
+    public void setBladeCount(int bladeCount) {
+        this.bladeCount = bladeCount;
+    }
+
+    public double getPropDiameterMeters() {
+        return propDiameterMeters;
+    }
+
+    //Used for the advance ratio and thrust coefficient; 0 leaves them at 0
+    public void setPropDiameterMeters(double propDiameterMeters) {
+        if (!(propDiameterMeters >= 0) || Double.isInfinite(propDiameterMeters)) {
+            throw new IllegalArgumentException("Prop diameter must be 0 or more: " + propDiameterMeters);
+        }
+        this.propDiameterMeters = propDiameterMeters;
+    }
+
+    /**
+     * Convert a raw sample with the current calibration and unit selections.
+     * Safe on any thread; used by the display hand-off and the logger thread.
+     */
+    public void convert(Sample sample, Measurement measurement) {
+        measurement.sequence = sample.sequence;
+        measurement.readNanos = sample.readNanos;
+        measurement.receivedNanos = sample.receivedNanos;
+        measurement.thrustUnit = thrustUnit;
+        measurement.airspeedUnit = airspeedUnit;
+        measurement.bladeCount = bladeCount;
+        measurement.propDiameter = propDiameterMeters;
+        convertValues(calibration, sample, measurement);
+    }
+
+    /**
+     * Fill a measurement's values from a sample in the measurement's units. Shared
+     * with SessionCsvExporter, which converts with the calibration stored in the log.
+     */
+    static void convertValues(Calibration calibration, Sample sample, Measurement measurement) {
+        ThrustUnit thrust = measurement.thrustUnit;
+        AirspeedUnit airspeed = measurement.airspeedUnit;
+        double grams = calibration.thrustGrams(sample.filteredThrust);
+        double incomingMetersPerSecond = calibration.airspeedMetersPerSecond(sample.filteredIncomingPitotV, true);
+        measurement.thrust = thrust.fromGrams(grams);
+        measurement.incomingAirspeed = airspeed.fromMetersPerSecond(incomingMetersPerSecond);
+        measurement.wakeAirspeed = airspeed.fromMetersPerSecond(calibration.airspeedMetersPerSecond(sample.filteredWakePitotV, false));
+        measurement.current = calibration.currentAmps(sample.filteredCurrentV);
+        measurement.voltage = calibration.voltageVolts(sample.filteredVoltageV);
+        measurement.rpm = sample.filteredRpm;
+        measurement.power = DerivedChannels.powerWatts(measurement.voltage, measurement.current);
+        measurement.efficiency = DerivedChannels.efficiencyGramsPerWatt(grams, measurement.power);
+        measurement.advanceRatio = DerivedChannels.advanceRatio(incomingMetersPerSecond, measurement.rpm, measurement.propDiameter);
+        measurement.thrustCoefficient = DerivedChannels.thrustCoefficient(grams, measurement.rpm, measurement.propDiameter);
+        measurement.step = sample.step;
+        measurement.filtered = sample.filtered;
+        if (sample.filtered) {
+            measurement.unfilteredThrust = thrust.fromGrams(calibration.thrustGrams(sample.rawThrust));
+            measurement.unfilteredIncomingAirspeed = airspeed.fromMetersPerSecond(calibration.airspeedMetersPerSecond(sample.incomingPitotV, true));
+            measurement.unfilteredWakeAirspeed = airspeed.fromMetersPerSecond(calibration.airspeedMetersPerSecond(sample.wakePitotV, false));
+            measurement.unfilteredCurrent = calibration.currentAmps(sample.currentV);
+            measurement.unfilteredVoltage = calibration.voltageVolts(sample.voltageV);
+            measurement.unfilteredRpm = sample.rpm;
+        } else {
+            measurement.unfilteredThrust = measurement.thrust;
+            measurement.unfilteredIncomingAirspeed = measurement.incomingAirspeed;
+            measurement.unfilteredWakeAirspeed = measurement.wakeAirspeed;
+            measurement.unfilteredCurrent = measurement.current;
+            measurement.unfilteredVoltage = measurement.voltage;
+            measurement.unfilteredRpm = measurement.rpm;
+        }
+    }
+
+    //Stats thread: every sample in base units, independent of the display unit selections.
+    //Uses the filtered values, so peaks agree with what the display shows
+    private void updateStats(Sample sample) {
+        Calibration calibration = this.calibration;
+        double[] values = statsValues;
+        values[StreamingStats.Channel.THRUST.ordinal()] = calibration.thrustGrams(sample.filteredThrust);
+        values[StreamingStats.Channel.INCOMING_AIRSPEED.ordinal()] = calibration.airspeedMetersPerSecond(sample.filteredIncomingPitotV, true);
+        values[StreamingStats.Channel.WAKE_AIRSPEED.ordinal()] = calibration.airspeedMetersPerSecond(sample.filteredWakePitotV, false);
+        values[StreamingStats.Channel.CURRENT.ordinal()] = calibration.currentAmps(sample.filteredCurrentV);
+        values[StreamingStats.Channel.VOLTAGE.ordinal()] = calibration.voltageVolts(sample.filteredVoltageV);
+        values[StreamingStats.Channel.RPM.ordinal()] = sample.filteredRpm;
+        double grams = values[StreamingStats.Channel.THRUST.ordinal()];
+        double watts = DerivedChannels.powerWatts(values[StreamingStats.Channel.VOLTAGE.ordinal()], values[StreamingStats.Channel.CURRENT.ordinal()]);
+        double diameter = propDiameterMeters;
+        values[StreamingStats.Channel.POWER.ordinal()] = watts;
+        values[StreamingStats.Channel.EFFICIENCY.ordinal()] = DerivedChannels.efficiencyGramsPerWatt(grams, watts);
+        values[StreamingStats.Channel.ADVANCE_RATIO.ordinal()] = DerivedChannels.advanceRatio(
+                values[StreamingStats.Channel.INCOMING_AIRSPEED.ordinal()], sample.filteredRpm, diameter);
+        values[StreamingStats.Channel.THRUST_COEFFICIENT.ordinal()] = DerivedChannels.thrustCoefficient(grams, sample.filteredRpm, diameter);
+        stats.append(sample.receivedNanos, values);
+    }
+
+    //Start a new log with a snapshot of the calibration and the session details
+    public void startLogging() throws IOException {
+        dataLogger.startLogging(calibration, sessionMetadata());
+    }
+
+    //Unit and setup details recorded in a binary session log
+    Map<String, String> sessionMetadata() {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put(SessionLogFormat.KEY_THRUST_UNIT, thrustUnit.getLabel());
+        metadata.put(SessionLogFormat.KEY_AIRSPEED_UNIT, airspeedUnit.getLabel());
+        metadata.put(SessionLogFormat.KEY_BLADE_COUNT, Integer.toString(bladeCount));
+        if (propDiameterMeters > 0) {
+            metadata.put(SessionLogFormat.KEY_PROP_DIAMETER, Double.toString(propDiameterMeters));
+        }
+        metadata.put(SessionLogFormat.KEY_STAND, serialController.getStandName());
+        String mode = serialController.getMode();
+        if (mode != null) {
+            metadata.put(SessionLogFormat.KEY_MODE, mode);
+        }
+        String filters = serialController.getFilters().describe();
+        if (filters != null) {
+            metadata.put(SessionLogFormat.KEY_FILTERS, filters);
+        }
+        return metadata;
+    }
+
+    //Save calibration to a local file
+    public void saveCalibration(String filename) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
+            calibration.write(writer);
+        }
+    }
+
+    /**
+     * Load saved calibration data from a file; unknown keys are ignored.
+     * @throws IllegalArgumentException naming the file and key if a value does not parse
+     */
+    public synchronized void loadCalibration(String filename) throws IOException {
+        Calibration.Builder builder = calibration.edit();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("=");
+                if (parts.length == 2) {
+                    try {
+                        builder.set(parts[0], parts[1]);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(filename + ": invalid value for "
+                                + parts[0].trim() + ": " + parts[1].trim(), e);
+                    }
+                }
+            }
+        }
+        calibration = builder.build();
+    }
+
+    /**
+     * Average of a raw channel over the last second of history, for calibration.
+     * Falls back to the newest sample if nothing arrived in that window.
+     * @return Raw value in the units the Teensy sends, 0 if no data has arrived
+     */
+    public double getAveragedRaw(SampleStore.Channel channel) {
+        SampleStore.View recent = history.since(System.nanoTime() - CALIBRATION_WINDOW_NANOS);
+        if (recent.isEmpty()) {
+            recent = history.latest(1);
+        }
+        double mean = recent.mean(channel);
+        if (Double.isNaN(mean) || !recent.isValid()) {
+            return 0;
+        }
+        return mean;
+    }
+}
@@ -0,0 +1,133 @@
+/*  Title:  StandRegistry.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ThrustStand.java
+ *  Description: Keeps one acquisition pipeline per connected stand so a single host can
+ *  drive several Teensy boards at once. Each stand has its own SerialController (link,
+ *  ingest thread, telemetry ring and bus) and its own StandPipeline (calibration,
+ *  history and data logger threads), so stands never share a thread or a lock.
+ *  SerialController.getInstance() and SharedElements.getInstance() return the selected
+ *  stand; scenes bind to whichever stand was selected when they were loaded.
+ *  A stand's SharedElements is only created when first asked for, so headless runs
+ *  never touch JavaFX.
+ */
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class StandRegistry {
+    private static StandRegistry instance;
+
+    //Upper limit on stands, one Pi is not expected to keep up with more
+    public static final int MAX_STANDS = 4;
+
+    //One acquisition pipeline: the link to a stand and everything fed from it
+    public static final class Stand {
+        private final String name;
+        private final SerialController serialController;
+        private final StandPipeline pipeline;
+        private SharedElements sharedElements;
+
+        private Stand(String name, boolean primary) {
+            this.name = name;
+            this.serialController = new SerialController(name);
+            this.pipeline = new StandPipeline(serialController, primary);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SerialController getSerialController() {
+            return serialController;
+        }
+
+        public StandPipeline getPipeline() {
+            return pipeline;
+        }
+
+        //Display layer for the GUI, created on first use
+        public synchronized SharedElements getSharedElements() {
+            if (sharedElements == null) {
+                sharedElements = new SharedElements(pipeline);
+            }
+            return sharedElements;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Stand> stands = new CopyOnWriteArrayList<>();
+    private volatile Stand selected;
+
+    private StandRegistry() {
+        selected = addStand();
+    }
+
+    public static synchronized StandRegistry getInstance(){
+        if (instance == null) {
+            instance = new StandRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Add another stand with its own pipeline, named "Stand N".
+     * @throws IllegalStateException if MAX_STANDS are already configured
+     */
+    public synchronized Stand addStand() {
+        if (stands.size() >= MAX_STANDS) {
+            throw new IllegalStateException("At most " + MAX_STANDS + " stands are supported");
+        }
+        Stand stand = new Stand("Stand " + (stands.size() + 1), stands.isEmpty());
+        stands.add(stand);
+        return stand;
+    }
+
+    public List<Stand> getStands() {
+        return stands;
+    }
+
+    public Stand getSelected() {
+        return selected;
+    }
+
+    //Select the stand the next scene binds to
+    public void select(Stand stand) {
+        if (!stands.contains(stand)) {
+            throw new IllegalArgumentException("Unknown stand: " + stand);
+        }
+        selected = stand;
+    }
+
+    public Stand getStand(String name) {
+        for (Stand stand : stands) {
+            if (stand.name.equals(name)) {
+                return stand;
+            }
+        }
+        return null;
+    }
+
+    //True if a stand other than the given one already has this port open
+    boolean isPortInUse(String portName, SerialController except) {
+        for (Stand stand : stands) {
+            SerialController other = stand.serialController;
+            if (other != except && other.isPortOpen() && portName.equals(other.getPortName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Stop every stand's replay, logging and link; called when the application closes
+    public void shutdown() {
+        for (Stand stand : stands) {
+            stand.serialController.stopReplay();
+            stand.pipeline.getDataLogger().stopLogging(); //Write out any buffered log rows
+            stand.serialController.closePort();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*  Title:  StreamingStats.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandPipeline.java
+ *  Description: Running statistics for every converted channel, updated in O(1) per
+ *  sample by the stand's stats thread. Over a sliding time window (1 s by default) it
+ *  keeps the mean and standard deviation (Welford, with removal as samples leave the
+ *  window) and the min and max (monotonic queues). Since the last reset it keeps the
+ *  overall mean and deviation and the peak min and max with the time they occurred.
+ *  Each update is published under a sequence lock, so the display, the logger and
+ *  HeadlessRun can read a consistent summary at any time without rescanning samples
+ *  or blocking the writer. Values are in base units: grams, m/s, amps, volts, RPM,
+ *  watts and g/W; the advance ratio and thrust coefficient have none.
+ */
+import java.lang.invoke.VarHandle;
+
+public final class StreamingStats {
+    //Samples the window can hold; a longer window is cut short (16 s at 1 kHz)
+    public static final int CAPACITY = 1 << 14;
+    public static final long DEFAULT_WINDOW_NANOS = 1_000_000_000L;
+
+    public enum Channel {
+        THRUST("Thrust"),                       //Grams-force
+        INCOMING_AIRSPEED("Incoming airspeed"), //m/s
+        WAKE_AIRSPEED("Wake airspeed"),         //m/s
+        CURRENT("Current"),                     //Amps
+        VOLTAGE("Voltage"),                     //Volts
+        RPM("RPM"),
+        POWER("Power"),                         //Watts
+        EFFICIENCY("Efficiency"),               //Grams-force per watt
+        ADVANCE_RATIO("Advance ratio"),
+        THRUST_COEFFICIENT("Thrust coefficient");
+
+        private final String label;
+
+        Channel(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Channel[] CHANNELS = Channel.values();
+    private static final int MASK = CAPACITY - 1;
+
+    //Statistics of one channel as of the newest sample; reused by readers, not shared
+    public static final class Summary {
+        public long windowCount;
+        public double mean;             //Over the window
+        public double stdDev;
+        public double min;
+        public double max;
+        public long count;              //Since the last reset
+        public double overallMean;
+        public double overallStdDev;
+        public double peakMin;
+        public long peakMinNanos;       //Host System.nanoTime() of the sample
+        public double peakMax;
+        public long peakMaxNanos;
+        public long lastNanos;          //Receive time of the newest sample
+
+        void copyFrom(Summary other) {
+            windowCount = other.windowCount;
+            mean = other.mean;
+            stdDev = other.stdDev;
+            min = other.min;
+            max = other.max;
+            count = other.count;
+            overallMean = other.overallMean;
+            overallStdDev = other.overallStdDev;
+            peakMin = other.peakMin;
+            peakMinNanos = other.peakMinNanos;
+            peakMax = other.peakMax;
+            peakMaxNanos = other.peakMaxNanos;
+            lastNanos = other.lastNanos;
+        }
+    }
+
+    //Writer-side state of one channel (stats thread only)
+    private static final class State {
+        final double[] values = new double[CAPACITY];
+        //Absolute sample indices, values increasing (min) or decreasing (max) front to back
+        final long[] minQueue = new long[CAPACITY];
+        final long[] maxQueue = new long[CAPACITY];
+        long minFirst, minEnd, maxFirst, maxEnd;
+        double mean, m2;
+        long count;
+        double overallMean, overallM2;
+        double peakMin, peakMax;
+        long peakMinNanos, peakMaxNanos;
+        double last;
+    }
+
+    private final State[] states = new State[CHANNELS.length];
+    private final long[] timestamps = new long[CAPACITY];
+    private long first;                 //Oldest sample in the window (absolute index)
+    private long end;                   //One past the newest
+    private long sinceRebuild;
+
+    private volatile long windowNanos = DEFAULT_WINDOW_NANOS;
+    private volatile boolean resetRequested;
+
+    //Published summaries, guarded by the sequence lock: odd while the writer is updating
+    private final Summary[] published = new Summary[CHANNELS.length];
+    private volatile long version;
+
+    public StreamingStats() {
+        for (int c = 0; c < CHANNELS.length; c++) {
+            states[c] = new State();
+            published[c] = new Summary();
+        }
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    //Length of the sliding window; takes effect with the next sample (any thread)
+    public void setWindowNanos(long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowNanos);
+        }
+        this.windowNanos = windowNanos;
+    }
+
+    //Clear the window and the peaks with the next sample, e.g. after taring (any thread)
+    public void reset() {
+        resetRequested = true;
+    }
+
+    /**
+     * Add one converted sample (stats thread only).
+     * @param values One value per Channel, by ordinal, in base units
+     */
+    public void append(long nanos, double[] values) {
+        if (resetRequested) {
+            resetRequested = false;
+            clear();
+        }
+        long window = windowNanos;
+        while (first < end && (end - first >= CAPACITY || nanos - timestamps[(int) (first & MASK)] >= window)) {
+            evictOldest();
+        }
+
+        long index = end;
+        int slot = (int) (index & MASK);
+        timestamps[slot] = nanos;
+        for (int c = 0; c < CHANNELS.length; c++) {
+            State s = states[c];
+            double x = values[c];
+            if (!Double.isFinite(x)) {
+                x = s.last; //Hold the previous value rather than poison the sums
+            }
+            s.last = x;
+            s.values[slot] = x;
+
+            long n = index - first + 1;
+            double delta = x - s.mean;
+            s.mean += delta / n;
+            s.m2 += delta * (x - s.mean);
+
+            while (s.minEnd > s.minFirst && s.values[(int) (s.minQueue[(int) ((s.minEnd - 1) & MASK)] & MASK)] >= x) {
+                s.minEnd--;
+            }
+            s.minQueue[(int) (s.minEnd++ & MASK)] = index;
+            while (s.maxEnd > s.maxFirst && s.values[(int) (s.maxQueue[(int) ((s.maxEnd - 1) & MASK)] & MASK)] <= x) {
+                s.maxEnd--;
+            }
+            s.maxQueue[(int) (s.maxEnd++ & MASK)] = index;
+
+            s.count++;
+            double overallDelta = x - s.overallMean;
+            s.overallMean += overallDelta / s.count;
+            s.overallM2 += overallDelta * (x - s.overallMean);
+            if (s.count == 1 || x < s.peakMin) {
+                s.peakMin = x;
+                s.peakMinNanos = nanos;
+            }
+            if (s.count == 1 || x > s.peakMax) {
+                s.peakMax = x;
+                s.peakMaxNanos = nanos;
+            }
+        }
+        end = index + 1;
+
+        //Recompute the window sums exactly now and then so rounding from removals cannot build up
+        if (++sinceRebuild >= CAPACITY) {
+            sinceRebuild = 0;
+            rebuild();
+        }
+        publish(nanos);
+    }
+
+    private void evictOldest() {
+        long index = first;
+        long n = end - first;
+        for (State s : states) {
+            double y = s.values[(int) (index & MASK)];
+            if (n == 1) {
+                s.mean = 0;
+                s.m2 = 0;
+            } else {
+                double delta = y - s.mean;
+                s.mean -= delta / (n - 1);
+                s.m2 = Math.max(0, s.m2 - delta * (y - s.mean));
+            }
+            if (s.minEnd > s.minFirst && s.minQueue[(int) (s.minFirst & MASK)] == index) {
+                s.minFirst++;
+            }
+            if (s.maxEnd > s.maxFirst && s.maxQueue[(int) (s.maxFirst & MASK)] == index) {
+                s.maxFirst++;
+            }
+        }
+        first = index + 1;
+    }
+
+    private void rebuild() {
+        long n = end - first;
+        for (State s : states) {
+            double sum = 0;
+            for (long i = first; i < end; i++) {
+                sum += s.values[(int) (i & MASK)];
+            }
+            double mean = n > 0 ? sum / n : 0;
+            double m2 = 0;
+            for (long i = first; i < end; i++) {
+                double d = s.values[(int) (i & MASK)] - mean;
+                m2 += d * d;
+            }
+            s.mean = mean;
+            s.m2 = m2;
+        }
+    }
+
+    private void clear() {
+        first = end;
+        sinceRebuild = 0;
+        for (State s : states) {
+            s.minFirst = s.minEnd;
+            s.maxFirst = s.maxEnd;
+            s.mean = s.m2 = 0;
+            s.count = 0;
+            s.overallMean = s.overallM2 = 0;
+        }
+    }
+
+    private void publish(long nanos) {
+        long n = end - first;
+        version++;
+        //Keep the summary writes below from moving ahead of the odd version
+        VarHandle.storeStoreFence();
+        for (int c = 0; c < CHANNELS.length; c++) {
+            State s = states[c];
+            Summary p = published[c];
+            p.windowCount = n;
+            p.mean = s.mean;
+            p.stdDev = n > 1 ? Math.sqrt(s.m2 / (n - 1)) : 0;
+            p.min = s.values[(int) (s.minQueue[(int) (s.minFirst & MASK)] & MASK)];
+            p.max = s.values[(int) (s.maxQueue[(int) (s.maxFirst & MASK)] & MASK)];
+            p.count = s.count;
+            p.overallMean = s.overallMean;
+            p.overallStdDev = s.count > 1 ? Math.sqrt(s.overallM2 / (s.count - 1)) : 0;
+            p.peakMin = s.peakMin;
+            p.peakMinNanos = s.peakMinNanos;
+            p.peakMax = s.peakMax;
+            p.peakMaxNanos = s.peakMaxNanos;
+            p.lastNanos = nanos;
+        }
+        version++;
+    }
+
+    /**
+     * Copy the newest statistics of a channel (any thread, never blocks the writer).
+     * @return false if no sample has arrived since the last reset
+     */
+    public boolean read(Channel channel, Summary out) {
+        Summary source = published[channel.ordinal()];
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                out.copyFrom(source);
+                //Order the copy before re-reading the version
+                VarHandle.loadLoadFence();
+                if (version == before) {
+                    return out.count > 0;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*  Title:  TelemetryBus.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Typed publish/subscribe bus for telemetry events. Each topic carries one
+ *  event type and every subscribe call returns a Subscription that removes the listener
+ *  when closed. Scene controllers subscribe through BaseController so their listeners
+ *  are closed when the scene changes instead of piling up.
+ *  Listeners run on the publishing thread (the serial ingest or replay thread), never
+ *  the JavaFX thread, and must be quick. SAMPLE events hand over the ring slot itself,
+ *  which is only valid for the duration of the call; copy it to keep it.
+ */
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class TelemetryBus {
+    public enum LinkStatus { DISCONNECTED, CONNECTED, REPLAYING }
+
+    //Every line of text telemetry received, trimmed
+    public static final Topic<String> RAW_LINE = new Topic<>("raw lines", 0);
+    //Every sample published to the telemetry ring
+    public static final Topic<Sample> SAMPLE = new Topic<>("samples", 1);
+    //Changes to the link: port opened or closed, replay started or finished
+    public static final Topic<LinkStatus> LINK_STATUS = new Topic<>("link status", 2);
+
+    private static final Topic<?>[] TOPICS = {RAW_LINE, SAMPLE, LINK_STATUS};
+
+    //Topic key, typed so subscribers and publishers agree on the event class
+    public static final class Topic<T> {
+        private final String name;
+        private final int index;
+
+        private Topic(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    //Handle for one listener; closing it more than once is harmless
+    public final class Subscription implements AutoCloseable {
+        private final Topic<?> topic;
+        private final Consumer<?> listener;
+
+        private Subscription(Topic<?> topic, Consumer<?> listener) {
+            this.topic = topic;
+            this.listener = listener;
+        }
+
+        public Topic<?> getTopic() {
+            return topic;
+        }
+
+        public boolean isOpen() {
+            return listeners.get(topic.index).contains(listener);
+        }
+
+        @Override
+        public void close() {
+            listeners.get(topic.index).remove(listener);
+        }
+    }
+
+    private final List<List<Consumer<?>>> listeners = new ArrayList<>();
+    private volatile LinkStatus linkStatus = LinkStatus.DISCONNECTED;
+
+    public TelemetryBus() {
+        for (int i = 0; i < TOPICS.length; i++) {
+            listeners.add(new CopyOnWriteArrayList<>());
+        }
+    }
+
+    public <T> Subscription subscribe(Topic<T> topic, Consumer<? super T> listener) {
+        //Wrap so the same method reference can be subscribed twice and closed separately
+        Consumer<T> entry = event -> listener.accept(event);
+        listeners.get(topic.index).add(entry);
+        return new Subscription(topic, entry);
+    }
+
+    //Cheap check so publishers can skip building an event nobody is listening for
+    public boolean hasSubscribers(Topic<?> topic) {
+        return !listeners.get(topic.index).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void publish(Topic<T> topic, T event) {
+        for (Consumer<?> listener : listeners.get(topic.index)) {
+            try {
+                ((Consumer<T>) listener).accept(event);
+            } catch (RuntimeException e) {
+                //One bad listener must not stop the ingest thread or the others
+                System.err.println("Telemetry listener on " + topic + " failed: " + e);
+            }
+        }
+    }
+
+    //Records and publishes a link change; repeats of the current status are dropped
+    public synchronized void publishLinkStatus(LinkStatus status) {
+        if (linkStatus != status) {
+            linkStatus = status;
+            publish(LINK_STATUS, status);
+        }
+    }
+
+    public LinkStatus getLinkStatus() {
+        return linkStatus;
+    }
+
+    public int getSubscriberCount(Topic<?> topic) {
+        return listeners.get(topic.index).size();
+    }
+
+    //Live subscriber count for every topic, in topic order
+    public Map<String, Integer> getSubscriberCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Topic<?> topic : TOPICS) {
+            counts.put(topic.name, getSubscriberCount(topic));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,139 @@
+/*  Title:  TelemetryParser.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Allocation-free parser for the Teensy CSV telemetry line
+ *  "pitot1,pitot2,current,voltage,loadCell,rpm". Fields are read straight from
+ *  the receive buffer into a Sample without creating Strings or boxed values.
+ *  Not thread safe; each ingest thread owns its own instance.
+ */
+public final class TelemetryParser {
+    //Largest number of significant digits that still fits in a long mantissa
+    private static final int MAX_DIGITS = 18;
+    private static final double[] POW10 = new double[MAX_DIGITS + 1];
+    static {
+        double p = 1.0;
+        for (int i = 0; i <= MAX_DIGITS; i++) {
+            POW10[i] = p;
+            p *= 10.0;
+        }
+    }
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private boolean valid;
+
+    /**
+     * Parse one line (without the newline) into dst. dst is only modified if the
+     * whole line is valid.
+     * @param buf Receive buffer
+     * @param start Index of the first byte of the line
+     * @param end Index one past the last byte of the line
+     * @return true if all six fields were parsed
+     */
+    public boolean parse(byte[] buf, int start, int end, Sample dst) {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        this.valid = true;
+
+        float pitot1 = (float) nextDecimal();
+        expectSeparator();
+        float pitot2 = (float) nextDecimal();
+        expectSeparator();
+        float current = (float) nextDecimal();
+        expectSeparator();
+        float voltage = (float) nextDecimal();
+        expectSeparator();
+        long loadCell = nextLong();
+        expectSeparator();
+        float rpm = (float) nextDecimal();
+        skipWhitespace();
+        if (pos != end) {
+            valid = false; //Trailing characters or extra fields
+        }
+
+        this.buf = null;
+        if (!valid) {
+            return false;
+        }
+        dst.incomingPitotV = pitot1;
+        dst.wakePitotV = pitot2;
+        dst.currentV = current;
+        dst.voltageV = voltage;
+        dst.rawThrust = loadCell;
+        dst.rpm = rpm;
+        dst.passThrough();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t' || buf[pos] == '\r')) {
+            pos++;
+        }
+    }
+
+    private void expectSeparator() {
+        skipWhitespace();
+        if (pos < end && buf[pos] == ',') {
+            pos++;
+        } else {
+            valid = false;
+        }
+    }
+
+    private boolean readSign() {
+        skipWhitespace();
+        if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+            return buf[pos++] == '-';
+        }
+        return false;
+    }
+
+    private long nextLong() {
+        if (!valid) {
+            return 0;
+        }
+        boolean negative = readSign();
+        int digits = 0;
+        long value = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos++] - '0');
+            digits++;
+        }
+        if (digits == 0 || digits > MAX_DIGITS) {
+            valid = false;
+        }
+        return negative ? -value : value;
+    }
+
+    //Plain decimal such as "-12.345"; Teensy String(float, n) never emits exponents
+    private double nextDecimal() {
+        if (!valid) {
+            return 0;
+        }
+        boolean negative = readSign();
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            mantissa = mantissa * 10 + (buf[pos++] - '0');
+            digits++;
+        }
+        if (pos < end && buf[pos] == '.') {
+            pos++;
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                mantissa = mantissa * 10 + (buf[pos++] - '0');
+                digits++;
+                fractionDigits++;
+            }
+        }
+        if (digits == 0 || digits > MAX_DIGITS) {
+            valid = false; //Also rejects "nan", "inf" and "ovf"
+            return 0;
+        }
+        double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+}
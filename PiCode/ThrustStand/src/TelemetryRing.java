@@ -0,0 +1,183 @@
+/*  Title:  TelemetryRing.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: ThrustStand.java
+ *  Description: Preallocated single-producer, multi-consumer ring of telemetry samples.
+ *  The serial ingest thread claims a slot, fills it and publishes it. Every consumer
+ *  (UI, data logger, ...) owns a Cursor and reads at its own pace. The producer never
+ *  waits for consumers; a consumer that falls a full ring behind skips ahead and
+ *  counts the samples it lost instead of stalling acquisition.
+ */
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class TelemetryRing {
+    public static final int DEFAULT_CAPACITY = 8192; //~160s at 50Hz, ~8s at 1kHz
+
+    private final Sample[] slots;
+    private final int mask;
+    private final List<Cursor> cursors = new CopyOnWriteArrayList<>();
+
+    //Sequence currently being written by the producer, and the last one made visible
+    private volatile long claimed = -1;
+    private volatile long published = -1;
+
+    public TelemetryRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TelemetryRing(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        slots = new Sample[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Sample();
+        }
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public long getPublishedSequence() {
+        return published;
+    }
+
+    /**
+     * Claim the next slot for writing. Only the ingest thread may call this. A claim
+     * that is never published (a line that failed to parse) is simply claimed again
+     * next time; consumers treat its slot as overwritten until then.
+     * @return Slot to fill in place
+     */
+    public Sample claim() {
+        long next = published + 1;
+        claimed = next;
+        //Readers of the old contents must see the claim before any of the new writes
+        VarHandle.storeStoreFence();
+        Sample slot = slots[(int) (next & mask)];
+        slot.sequence = next;
+        return slot;
+    }
+
+    //Make the claimed slot visible to consumers and wake any that are waiting
+    public void publish() {
+        published = claimed;
+        for (Cursor cursor : cursors) {
+            Thread waiter = cursor.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * Create a consumer cursor that starts at the next sample to be published.
+     * @param name Consumer name, used for diagnostics
+     */
+    public Cursor newCursor(String name) {
+        Cursor cursor = new Cursor(name, published + 1);
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    public List<Cursor> getCursors() {
+        return cursors;
+    }
+
+    public final class Cursor {
+        private final String name;
+        private long next;
+        private volatile long lost;
+        private volatile Thread waiter;
+
+        private Cursor(String name, long next) {
+            this.name = name;
+            this.next = next;
+        }
+
+        public String getName() { return name; }
+
+        //Samples skipped because this consumer was lapped by the producer
+        public long getLost() { return lost; }
+
+        //Samples published but not yet read by this consumer
+        public long getLag() {
+            return Math.max(0, Math.min(published + 1 - next, slots.length));
+        }
+
+        /**
+         * Copy the next unread sample into dst.
+         * @return false if no new sample is available
+         */
+        public boolean poll(Sample dst) {
+            while (true) {
+                long head = published;
+                if (next > head) {
+                    return false;
+                }
+                //Lapped: jump to the oldest slot that is still intact. Measured from the
+                //claim, not the head, so a slot claimed for a sample that then failed to
+                //parse is skipped rather than retried until the next publish
+                long oldest = claimed - slots.length + 1;
+                if (next < oldest) {
+                    lost += oldest - next;
+                    next = oldest;
+                }
+                long seq = next;
+                dst.copyFrom(slots[(int) (seq & mask)]);
+                //Make sure the copy is complete before checking for an overwrite
+                VarHandle.loadLoadFence();
+                if (claimed - seq < slots.length) {
+                    next = seq + 1;
+                    return true;
+                }
+                //Producer reused the slot mid-copy, retry from the new tail
+            }
+        }
+
+        /**
+         * Copy the newest published sample into dst, discarding anything older.
+         * Skipped samples are not counted as lost.
+         * @return false if no new sample is available
+         */
+        public boolean pollLatest(Sample dst) {
+            long head = published;
+            if (next > head) {
+                return false;
+            }
+            next = head;
+            return poll(dst);
+        }
+
+        /**
+         * Park the calling thread until a sample is available or the timeout elapses.
+         * @return true if a sample is available
+         */
+        public boolean await(long timeout, TimeUnit unit) {
+            if (next <= published) {
+                return true;
+            }
+            waiter = Thread.currentThread();
+            try {
+                //Re-check after registering so a publish in between is not missed
+                if (next <= published) {
+                    return true;
+                }
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+            } finally {
+                waiter = null;
+            }
+            return next <= published;
+        }
+
+        //Stop tracking this consumer
+        public void close() {
+            cursors.remove(this);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*  Title:  TestProfile.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: TestSequencer.java
+ *  Description: Declarative description of a characterisation run: a list of setpoints
+ *  (throttle % in DYNO mode, RPM in LAB mode), how long to dwell on each, and how much
+ *  of the end of each dwell to average. Immutable.
+ *  Setpoints are written either as a sweep, "from-to/increment" (e.g. "0-100/5"), or as
+ *  a comma separated list (e.g. "1000,2000,4000").
+ */
+import java.util.Arrays;
+
+public final class TestProfile {
+    private final String mode;
+    private final int[] setpoints;
+    private final long dwellNanos;
+    private final long averageNanos;
+
+    private TestProfile(String mode, int[] setpoints, double dwellSeconds, double averageSeconds) {
+        if (!mode.equals("LAB") && !mode.equals("DYNO")) {
+            throw new IllegalArgumentException("Mode must be LAB or DYNO");
+        }
+        if (setpoints.length == 0) {
+            throw new IllegalArgumentException("A profile needs at least one setpoint");
+        }
+        if (!(dwellSeconds > 0)) {
+            throw new IllegalArgumentException("Dwell must be greater than zero");
+        }
+        if (!(averageSeconds > 0) || averageSeconds > dwellSeconds) {
+            throw new IllegalArgumentException("Averaging window must be between zero and the dwell time");
+        }
+        for (int setpoint : setpoints) {
+            if (setpoint < 0 || (mode.equals("DYNO") && setpoint > 100)) {
+                throw new IllegalArgumentException("Setpoint out of range: " + setpoint);
+            }
+        }
+        this.mode = mode;
+        this.setpoints = setpoints;
+        this.dwellNanos = (long) (dwellSeconds * 1e9);
+        this.averageNanos = (long) (averageSeconds * 1e9);
+    }
+
+    //Throttle steps from 'from' to 'to' percent inclusive
+    public static TestProfile throttleSweep(int from, int to, int increment, double dwellSeconds, double averageSeconds) {
+        return new TestProfile("DYNO", sweep(from, to, increment), dwellSeconds, averageSeconds);
+    }
+
+    public static TestProfile rpmSetpoints(int[] rpms, double dwellSeconds, double averageSeconds) {
+        return new TestProfile("LAB", rpms.clone(), dwellSeconds, averageSeconds);
+    }
+
+    /**
+     * Build a profile from text, as typed into the sequencer dialog or on the command line.
+     * @throws IllegalArgumentException if the setpoints or times are invalid
+     */
+    public static TestProfile parse(String mode, String setpoints, double dwellSeconds, double averageSeconds) {
+        String text = setpoints.trim();
+        int[] values;
+        try {
+            int dash = text.indexOf('-', 1);
+            if (dash > 0) {
+                int slash = text.indexOf('/', dash);
+                int from = Integer.parseInt(text.substring(0, dash).trim());
+                int to = Integer.parseInt(text.substring(dash + 1, slash > 0 ? slash : text.length()).trim());
+                int increment = slash > 0 ? Integer.parseInt(text.substring(slash + 1).trim()) : 1;
+                values = sweep(from, to, increment);
+            } else {
+                values = Arrays.stream(text.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid setpoints: " + setpoints);
+        }
+        return new TestProfile(mode.toUpperCase(), values, dwellSeconds, averageSeconds);
+    }
+
+    private static int[] sweep(int from, int to, int increment) {
+        if (increment <= 0) {
+            throw new IllegalArgumentException("Sweep increment must be positive");
+        }
+        int direction = to >= from ? 1 : -1;
+        int steps = Math.abs(to - from) / increment + 1;
+        int[] values = new int[steps];
+        for (int i = 0; i < steps; i++) {
+            values[i] = from + direction * i * increment;
+        }
+        return values;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    //Label for a setpoint value in this mode
+    public String getSetpointUnit() {
+        return mode.equals("LAB") ? "RPM" : "%";
+    }
+
+    public int getStepCount() {
+        return setpoints.length;
+    }
+
+    public int getSetpoint(int step) {
+        return setpoints[step];
+    }
+
+    public long getDwellNanos() {
+        return dwellNanos;
+    }
+
+    public long getAverageNanos() {
+        return averageNanos;
+    }
+
+    public long getTotalNanos() {
+        return dwellNanos * setpoints.length;
+    }
+}
@@ -0,0 +1,338 @@
+/*  Title:  TestSequencer.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: StandPipeline.java
+ *  Description: Runs a TestProfile on a stand without an operator: switches the mode,
+ *  starts logging if it is not already running, then steps through the setpoints.
+ *  Each step is sent at an absolute deadline (start + step x dwell), parking until just
+ *  before it and spinning the rest of the way, so timing does not drift over a long run.
+ *  Every sample received during a step is tagged with its index and the end of each
+ *  dwell is averaged into a StepResult. On finish or abort the throttle is zeroed and
+ *  the motor turned off. JavaFX-free; callbacks run on the sequencer thread.
+ */
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class TestSequencer {
+    //Park until this close to a deadline, then spin
+    private static final long SPIN_NANOS = 50_000;
+    //Lets the history worker catch up with the end of a window before it is averaged
+    private static final long AVERAGE_GRACE_NANOS = 20_000_000L;
+
+    //Averages over the end of one step's dwell, in the units selected when it ran
+    public static final class StepResult {
+        public final int step;
+        public final int setpoint;
+        public final int samples;
+        public final double thrust;
+        public final ThrustUnit thrustUnit;
+        public final double incomingAirspeed;
+        public final double wakeAirspeed;
+        public final AirspeedUnit airspeedUnit;
+        public final double current;        //Amps
+        public final double voltage;        //Volts
+        public final double power;          //Watts, mean of per-sample V x I
+        public final double rpm;
+        public final double efficiency;     //g/W, from the step means like the two below
+        public final double advanceRatio;
+        public final double thrustCoefficient;
+        public final long latenessNanos;    //How late the step's command went out
+
+        StepResult(int step, int setpoint, int samples, double thrust, ThrustUnit thrustUnit,
+                double incomingAirspeed, double wakeAirspeed, AirspeedUnit airspeedUnit,
+                double current, double voltage, double power, double rpm,
+                double efficiency, double advanceRatio, double thrustCoefficient, long latenessNanos) {
+            this.step = step;
+            this.setpoint = setpoint;
+            this.samples = samples;
+            this.thrust = thrust;
+            this.thrustUnit = thrustUnit;
+            this.incomingAirspeed = incomingAirspeed;
+            this.wakeAirspeed = wakeAirspeed;
+            this.airspeedUnit = airspeedUnit;
+            this.current = current;
+            this.voltage = voltage;
+            this.power = power;
+            this.rpm = rpm;
+            this.efficiency = efficiency;
+            this.advanceRatio = advanceRatio;
+            this.thrustCoefficient = thrustCoefficient;
+            this.latenessNanos = latenessNanos;
+        }
+    }
+
+    private final StandPipeline pipeline;
+    private final SerialController link;
+    private final TestProfile profile;
+    private final Thread thread;
+    private final long[] latenessNanos;
+    private final List<StepResult> results = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile int currentStep = -1;
+    private volatile long maxLatenessNanos;
+    private volatile String failure;
+    private volatile Path summaryPath;
+    private volatile Consumer<StepResult> onStepComplete;
+    private volatile Runnable onFinished;
+
+    public TestSequencer(StandPipeline pipeline, TestProfile profile) {
+        this.pipeline = pipeline;
+        this.link = pipeline.getSerialController();
+        this.profile = profile;
+        this.latenessNanos = new long[profile.getStepCount()];
+        this.thread = new Thread(this::run, "test-sequencer (" + link.getStandName() + ")");
+        this.thread.setDaemon(true);
+    }
+
+    //Write the per-step summary CSV here instead of next to the log
+    public void setSummaryPath(Path summaryPath) {
+        this.summaryPath = summaryPath;
+    }
+
+    public void setOnStepComplete(Consumer<StepResult> onStepComplete) {
+        this.onStepComplete = onStepComplete;
+    }
+
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    public TestSequencer start() {
+        running = true;
+        thread.start();
+        return this;
+    }
+
+    //Abort the run without waiting; the sequencer thread stops the motor, closes the
+    //log and then calls onFinished
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    //Wait until the run has ended and the log is closed (not on the JavaFX thread)
+    public void awaitFinished() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return thread.isAlive();
+    }
+
+    public TestProfile getProfile() {
+        return profile;
+    }
+
+    //Step being run, -1 before the first and after the last
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    public List<StepResult> getResults() {
+        return results;
+    }
+
+    //Worst time a step command went out after its deadline
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    //Where the per-step summary goes, known once logging has started
+    public Path getSummaryPath() {
+        return summaryPath;
+    }
+
+    //Why the run ended early, null if it completed or was stopped
+    public String getFailure() {
+        return failure;
+    }
+
+    private void run() {
+        DataLogger logger = pipeline.getDataLogger();
+        boolean startedLogging = false;
+        try {
+            if (!link.isPortOpen()) {
+                failure = "No stand connected";
+                return;
+            }
+            link.setMode(profile.getMode());
+            if (!logger.isLogging()) {
+                pipeline.startLogging();
+                startedLogging = true;
+            }
+            if (summaryPath == null) {
+                summaryPath = summaryPathFor(logger.getCurrentFilePath());
+            }
+            if (!link.setMotor(true)) {
+                failure = "Failed to start the motor";
+                return;
+            }
+
+            int steps = profile.getStepCount();
+            long dwell = profile.getDwellNanos();
+            long start = System.nanoTime();
+            for (int i = 0; i < steps && running; i++) {
+                long deadline = start + i * dwell;
+                if (!waitUntil(deadline)) {
+                    break;
+                }
+                if (!dispatch(i, deadline)) {
+                    failure = "Failed to send step " + i;
+                    break;
+                }
+                if (i > 0) {
+                    completeStep(i - 1, deadline);
+                }
+            }
+            long end = start + steps * dwell;
+            if (running && failure == null && waitUntil(end)) {
+                completeStep(steps - 1, end);
+            }
+        } catch (IOException e) {
+            failure = "Failed to start logging: " + e.getMessage();
+        } finally {
+            finish(startedLogging);
+        }
+    }
+
+    //Tag first so every sample after the command carries the new step
+    private boolean dispatch(int step, long deadline) {
+        long late = System.nanoTime() - deadline;
+        link.setSequenceStep(step);
+        currentStep = step;
+        latenessNanos[step] = late;
+        if (late > maxLatenessNanos) {
+            maxLatenessNanos = late;
+        }
+        int setpoint = profile.getSetpoint(step);
+        return profile.getMode().equals("LAB") ? link.setRPM(setpoint) : link.setThrottle(setpoint);
+    }
+
+    //Average the last part of a step's dwell, which ended at endNanos
+    private void completeStep(int step, long endNanos) {
+        LockSupport.parkNanos(AVERAGE_GRACE_NANOS);
+        SampleStore.View window = pipeline.getHistory().range(endNanos - profile.getAverageNanos(), endNanos);
+        Calibration calibration = pipeline.getCalibration();
+        ThrustUnit thrustUnit = pipeline.getThrustUnit();
+        AirspeedUnit airspeedUnit = pipeline.getAirspeedUnit();
+
+        //Convert each sample before averaging; airspeed is not linear in the sensor voltage
+        int n = window.length();
+        double thrust = 0, incoming = 0, wake = 0, current = 0, voltage = 0, power = 0, rpm = 0;
+        for (int i = 0; i < n; i++) {
+            double amps = calibration.currentAmps((float) window.get(SampleStore.Channel.CURRENT, i));
+            double volts = calibration.voltageVolts((float) window.get(SampleStore.Channel.VOLTAGE, i));
+            thrust += calibration.thrustGrams((long) window.get(SampleStore.Channel.THRUST, i));
+            incoming += calibration.airspeedMetersPerSecond((float) window.get(SampleStore.Channel.INCOMING_PITOT, i), true);
+            wake += calibration.airspeedMetersPerSecond((float) window.get(SampleStore.Channel.WAKE_PITOT, i), false);
+            current += amps;
+            voltage += volts;
+            power += amps * volts;
+            rpm += window.get(SampleStore.Channel.RPM, i);
+        }
+        if (!window.isValid() || n == 0) {
+            n = 0;
+            thrust = incoming = wake = current = voltage = power = rpm = Double.NaN;
+        }
+        double diameter = pipeline.getPropDiameterMeters();
+        StepResult result = new StepResult(step, profile.getSetpoint(step), n,
+                thrustUnit.fromGrams(thrust / n), thrustUnit,
+                airspeedUnit.fromMetersPerSecond(incoming / n), airspeedUnit.fromMetersPerSecond(wake / n), airspeedUnit,
+                current / n, voltage / n, power / n, rpm / n,
+                DerivedChannels.efficiencyGramsPerWatt(thrust / n, power / n),
+                DerivedChannels.advanceRatio(incoming / n, rpm / n, diameter),
+                DerivedChannels.thrustCoefficient(thrust / n, rpm / n, diameter),
+                latenessNanos[step]);
+        results.add(result);
+        Consumer<StepResult> listener = onStepComplete;
+        if (listener != null) {
+            listener.accept(result);
+        }
+    }
+
+    private void finish(boolean startedLogging) {
+        link.setSequenceStep(-1);
+        currentStep = -1;
+        if (link.isPortOpen()) {
+            if (profile.getMode().equals("DYNO")) {
+                link.setThrottle(0);
+            }
+            link.setMotor(false);
+        }
+        if (startedLogging) {
+            pipeline.getDataLogger().stopLogging();
+        }
+        Path summary = summaryPath;
+        if (summary != null && !results.isEmpty()) {
+            try {
+                writeSummary(summary);
+            } catch (IOException e) {
+                System.err.println("Failed to write sequence summary " + summary + ": " + e.getMessage());
+            }
+        }
+        running = false;
+        Runnable finished = onFinished;
+        if (finished != null) {
+            finished.run();
+        }
+    }
+
+    //run.tslog or run.csv -> run_steps.csv
+    private static Path summaryPathFor(String logPath) {
+        int dot = logPath.lastIndexOf('.');
+        int slash = logPath.lastIndexOf('/');
+        String base = dot > slash ? logPath.substring(0, dot) : logPath;
+        return Paths.get(base + "_steps.csv");
+    }
+
+    //One row per completed step
+    public void writeSummary(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            writer.println("Step,Setpoint,Setpoint Unit,Samples,Thrust,Thrust Unit,Incoming Airspeed,Wake Airspeed,"
+                    + "Airspeed Unit,Current (A),Voltage (V),Power (W),RPM,Efficiency (g/W),Advance Ratio,"
+                    + "Thrust Coefficient,Dispatch Late (ms)");
+            for (StepResult r : results) {
+                writer.printf("%d,%d,%s,%d,%.3f,%s,%.2f,%.2f,%s,%.2f,%.2f,%.2f,%.1f,%.3f,%.4f,%.5f,%.3f%n",
+                        r.step, r.setpoint, profile.getSetpointUnit(), r.samples,
+                        r.thrust, r.thrustUnit.getLabel(), r.incomingAirspeed, r.wakeAirspeed,
+                        r.airspeedUnit.getLabel(), r.current, r.voltage, r.power, r.rpm,
+                        r.efficiency, r.advanceRatio, r.thrustCoefficient, r.latenessNanos / 1e6);
+            }
+        }
+    }
+
+    //Park until just before the deadline, then spin; false if stopped meanwhile
+    private boolean waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            if (!running) {
+                return false;
+            }
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        return running;
+    }
+}
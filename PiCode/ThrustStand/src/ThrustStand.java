@@ -5,9 +5,15 @@
  * Description: This is the parent class for the thrust stand. It initializes the primary
  * application stage and then calls Launcher.fxml and its corresponding controller class
  * to fill the stage with the launcher scene. 
+ * Each scene is loaded once per stand and kept with its controller, so switching scenes
+ * only swaps the root. The main scenes are preloaded in the background after startup.
  */
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.scene.Scene;
@@ -16,7 +22,26 @@ import javafx.fxml.FXMLLoader;
 
 public class ThrustStand extends Application{
     private Stage mainStage; //Generic top level "stage" that we can replace with other scenes.
+    private BaseController currentController; //Controller of the scene on show
+    private final Map<String, LoadedScene> sceneCache = new HashMap<>(); //Keyed by stand and FXML path
     private String css = getClass().getResource("/styles/styles.css").toExternalForm(); //Load Stylesheet
+    private MetricsServer metrics; //Only when -Dthruststand.metricsPort is set
+
+    //Scenes preloaded after the launcher is on screen
+    private static final String[] PRELOAD_SCENES = {
+        "fxml/LabMode.fxml", "fxml/DynoMode.fxml", "fxml/Configuration.fxml"
+    };
+
+    //A parsed FXML root and the controller bound to it
+    private static final class LoadedScene {
+        final Parent root;
+        final BaseController controller;
+
+        LoadedScene(Parent root, BaseController controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
 
     public static void main(String[] args) {
         //System.out.println("Launching Thrust Stand..."); //Debug
@@ -27,37 +52,87 @@ public class ThrustStand extends Application{
     public void start(Stage primaryStage) throws Exception {
         this.mainStage = primaryStage;
 
-        //Initialize Singletons
-        SerialController.getInstance();
-        SharedElements.getInstance();
+        //Initialize Singletons (creates the first stand's pipeline)
+        StandRegistry.getInstance();
+        metrics = MetricsServer.startFromProperties();
 
         changeScene("fxml/Launcher.fxml"); //Create the initial launcher window 
         mainStage.setTitle("ThrustStand"); //Create a title for the scene
         mainStage.initStyle(StageStyle.UNDECORATED);
         mainStage.setFullScreen(true); //Locks stage to fullscreen. Comment out for debugging
         mainStage.show(); //Launch application
+        preloadScenes(0);
     }
 
     //Scene changer method called by child controller classes
     public void changeScene(String fxml) throws Exception{
-        FXMLLoader loader = new FXMLLoader(getClass().getResource(fxml)); //Load the input FXML file
-        Parent root = loader.load(); //Create a parent object for insertion into a scene.
-
-        BaseController controller = loader.getController();
-        controller.setMainApplication(this);
+        LoadedScene next = loadScene(fxml);
+        if (next.controller == currentController) {
+            return;
+        }
+        if (currentController != null) {
+            currentController.deactivate(); //Close the outgoing scene's telemetry subscriptions
+        }
+        currentController = next.controller;
+        updateTitle();
 
         if (mainStage.getScene() == null) {
-            Scene scene = new Scene(root); //If no scene exists, create one from the input FXML file
-            scene.getStylesheets().add(css); //Add stylesheet after inital scene is created
+            Scene scene = new Scene(next.root); //If no scene exists, create one from the input FXML file
+            scene.getStylesheets().add(css); //Stylesheet stays with the scene, so it is only added once
             mainStage.setScene(scene); //Insert the scene into the main stage
         } else {
-            mainStage.getScene().setRoot(root); //Replace an existing scene with the next one
-            mainStage.getScene().getStylesheets().add(css); //Ensure stylesheet is applied on scene change
+            mainStage.getScene().setRoot(next.root); //Replace an existing scene with the next one
         }
+        next.controller.activate();
+    }
+
+    //Cached scene for the selected stand, loading it on first use
+    private LoadedScene loadScene(String fxml) throws Exception{
+        String key = StandRegistry.getInstance().getSelected().getName() + ":" + fxml;
+        LoadedScene cached = sceneCache.get(key);
+        if (cached == null) {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource(fxml)); //Load the input FXML file
+            Parent root = loader.load(); //Create a parent object for insertion into a scene.
+            BaseController controller = loader.getController();
+            controller.setMainApplication(this);
+            cached = new LoadedScene(root, controller);
+            sceneCache.put(key, cached);
+        }
+        return cached;
+    }
+
+    //Load one scene per pass on the JavaFX thread so the launcher stays responsive
+    private void preloadScenes(int index){
+        if (index >= PRELOAD_SCENES.length) {
+            return;
+        }
+        Platform.runLater(() -> {
+            try {
+                loadScene(PRELOAD_SCENES[index]);
+            } catch (Exception e) {
+                System.err.println("Failed to preload " + PRELOAD_SCENES[index]);
+                e.printStackTrace();
+            }
+            preloadScenes(index + 1);
+        });
+    }
+
+    //Name the bound stand once there is more than one
+    private void updateTitle(){
+        StandRegistry stands = StandRegistry.getInstance();
+        mainStage.setTitle(stands.getStands().size() > 1
+                ? "ThrustStand - " + stands.getSelected().getName()
+                : "ThrustStand");
     }
 
     @Override
     public void stop(){
-        SerialController.getInstance().closePort(); //Close the serial port when the application closes
+        if (currentController != null) {
+            currentController.deactivate();
+        }
+        StandRegistry.getInstance().shutdown(); //Stop logging and close every stand's port when the application closes
+        if (metrics != null) {
+            metrics.stop();
+        }
     }
 }
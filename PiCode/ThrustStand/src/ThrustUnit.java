@@ -0,0 +1,59 @@
+/*  Title:  ThrustUnit.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SharedElements.java
+ *  Description: Thrust units offered in the UI with their conversion factors, so a
+ *  unit selection is resolved once instead of matched as a string for every sample.
+ */
+public enum ThrustUnit {
+    G("g", 1.0, 0),
+    KG("kg", 1000.0, 3),
+    LB("lb", 453.59237, 3),
+    N("N", 1000 / ThrustUnit.STANDARD_GRAVITY, 3);  //Grams-force per newton
+
+    static final double STANDARD_GRAVITY = 9.80665; //m/s², grams-force to millinewtons
+
+    private final String label;
+    private final double perGram;
+    private final double gramsPerUnit;
+    private final int displayDecimals;
+
+    //Both directions come from the one factor, so they always agree
+    ThrustUnit(String label, double gramsPerUnit, int displayDecimals) {
+        this.label = label;
+        this.perGram = 1 / gramsPerUnit;
+        this.gramsPerUnit = gramsPerUnit;
+        this.displayDecimals = displayDecimals;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getDisplayDecimals() {
+        return displayDecimals;
+    }
+
+    public double fromGrams(double gramsForce) {
+        return gramsForce * perGram;
+    }
+
+    public double toGrams(double value) {
+        return value * gramsPerUnit;
+    }
+
+    //Unit for a combo box label; unknown labels fall back to grams
+    public static ThrustUnit fromLabel(String label) {
+        for (ThrustUnit unit : values()) {
+            if (unit.label.equals(label)) {
+                return unit;
+            }
+        }
+        return G;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
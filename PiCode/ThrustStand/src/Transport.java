@@ -0,0 +1,32 @@
+/*  Title:  Transport.Java
+ *  Author: Evan Schober
+ *  Email:  evan.e.schober@wmich.edu
+ *  Parent Class: SerialController.java
+ *  Description: Byte link between the host and a thrust stand. SerialController only
+ *  talks to the stand through this, so the real serial port and the simulated stand
+ *  are interchangeable.
+ */
+public interface Transport {
+    //Open the link; false if it could not be opened
+    boolean open();
+
+    void close();
+
+    boolean isOpen();
+
+    /**
+     * Read whatever has arrived into buffer, waiting up to a short transport-defined
+     * timeout for the first byte. Called only by the ingest thread.
+     * @return Bytes read, 0 on timeout, -1 if the link failed
+     */
+    int read(byte[] buffer, int offset, int length);
+
+    /**
+     * Send bytes to the stand. May be called from any thread.
+     * @return Bytes written, -1 on failure
+     */
+    int write(byte[] bytes, int length);
+
+    //Name shown to the user, e.g. the system port name
+    String getName();
+}
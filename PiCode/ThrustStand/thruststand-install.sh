@@ -66,6 +66,9 @@ uninstall_thruststand() {
 
     # Remove binary
     rm -f "$BIN_DIR/$APP_NAME"
+    rm -f "$BIN_DIR/$APP_NAME-headless"
+    rm -f "$BIN_DIR/$APP_NAME-analyze"
+    rm -f "$BIN_DIR/$APP_NAME-catalog"
 
     # Remove installation directory
     rm -rf "$INSTALL_DIR"
@@ -208,13 +211,34 @@ CLASSPATH="\$CLASSPATH:$INSTALL_DIR/src"
 
 # Run application
 cd $INSTALL_DIR  # Change to install directory to ensure relative paths work
-java --add-modules javafx.controls,javafx.fxml \\
+java \$THRUSTSTAND_OPTS --add-modules javafx.controls,javafx.fxml \\
      -cp "\$CLASSPATH" \\
      ThrustStand "\$@"
 EOF
 
-    # Make launcher executable
+    # Headless launcher for unattended runs over SSH; JavaFX is never loaded
+    cat > $BIN_DIR/$APP_NAME-headless << EOF
+#!/bin/bash
+java -cp "$INSTALL_DIR/bin:$INSTALL_DIR/lib/*" HeadlessRun "\$@"
+EOF
+
+    # Batch analysis of a directory of logged sessions
+    cat > $BIN_DIR/$APP_NAME-analyze << EOF
+#!/bin/bash
+java -cp "$INSTALL_DIR/bin:$INSTALL_DIR/lib/*" SessionAnalyzer "\$@"
+EOF
+
+    # Search the session catalog
+    cat > $BIN_DIR/$APP_NAME-catalog << EOF
+#!/bin/bash
+java -cp "$INSTALL_DIR/bin:$INSTALL_DIR/lib/*" SessionCatalog "\$@"
+EOF
+
+    # Make launchers executable
     chmod +x $BIN_DIR/$APP_NAME
+    chmod +x $BIN_DIR/$APP_NAME-headless
+    chmod +x $BIN_DIR/$APP_NAME-analyze
+    chmod +x $BIN_DIR/$APP_NAME-catalog
 
     # Set appropriate permissions
     chown -R root:root $INSTALL_DIR
@@ -274,6 +298,9 @@ EOF
     echo ""
     echo "Installation directory: $INSTALL_DIR"
     echo "Launcher location: $BIN_DIR/$APP_NAME"
+    echo "Headless launcher: $BIN_DIR/$APP_NAME-headless"
+    echo "Log analysis: $BIN_DIR/$APP_NAME-analyze"
+    echo "Session search: $BIN_DIR/$APP_NAME-catalog"
 }
 
 # Main script execution
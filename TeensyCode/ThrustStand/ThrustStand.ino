@@ -31,6 +31,34 @@ bool msgRDY = false;
 //Serial send timer
 unsigned long lastSendTime = 0;
 
+//Binary telemetry link (enabled by the host with PROTO:BIN, back to text with PROTO:TEXT)
+bool binaryMode = false;
+uint32_t frameSeq = 0;
+const uint8_t FRAME_TELEMETRY = 0x01;
+
+//Fixed little-endian frame layout, COBS encoded and terminated with a 0x00 byte
+struct __attribute__((packed)) TelemetryFrame {
+  uint8_t type;       //FRAME_TELEMETRY
+  uint32_t seq;       //Increments by one per frame so the host can count drops
+  uint32_t micros;    //Device timestamp at sampling
+  uint16_t pitot1;    //Raw 12-bit ADC counts
+  uint16_t pitot2;
+  uint16_t current;
+  uint16_t voltage;
+  int32_t loadCell;   //Raw HX711 reading
+  float rpm;
+  uint16_t crc;       //CRC-16/CCITT-FALSE over all preceding bytes
+};
+
+//Sent once a command carrying an "@id" suffix has been applied (ACK:id on the text link)
+const uint8_t FRAME_ACK = 0x02;
+const uint8_t FRAME_NAK = 0x03;     //Same layout; the command was not applied
+struct __attribute__((packed)) AckFrame {
+  uint8_t type;       //FRAME_ACK or FRAME_NAK
+  uint32_t id;        //Id the host appended to the command
+  uint16_t crc;
+};
+
 //Tachometer variables
 volatile unsigned long lastPulseTime = 0;
 volatile unsigned long pulseCount = 0;
@@ -176,10 +204,21 @@ void checkForMSG() {
 }
 
 void processMSG() {
+  //Strip the optional "@id" the host uses to match acks to commands
+  long ackId = -1;
+  int atPos = inputBuffer.indexOf('@');
+  if (atPos != -1) {
+    ackId = inputBuffer.substring(atPos + 1).toInt();
+    inputBuffer = inputBuffer.substring(0, atPos);
+  }
+
   //Find the position of the colon
   int colonPos = inputBuffer.indexOf(':');
   if (colonPos == -1) {
       //No colon found, invalid command
+      if (ackId >= 0) {
+        sendAck(ackId, false);
+      }
       return;
   }
 
@@ -191,19 +230,24 @@ void processMSG() {
   cmd.trim();
   value.trim();
 
+  //Only a command that was recognised and applied is acked; the rest get a NAK
+  bool applied = false;
   if (cmd.equals("MOTOR")) {
     if (value.equals("ON")) {
       blinkLED(1, 50);
       motorEnabled = true;
+      applied = true;
     } else if (value.equals("OFF")) {
       motorEnabled = false;
       setESCThrottle(0); // Safety: disable motor output
+      applied = true;
     }
   }
   else if (cmd.equals("THR")) {
     if (motorEnabled) {  // Only check if motor is enabled
       int throttle = value.toInt();
       setESCThrottle(throttle);
+      applied = true;
     }
   }
   else if (cmd.equals("MODE")) {
@@ -213,15 +257,58 @@ void processMSG() {
     lastError = 0;
     targetRPM = 0;
     setESCThrottle(0); // Safety: set throttle to 0 when changing modes
+    applied = true;
   }
-  else if (cmd.equals("BLAD")) {
-    numBlades = value.toInt();
+  else if (cmd.equals("BLADE") || cmd.equals("BLAD")) {   //The host sends BLADE
+    int blades = value.toInt();
+    if (blades > 0) {   //calculateRPM() divides by it
+      numBlades = blades;
+      applied = true;
+    }
   }
   else if (cmd.equals("RPM")) {
     if (currentMode == "LAB") {
       targetRPM = value.toFloat();
+      applied = true;
     }
   }
+  else if (cmd.equals("PROTO")) {
+    if (value.equals("BIN")) {
+      //Terminate any partial text line and mark a frame boundary for the host
+      Serial.write('\n');
+      Serial.write((uint8_t)0);
+      frameSeq = 0;
+      binaryMode = true;
+      applied = true;
+    } else if (value.equals("TEXT")) {
+      Serial.write((uint8_t)0);
+      Serial.write('\n');
+      binaryMode = false;
+      applied = true;
+    }
+  }
+
+  if (ackId >= 0) {
+    sendAck(ackId, applied);
+  }
+}
+
+//ACK an applied command, or NAK one that was not, in whichever format the link is now using
+void sendAck(uint32_t id, bool applied) {
+  if (!binaryMode) {
+    Serial.print(applied ? "ACK:" : "NAK:");
+    Serial.println(id);
+    return;
+  }
+  AckFrame frame;
+  frame.type = applied ? FRAME_ACK : FRAME_NAK;
+  frame.id = id;
+  frame.crc = crc16((const uint8_t*)&frame, sizeof(frame) - sizeof(frame.crc));
+
+  uint8_t encoded[sizeof(AckFrame) + 2];
+  size_t length = cobsEncode((const uint8_t*)&frame, sizeof(frame), encoded);
+  encoded[length++] = 0; //Frame delimiter
+  Serial.write(encoded, length);
 }
 
 void setESCThrottle(int throttlePercent) {
@@ -236,6 +323,11 @@ void setESCThrottle(int throttlePercent) {
 }
 
 void sendData() {
+  if (binaryMode) {
+    sendFrame();
+    return;
+  }
+
   float pitot1 = readVoltage(PITOT_FRONT);
   float pitot2 = readVoltage(PITOT_REAR);
   float current = readVoltage(I_SENS);
@@ -246,6 +338,63 @@ void sendData() {
   Serial.println(dataPackage);
 }
 
+void sendFrame() {
+  TelemetryFrame frame;
+  frame.type = FRAME_TELEMETRY;
+  frame.seq = frameSeq++;
+  frame.micros = micros();
+  frame.pitot1 = analogRead(PITOT_FRONT);
+  frame.pitot2 = analogRead(PITOT_REAR);
+  frame.current = analogRead(I_SENS);
+  frame.voltage = analogRead(V_SENS);
+  frame.loadCell = loadCell.read();
+  frame.rpm = currentRPM;
+  frame.crc = crc16((const uint8_t*)&frame, sizeof(frame) - sizeof(frame.crc));
+
+  uint8_t encoded[sizeof(TelemetryFrame) + 2];
+  size_t length = cobsEncode((const uint8_t*)&frame, sizeof(frame), encoded);
+  encoded[length++] = 0; //Frame delimiter
+  Serial.write(encoded, length);
+}
+
+//CRC-16/CCITT-FALSE (poly 0x1021, init 0xFFFF)
+uint16_t crc16(const uint8_t* data, size_t length) {
+  uint16_t crc = 0xFFFF;
+  for (size_t i = 0; i < length; i++) {
+    crc ^= (uint16_t)data[i] << 8;
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+    }
+  }
+  return crc;
+}
+
+//Consistent Overhead Byte Stuffing: removes every 0x00 so it can delimit frames
+size_t cobsEncode(const uint8_t* input, size_t length, uint8_t* output) {
+  size_t readIndex = 0;
+  size_t writeIndex = 1;
+  size_t codeIndex = 0;
+  uint8_t code = 1;
+  while (readIndex < length) {
+    if (input[readIndex] == 0) {
+      output[codeIndex] = code;
+      code = 1;
+      codeIndex = writeIndex++;
+    } else {
+      output[writeIndex++] = input[readIndex];
+      code++;
+      if (code == 0xFF) {
+        output[codeIndex] = code;
+        code = 1;
+        codeIndex = writeIndex++;
+      }
+    }
+    readIndex++;
+  }
+  output[codeIndex] = code;
+  return writeIndex;
+}
+
 float readVoltage(int pin) {
   int rawValue = analogRead(pin);
   return (rawValue / 4095.0) * 3.3;